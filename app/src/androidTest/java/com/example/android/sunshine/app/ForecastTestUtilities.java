@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/*
+    Helpers for the list and benchmark tests, which need more forecast rows than the provider
+    tests insert and need them for a real location so the forecast query can find them.
+ */
+public class ForecastTestUtilities {
+    public static final String TEST_LOCATION = "99705";
+    static final long MILLIS_IN_A_DAY = 1000 * 60 * 60 * 24;
+
+    // a spread of condition codes, so every row doesn't resolve to the same art
+    private static final int[] WEATHER_IDS = {
+            200, 301, 500, 511, 520, 600, 701, 761, 781, 800, 801, 802, 803
+    };
+
+    static long insertLocation(Context context) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, TEST_LOCATION);
+        values.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        values.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        values.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -147.353);
+        Uri uri = context.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI, values);
+        return ContentUris.parseId(uri);
+    }
+
+    static ContentValues[] createForecastValues(long locationRowId, long startDate, int days) {
+        ContentValues[] forecast = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            ContentValues values = new ContentValues();
+            values.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+            values.put(WeatherContract.WeatherEntry.COLUMN_DATE, startDate + i * MILLIS_IN_A_DAY);
+            values.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 1.1);
+            values.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 1.2 + 0.01 * (float) i);
+            values.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1.3 - 0.01 * (float) i);
+            values.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 75 + i % 10);
+            values.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 65 - i % 10);
+            values.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+            values.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 5.5 + 0.2 * (float) i);
+            values.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                    WEATHER_IDS[i % WEATHER_IDS.length]);
+            forecast[i] = values;
+        }
+        return forecast;
+    }
+
+    // inserts the test location and a forecast for it starting today
+    public static long insertForecast(Context context, int days) {
+        long locationRowId = insertLocation(context);
+        context.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                createForecastValues(locationRowId, System.currentTimeMillis(), days));
+        return locationRowId;
+    }
+
+    public static void deleteAllRecords(Context context) {
+        context.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        context.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+}
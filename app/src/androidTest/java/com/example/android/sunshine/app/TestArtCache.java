@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Serves an art pack from a local stand-in server, and checks that a prefetch pins the whole
+    pack and that a first scroll through the list is then served without loading anything.  Logs
+    the time spent binding the scroll and the number of images it loaded, with and without the
+    prefetch.
+ */
+public class TestArtCache extends AndroidTestCase {
+    public static final String LOG_TAG = TestArtCache.class.getSimpleName();
+
+    private static final int FORECAST_DAYS = 14;
+    // how long the server has to be quiet before a scroll's loads are counted as done
+    private static final long IDLE_MILLIS = 1000;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private ArtServer mServer;
+    private SharedPreferences mPrefs;
+    private String mArtPackKey;
+    private String mSavedArtPack;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new ArtServer();
+        mServer.start();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mArtPackKey = mContext.getString(R.string.pref_art_pack_key);
+        mSavedArtPack = mPrefs.getString(mArtPackKey, null);
+        ForecastTestUtilities.deleteAllRecords(mContext);
+        ForecastTestUtilities.insertForecast(mContext, FORECAST_DAYS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().putString(mArtPackKey, mSavedArtPack).commit();
+        SettingsStore.getInstance(mContext).reload();
+        ArtCache.getInstance(mContext).prefetch();
+        ForecastTestUtilities.deleteAllRecords(mContext);
+        mServer.close();
+        super.tearDown();
+    }
+
+    // Each pack gets its own path, so nothing Glide cached for an earlier one can answer for it
+    private void useArtPack(String name) {
+        mPrefs.edit().putString(mArtPackKey, "http://127.0.0.1:" + mServer.getPort() + "/" +
+                name + SystemClock.elapsedRealtimeNanos() + "/art_%s.png").commit();
+        SettingsStore.getInstance(mContext).reload();
+    }
+
+    public void testPrefetchPinsEveryCondition() {
+        useArtPack("pinned");
+        ArtCache cache = ArtCache.getInstance(mContext);
+        cache.prefetch();
+        for (int condition = 0; condition < WeatherConditions.CONDITION_COUNT; condition++) {
+            String artUrl = Utility.getArtUrlForCondition(mContext, condition);
+            assertNotNull("Error: no art pinned for " + artUrl, cache.get(artUrl));
+        }
+        int requests = mServer.getRequestCount();
+        assertEquals(WeatherConditions.CONDITION_COUNT, requests);
+
+        // a second sync with the same pack doesn't fetch anything
+        cache.prefetch();
+        assertEquals(requests, mServer.getRequestCount());
+    }
+
+    public void testFirstScrollIsServedFromMemory() throws InterruptedException {
+        useArtPack("cold");
+        long coldNanos = scroll();
+        int coldLoads = waitForLoads();
+
+        useArtPack("warm");
+        ArtCache cache = ArtCache.getInstance(mContext);
+        cache.prefetch();
+        int prefetchLoads = mServer.getRequestCount() - coldLoads;
+        final Bitmap[] icons = new Bitmap[FORECAST_DAYS];
+        final ForecastTable forecast = loadForecast();
+        long warmNanos = scroll(forecast, icons);
+        int warmLoads = waitForLoads() - coldLoads - prefetchLoads;
+
+        Log.i(LOG_TAG, "first scroll of " + FORECAST_DAYS + " rows, without prefetch: " +
+                coldNanos / FORECAST_DAYS + "ns per bind, " + coldLoads + " image loads; " +
+                "after prefetch: " + warmNanos / FORECAST_DAYS + "ns per bind, " + warmLoads +
+                " image loads (" + prefetchLoads + " prefetched)");
+        assertEquals("Error: the scroll loaded images the prefetch should have pinned",
+                0, warmLoads);
+        for (int position = 0; position < FORECAST_DAYS; position++) {
+            assertSame(cache.get(forecast.getDisplayModel(position).artUrl), icons[position]);
+        }
+    }
+
+    private ForecastTable loadForecast() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocation(
+                        ForecastTestUtilities.TEST_LOCATION),
+                ForecastTable.FORECAST_COLUMNS, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        ForecastTable forecast = ForecastTable.fromCursor(mContext, cursor);
+        cursor.close();
+        return forecast;
+    }
+
+    private long scroll() throws InterruptedException {
+        return scroll(loadForecast(), new Bitmap[FORECAST_DAYS]);
+    }
+
+    // Binds every row once on the main thread, as a first scroll through the list would, and
+    // returns the time spent binding.  Whatever each row's icon ends up showing goes in icons.
+    private long scroll(final ForecastTable forecast, final Bitmap[] icons)
+            throws InterruptedException {
+        final long[] nanos = new long[1];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                ContextThemeWrapper themed = new ContextThemeWrapper(mContext, R.style.AppTheme);
+                LayoutInflater inflater = LayoutInflater.from(themed);
+                ForecastAdapter adapter = new ForecastAdapter(themed, null, new View(themed),
+                        AbsListView.CHOICE_MODE_NONE);
+                adapter.swapForecast(forecast);
+
+                ForecastAdapter.ForecastAdapterViewHolder[] holders =
+                        new ForecastAdapter.ForecastAdapterViewHolder[FORECAST_DAYS];
+                for (int position = 0; position < FORECAST_DAYS; position++) {
+                    View view = inflater.inflate(position == 0 ?
+                            R.layout.list_item_forecast_today : R.layout.list_item_forecast, null);
+                    // Glide waits for a view to have a size before it starts loading into it
+                    view.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                            View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+                    view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+                    holders[position] = adapter.new ForecastAdapterViewHolder(view);
+                }
+
+                long start = SystemClock.elapsedRealtimeNanos();
+                for (int position = 0; position < FORECAST_DAYS; position++) {
+                    adapter.onBindViewHolder(holders[position], position);
+                }
+                nanos[0] = SystemClock.elapsedRealtimeNanos() - start;
+
+                for (int position = 0; position < FORECAST_DAYS; position++) {
+                    Drawable drawable = holders[position].mIconView.getDrawable();
+                    if (drawable instanceof BitmapDrawable) {
+                        icons[position] = ((BitmapDrawable) drawable).getBitmap();
+                    }
+                }
+            }
+        });
+        return nanos[0];
+    }
+
+    private void runOnMainThread(Runnable runnable) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Runnable task = runnable;
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    latch.countDown();
+                }
+            }
+        });
+        assertTrue("Error: main thread didn't run the scroll",
+                latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    // Loads started by a bind finish in the background, so wait for the server to go quiet
+    private int waitForLoads() throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+        int count = mServer.getRequestCount();
+        long quietSince = SystemClock.elapsedRealtime();
+        while (SystemClock.elapsedRealtime() < deadline &&
+                SystemClock.elapsedRealtime() - quietSince < IDLE_MILLIS) {
+            Thread.sleep(50);
+            int latest = mServer.getRequestCount();
+            if (latest != count) {
+                count = latest;
+                quietSince = SystemClock.elapsedRealtime();
+            }
+        }
+        return count;
+    }
+
+    /*
+        Stands in for the art pack host.  Answers every request with the same small png and
+        counts the requests.  The png is square, and as big as the server is asked to make it.
+     */
+    public static class ArtServer implements Runnable {
+        // paths holding these are redirected to the path without it, or not found
+        public static final String MOVED = "/moved/";
+        public static final String MISSING = "/missing/";
+
+        private final ServerSocket mSocket;
+        private final AtomicInteger mRequests = new AtomicInteger();
+        private final byte[] mImage;
+
+        public ArtServer() throws IOException {
+            this(96);
+        }
+
+        public ArtServer(int size) throws IOException {
+            mSocket = new ServerSocket(0);
+            Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            bitmap.eraseColor(Color.YELLOW);
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, png);
+            bitmap.recycle();
+            mImage = png.toByteArray();
+        }
+
+        public void start() {
+            Thread thread = new Thread(this, LOG_TAG);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        public int getPort() {
+            return mSocket.getLocalPort();
+        }
+
+        public int getRequestCount() {
+            return mRequests.get();
+        }
+
+        public void close() throws IOException {
+            mSocket.close();
+        }
+
+        @Override
+        public void run() {
+            while (!mSocket.isClosed()) {
+                Socket socket = null;
+                try {
+                    socket = mSocket.accept();
+                    BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(socket.getInputStream()));
+                    String request = reader.readLine();
+                    String line;
+                    // skip the headers
+                    while (null != (line = reader.readLine()) && line.length() > 0) {
+                    }
+                    mRequests.incrementAndGet();
+
+                    OutputStream out = socket.getOutputStream();
+                    String path = null == request ? "" : request.split(" ")[1];
+                    if (path.contains(MOVED)) {
+                        // the way Wikimedia sends http requests on to https
+                        out.write(("HTTP/1.1 301 Moved Permanently\r\n" +
+                                "Location: " + path.replace(MOVED, "/") + "\r\n" +
+                                "Content-Length: 0\r\n" +
+                                "Connection: close\r\n\r\n").getBytes("US-ASCII"));
+                        out.flush();
+                        continue;
+                    }
+                    if (path.contains(MISSING)) {
+                        out.write(("HTTP/1.1 404 Not Found\r\n" +
+                                "Content-Length: 0\r\n" +
+                                "Connection: close\r\n\r\n").getBytes("US-ASCII"));
+                        out.flush();
+                        continue;
+                    }
+                    out.write(("HTTP/1.1 200 OK\r\n" +
+                            "Content-Type: image/png\r\n" +
+                            "Content-Length: " + mImage.length + "\r\n" +
+                            "Connection: close\r\n\r\n").getBytes("US-ASCII"));
+                    out.write(mImage);
+                    out.flush();
+                } catch (IOException e) {
+                    // closed while waiting for the next request
+                } finally {
+                    if (null != socket) {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            // nothing more to do with it
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.Cursor;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/*
+    Scrolls a list's worth of binds through the adapter, and through the formatting the adapter
+    used to do on every bind, and logs the time and allocations per row for each.
+ */
+public class TestForecastBind extends AndroidTestCase {
+    public static final String LOG_TAG = TestForecastBind.class.getSimpleName();
+
+    private static final int FORECAST_DAYS = 14;
+    private static final int BENCHMARK_PASSES = 200;
+
+    private ForecastTable mForecast;
+    private ForecastAdapter mAdapter;
+    private ForecastAdapter.ForecastAdapterViewHolder mTodayHolder;
+    private ForecastAdapter.ForecastAdapterViewHolder mFutureHolder;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ForecastTestUtilities.deleteAllRecords(mContext);
+        ForecastTestUtilities.insertForecast(mContext, FORECAST_DAYS);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocation(
+                        ForecastTestUtilities.TEST_LOCATION),
+                ForecastTable.FORECAST_COLUMNS, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        mForecast = ForecastTable.fromCursor(mContext, cursor);
+        cursor.close();
+
+        ContextThemeWrapper themed = new ContextThemeWrapper(mContext, R.style.AppTheme);
+        LayoutInflater inflater = LayoutInflater.from(themed);
+        mAdapter = new ForecastAdapter(themed, null, new View(themed),
+                AbsListView.CHOICE_MODE_NONE);
+        mAdapter.swapForecast(mForecast);
+        mTodayHolder = mAdapter.new ForecastAdapterViewHolder(
+                inflater.inflate(R.layout.list_item_forecast_today, null));
+        mFutureHolder = mAdapter.new ForecastAdapterViewHolder(
+                inflater.inflate(R.layout.list_item_forecast, null));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ForecastTestUtilities.deleteAllRecords(mContext);
+        super.tearDown();
+    }
+
+    private ForecastAdapter.ForecastAdapterViewHolder holderFor(int position) {
+        return position == 0 ? mTodayHolder : mFutureHolder;
+    }
+
+    public void testBindMatchesFormatting() {
+        assertEquals(FORECAST_DAYS, mAdapter.getItemCount());
+        for (int position = 0; position < FORECAST_DAYS; position++) {
+            ForecastAdapter.ForecastAdapterViewHolder holder = holderFor(position);
+            mAdapter.onBindViewHolder(holder, position);
+            long date = mForecast.getDate(position);
+            int weatherId = mForecast.getWeatherId(position);
+            assertEquals(Utility.getFriendlyDayString(mContext, date, position == 0),
+                    holder.mDateView.getText().toString());
+            assertEquals(Utility.getStringForWeatherCondition(mContext, weatherId),
+                    holder.mDescriptionView.getText().toString());
+            assertEquals(Utility.formatTemperature(mContext, mForecast.getMaxTemp(position)),
+                    holder.mHighTempView.getText().toString());
+            assertEquals(Utility.formatTemperature(mContext, mForecast.getMinTemp(position)),
+                    holder.mLowTempView.getText().toString());
+        }
+    }
+
+    // What onBindViewHolder did before the loader formatted the rows, minus the image
+    private void formatAndBind(ForecastAdapter.ForecastAdapterViewHolder holder, int position) {
+        int weatherId = mForecast.getWeatherId(position);
+        holder.mDateView.setText(Utility.getFriendlyDayString(mContext,
+                mForecast.getDate(position), position == 0));
+        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        holder.mDescriptionView.setText(description);
+        holder.mDescriptionView.setContentDescription(
+                mContext.getString(R.string.a11y_forecast, description));
+        String high = Utility.formatTemperature(mContext, mForecast.getMaxTemp(position));
+        holder.mHighTempView.setText(high);
+        holder.mHighTempView.setContentDescription(
+                mContext.getString(R.string.a11y_high_temp, high));
+        String low = Utility.formatTemperature(mContext, mForecast.getMinTemp(position));
+        holder.mLowTempView.setText(low);
+        holder.mLowTempView.setContentDescription(
+                mContext.getString(R.string.a11y_low_temp, low));
+    }
+
+    public void testBindCostPerRow() {
+        int rows = BENCHMARK_PASSES * FORECAST_DAYS;
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocCount();
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (int pass = 0; pass < BENCHMARK_PASSES; pass++) {
+                for (int position = 0; position < FORECAST_DAYS; position++) {
+                    formatAndBind(holderFor(position), position);
+                }
+            }
+            long formatNanos = SystemClock.elapsedRealtimeNanos() - start;
+            int formatAllocs = Debug.getThreadAllocCount();
+
+            Debug.resetThreadAllocCount();
+            start = SystemClock.elapsedRealtimeNanos();
+            for (int pass = 0; pass < BENCHMARK_PASSES; pass++) {
+                for (int position = 0; position < FORECAST_DAYS; position++) {
+                    mAdapter.onBindViewHolder(holderFor(position), position);
+                }
+            }
+            long bindNanos = SystemClock.elapsedRealtimeNanos() - start;
+            int bindAllocs = Debug.getThreadAllocCount();
+
+            Log.i(LOG_TAG, "per row, formatting on bind: " + formatNanos / rows + "ns " +
+                    formatAllocs / rows + " allocs, precomputed: " + bindNanos / rows + "ns " +
+                    bindAllocs / rows + " allocs");
+            assertTrue("Error: binding a precomputed row allocates more than formatting it",
+                    bindAllocs <= formatAllocs);
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+}
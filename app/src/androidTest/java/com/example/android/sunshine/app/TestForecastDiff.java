@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Checks that a new forecast only rebinds the rows that actually changed.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+    private static final int FORECAST_DAYS = 14;
+
+    private long mLocationRowId;
+    private long mStartDate;
+    private ForecastAdapter mAdapter;
+    private final List<String> mNotifications = new ArrayList<String>();
+
+    // Records what the adapter tells the RecyclerView, the same way the RecyclerView hears it
+    private final RecyclerView.AdapterDataObserver mObserver = new RecyclerView.AdapterDataObserver() {
+        @Override
+        public void onChanged() {
+            mNotifications.add("all");
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            mNotifications.add("change " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mNotifications.add("insert " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mNotifications.add("remove " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            mNotifications.add("move " + fromPosition + " " + toPosition + " " + itemCount);
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ForecastTestUtilities.deleteAllRecords(mContext);
+        mLocationRowId = ForecastTestUtilities.insertLocation(mContext);
+        mStartDate = WeatherContract.normalizeDate(System.currentTimeMillis());
+        mContext.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                ForecastTestUtilities.createForecastValues(mLocationRowId, mStartDate,
+                        FORECAST_DAYS));
+
+        ContextThemeWrapper themed = new ContextThemeWrapper(mContext, R.style.AppTheme);
+        mAdapter = new ForecastAdapter(themed, null, new View(themed),
+                AbsListView.CHOICE_MODE_SINGLE);
+        mAdapter.registerAdapterDataObserver(mObserver);
+        mAdapter.swapForecast(loadForecast(null));
+        mNotifications.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mAdapter.unregisterAdapterDataObserver(mObserver);
+        ForecastTestUtilities.deleteAllRecords(mContext);
+        super.tearDown();
+    }
+
+    // Loads the forecast the same way ForecastLoader does
+    private ForecastTable loadForecast(ForecastTable previous) {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocation(
+                        ForecastTestUtilities.TEST_LOCATION),
+                ForecastTable.FORECAST_COLUMNS, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        ForecastTable forecast = ForecastTable.fromCursor(mContext, cursor);
+        cursor.close();
+        return null == previous ? forecast : forecast.withDiffFrom(previous);
+    }
+
+    private void reload() {
+        mAdapter.swapForecast(loadForecast(mAdapter.getForecast()));
+    }
+
+    private long dayDate(int day) {
+        return mStartDate + day * ForecastTestUtilities.MILLIS_IN_A_DAY;
+    }
+
+    public void testStableIds() {
+        assertTrue(mAdapter.hasStableIds());
+        for (int position = 0; position < FORECAST_DAYS; position++) {
+            assertEquals(dayDate(position), mAdapter.getItemId(position));
+        }
+    }
+
+    public void testUnchangedForecastRebindsNothing() {
+        reload();
+        assertEquals(0, mNotifications.size());
+    }
+
+    public void testOnlyChangedRowIsRebound() {
+        ContentValues[] forecast = ForecastTestUtilities.createForecastValues(
+                mLocationRowId, mStartDate, FORECAST_DAYS);
+        forecast[5].put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, -40);
+        // the weather table replaces rows with the same date and location
+        mContext.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                forecast);
+
+        reload();
+        assertEquals(Arrays.asList("change 5 1"), mNotifications);
+    }
+
+    public void testNewDayShiftsRows() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(dayDate(0))});
+        mContext.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                ForecastTestUtilities.createForecastValues(mLocationRowId,
+                        dayDate(FORECAST_DAYS), 1));
+
+        reload();
+        // the old first row goes, the new first row takes the today layout, and the new last
+        // day is added at the bottom; every other row is left alone
+        assertEquals(Arrays.asList("remove 0 1", "change 0 1",
+                "insert " + (FORECAST_DAYS - 1) + " 1"), mNotifications);
+        assertEquals(FORECAST_DAYS, mAdapter.getItemCount());
+    }
+
+    public void testDiffAgainstAnotherForecastFallsBack() {
+        ForecastTable unrelated = loadForecast(null);
+        mAdapter.swapForecast(loadForecast(unrelated));
+        assertEquals(Arrays.asList("all"), mNotifications);
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.v4.content.Loader;
+import android.test.ActivityInstrumentationTestCase2;
+import android.test.mock.MockContentResolver;
+import android.widget.TextView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherProvider;
+import com.example.android.sunshine.app.data.WeatherSnapshot;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Selects each day of the forecast in a detail pane hosted by MainActivity, the way two-pane
+    mode does.  The detail pane should find the day in the list's forecast without starting a
+    loader of its own, before and after a change to the weather data.  Then runs the list's
+    loader against a provider of its own that counts queries, and checks that a change to the
+    weather data is read with one query.
+ */
+public class TestForecastRepository extends ActivityInstrumentationTestCase2<MainActivity> {
+    private static final int FORECAST_DAYS = 14;
+    private static final String DETAIL_TAG = "TEST_DETAIL";
+    // how long the provider has to be idle before the queries so far are counted as done
+    private static final long QUIET_MILLIS = 500;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private SharedPreferences mPrefs;
+    private String mLocationKey;
+    private String mSavedLocation;
+
+    public TestForecastRepository() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Context context = getInstrumentation().getTargetContext();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        mLocationKey = context.getString(R.string.pref_location_key);
+        mSavedLocation = mPrefs.getString(mLocationKey, null);
+        mPrefs.edit().putString(mLocationKey, ForecastTestUtilities.TEST_LOCATION).commit();
+        SettingsStore.getInstance(context).reload();
+
+        ForecastTestUtilities.deleteAllRecords(context);
+        ForecastTestUtilities.insertForecast(context, FORECAST_DAYS);
+        // so the list's forecast comes straight from the database
+        WeatherSnapshot.getFile(context).delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        Context context = getInstrumentation().getTargetContext();
+        ForecastTestUtilities.deleteAllRecords(context);
+        mPrefs.edit().putString(mLocationKey, mSavedLocation).commit();
+        SettingsStore.getInstance(context).reload();
+    }
+
+    public void testSelectionDoesNotQuery() throws InterruptedException {
+        final MainActivity activity = getActivity();
+        final ForecastTable forecast = waitForForecast(activity, null);
+
+        for (int position = 0; position < forecast.getCount(); position++) {
+            final long date = forecast.getDate(position);
+            DetailFragment detail = select(activity, date);
+            assertNoLoader(detail);
+
+            TextView dateView = (TextView) detail.getView()
+                    .findViewById(R.id.detail_date_textview);
+            assertEquals(Utility.getFullFriendlyDayString(activity, date),
+                    dateView.getText().toString());
+        }
+    }
+
+    public void testDataChangeLeavesDetailToTheList() throws InterruptedException {
+        final MainActivity activity = getActivity();
+        ForecastTable forecast = waitForForecast(activity, null);
+        DetailFragment detail = select(activity, forecast.getDate(1));
+
+        activity.getContentResolver().notifyChange(
+                WeatherContract.WeatherEntry.CONTENT_URI, null);
+        waitForForecast(activity, forecast);
+        assertNoLoader(detail);
+    }
+
+    public void testDataChangeQueriesOnce() throws InterruptedException {
+        final QueryCountingContext context =
+                new QueryCountingContext(getInstrumentation().getTargetContext());
+        final ForecastLoader loader = new ForecastLoader(context);
+        final ForecastTable[] latest = new ForecastTable[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                loader.registerListener(0, new Loader.OnLoadCompleteListener<ForecastTable>() {
+                    @Override
+                    public void onLoadComplete(Loader<ForecastTable> l, ForecastTable data) {
+                        latest[0] = data;
+                    }
+                });
+                loader.startLoading();
+            }
+        });
+        try {
+            ForecastTable forecast = waitForLoad(latest, null);
+            waitForQuiet(context);
+
+            int before = context.getQueryCount();
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    loader.onContentChanged();
+                }
+            });
+            waitForLoad(latest, forecast);
+            waitForQuiet(context);
+            assertEquals("Error: a change to the weather data took more than one query",
+                    1, context.getQueryCount() - before);
+        } finally {
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    loader.reset();
+                }
+            });
+            context.shutdown();
+        }
+    }
+
+    // Shows the day in a detail pane over the list, as MainActivity does in two-pane mode
+    private DetailFragment select(final MainActivity activity, long date) {
+        Bundle args = new Bundle();
+        args.putParcelable(DetailFragment.DETAIL_URI,
+                WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        ForecastTestUtilities.TEST_LOCATION, date));
+        final DetailFragment fragment = new DetailFragment();
+        fragment.setArguments(args);
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                activity.getSupportFragmentManager().beginTransaction()
+                        .replace(android.R.id.content, fragment, DETAIL_TAG)
+                        .commit();
+                activity.getSupportFragmentManager().executePendingTransactions();
+            }
+        });
+        return fragment;
+    }
+
+    private void assertNoLoader(final DetailFragment detail) {
+        final Loader<?>[] loader = new Loader<?>[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                loader[0] = detail.getLoaderManager().getLoader(DetailFragment.DETAIL_LOADER);
+            }
+        });
+        assertNull("Error: the detail pane queried for a day the list has", loader[0]);
+    }
+
+    // Waits for the list to share a full forecast other than previous
+    private ForecastTable waitForForecast(final MainActivity activity,
+                                          final ForecastTable previous)
+            throws InterruptedException {
+        final ForecastTable[] forecast = new ForecastTable[1];
+        long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+        while (SystemClock.elapsedRealtime() < deadline) {
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    forecast[0] = activity.getForecastRepository().getForecast();
+                }
+            });
+            if (null != forecast[0] && forecast[0] != previous &&
+                    forecast[0].getCount() == FORECAST_DAYS) {
+                return forecast[0];
+            }
+            Thread.sleep(20);
+        }
+        fail("Error: the list didn't share its forecast");
+        return null;
+    }
+
+    // Waits for the loader to deliver a full forecast other than previous
+    private ForecastTable waitForLoad(final ForecastTable[] latest, ForecastTable previous)
+            throws InterruptedException {
+        final ForecastTable[] forecast = new ForecastTable[1];
+        long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+        while (SystemClock.elapsedRealtime() < deadline) {
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    forecast[0] = latest[0];
+                }
+            });
+            if (null != forecast[0] && forecast[0] != previous && !forecast[0].isPartial() &&
+                    forecast[0].getCount() == FORECAST_DAYS) {
+                return forecast[0];
+            }
+            Thread.sleep(20);
+        }
+        fail("Error: the loader didn't deliver the forecast");
+        return null;
+    }
+
+    private static void waitForQuiet(QueryCountingContext context) throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+        int count = context.getQueryCount();
+        long quietSince = SystemClock.elapsedRealtime();
+        while (SystemClock.elapsedRealtime() < deadline &&
+                SystemClock.elapsedRealtime() - quietSince < QUIET_MILLIS) {
+            Thread.sleep(20);
+            int latest = context.getQueryCount();
+            if (latest != count) {
+                count = latest;
+                quietSince = SystemClock.elapsedRealtime();
+            }
+        }
+    }
+
+    /*
+        A provider over the app's database that counts the queries it serves.
+     */
+    static class CountingProvider extends WeatherProvider {
+        final AtomicInteger mQueries = new AtomicInteger();
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder) {
+            mQueries.incrementAndGet();
+            return super.query(uri, projection, selection, selectionArgs, sortOrder);
+        }
+    }
+
+    /*
+        A context whose content resolver only reaches a counting provider of its own, and which
+        is its own application context, so a loader built on it keeps using that provider.
+     */
+    static class QueryCountingContext extends ContextWrapper {
+        private final CountingProvider mProvider = new CountingProvider();
+        private final MockContentResolver mResolver = new MockContentResolver();
+
+        QueryCountingContext(Context base) {
+            super(base);
+            mProvider.attachInfo(base, null);
+            mResolver.addProvider(WeatherContract.CONTENT_AUTHORITY, mProvider);
+        }
+
+        int getQueryCount() {
+            return mProvider.mQueries.get();
+        }
+
+        void shutdown() {
+            mProvider.shutdown();
+        }
+
+        @Override
+        public Context getApplicationContext() {
+            return this;
+        }
+
+        @Override
+        public ContentResolver getContentResolver() {
+            return mResolver;
+        }
+    }
+}
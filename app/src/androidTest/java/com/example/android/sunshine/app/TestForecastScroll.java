@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.WindowManager;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.data.WeatherSnapshot;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+    Flings the forecast list in MainActivity up and down over a year of forecast, recording the
+    length of every frame and how many rows were bound.  The same data and the same flings are
+    used on every run, and the results go to the log and to forecast_scroll_benchmark.txt in the
+    app's files directory as one key=value per line, so runs from different builds can be
+    diffed.
+
+    Everything the list does while scrolling is included: the parallax and app bar scroll
+    listeners, and whatever each bind does with the current art pack.
+ */
+public class TestForecastScroll extends ActivityInstrumentationTestCase2<MainActivity> {
+    public static final String LOG_TAG = TestForecastScroll.class.getSimpleName();
+
+    static final String REPORT_FILE_NAME = "forecast_scroll_benchmark.txt";
+
+    private static final int FORECAST_DAYS = 365;
+    private static final int FLINGS = 8;
+    // the recorder stops keeping frames after this many
+    private static final int MAX_FRAMES = 4096;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private SharedPreferences mPrefs;
+    private String mLocationKey;
+    private String mSavedLocation;
+
+    public TestForecastScroll() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Context context = getInstrumentation().getTargetContext();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        mLocationKey = context.getString(R.string.pref_location_key);
+        mSavedLocation = mPrefs.getString(mLocationKey, null);
+        mPrefs.edit().putString(mLocationKey, ForecastTestUtilities.TEST_LOCATION).commit();
+        SettingsStore.getInstance(context).reload();
+
+        ForecastTestUtilities.deleteAllRecords(context);
+        ForecastTestUtilities.insertForecast(context, FORECAST_DAYS);
+        WeatherSnapshot.getFile(context).delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        Context context = getInstrumentation().getTargetContext();
+        ForecastTestUtilities.deleteAllRecords(context);
+        mPrefs.edit().putString(mLocationKey, mSavedLocation).commit();
+        SettingsStore.getInstance(context).reload();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void testFlingForecast() throws InterruptedException, IOException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            // frame callbacks need Choreographer
+            return;
+        }
+        final MainActivity activity = getActivity();
+        final ForecastTable forecast = waitForForecast(activity);
+        final RecyclerView list =
+                (RecyclerView) activity.findViewById(R.id.recyclerview_forecast);
+
+        // Same adapter the fragment uses, but counting binds
+        final int[] binds = new int[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ForecastAdapter adapter = new ForecastAdapter(activity, null,
+                        activity.findViewById(R.id.recyclerview_forecast_empty),
+                        AbsListView.CHOICE_MODE_NONE) {
+                    @Override
+                    public void onBindViewHolder(ForecastAdapterViewHolder holder,
+                                                 int position) {
+                        binds[0]++;
+                        super.onBindViewHolder(holder, position);
+                    }
+                };
+                adapter.swapForecast(forecast);
+                list.setAdapter(adapter);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+
+        // one fling each way to get the row views and caches warmed up
+        fling(list, 1);
+        fling(list, -1);
+
+        final FrameRecorder recorder = new FrameRecorder();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                binds[0] = 0;
+                recorder.start();
+            }
+        });
+        for (int i = 0; i < FLINGS; i++) {
+            fling(list, i % 2 == 0 ? 1 : -1);
+        }
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                recorder.stop();
+            }
+        });
+
+        float refreshRate = ((WindowManager) activity.getSystemService(Context.WINDOW_SERVICE))
+                .getDefaultDisplay().getRefreshRate();
+        String report = recorder.report(1000000000L / (long) refreshRate, binds[0]);
+        Log.i(LOG_TAG, report);
+        File file = new File(activity.getFilesDir(), REPORT_FILE_NAME);
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(report);
+        } finally {
+            writer.close();
+        }
+
+        assertTrue("Error: no frames were drawn while flinging", recorder.getFrameCount() > 1);
+        assertTrue("Error: no rows were bound while flinging", binds[0] > 0);
+    }
+
+    // Flings as hard as the list allows, and waits for it to come to rest
+    private void fling(final RecyclerView list, final int direction)
+            throws InterruptedException {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                list.fling(0, direction * list.getMaxFlingVelocity());
+            }
+        });
+        final int[] state = new int[1];
+        long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+        do {
+            Thread.sleep(50);
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    state[0] = list.getScrollState();
+                }
+            });
+        } while (state[0] != RecyclerView.SCROLL_STATE_IDLE &&
+                SystemClock.elapsedRealtime() < deadline);
+    }
+
+    private ForecastTable waitForForecast(final MainActivity activity)
+            throws InterruptedException {
+        final ForecastTable[] forecast = new ForecastTable[1];
+        long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+        while (SystemClock.elapsedRealtime() < deadline) {
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    forecast[0] = activity.getForecastRepository().getForecast();
+                }
+            });
+            if (null != forecast[0] && forecast[0].getCount() == FORECAST_DAYS) {
+                return forecast[0];
+            }
+            Thread.sleep(20);
+        }
+        fail("Error: the list didn't load the forecast");
+        return null;
+    }
+
+    /*
+        Records the start time of every frame between start and stop.  Only used on the main
+        thread.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    static class FrameRecorder implements Choreographer.FrameCallback {
+        private final long[] mFrameTimes = new long[MAX_FRAMES];
+        private int mFrameCount;
+        private boolean mRunning;
+
+        void start() {
+            mRunning = true;
+            mFrameCount = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        int getFrameCount() {
+            return mFrameCount;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRunning) {
+                return;
+            }
+            if (mFrameCount < MAX_FRAMES) {
+                mFrameTimes[mFrameCount++] = frameTimeNanos;
+            }
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        /**
+         * @param refreshPeriodNanos how long a frame has to be drawn in to not drop any
+         * @param binds rows bound while recording
+         * @return the results, one key=value per line, always in the same order
+         */
+        String report(long refreshPeriodNanos, int binds) {
+            int count = Math.max(0, mFrameCount - 1);
+            long[] durations = new long[count];
+            int janky = 0;
+            long dropped = 0;
+            for (int i = 0; i < count; i++) {
+                durations[i] = mFrameTimes[i + 1] - mFrameTimes[i];
+                // a frame that took n periods dropped n - 1, rounding off vsync jitter
+                long periods = (durations[i] + refreshPeriodNanos / 2) / refreshPeriodNanos;
+                if (periods > 1) {
+                    janky++;
+                    dropped += periods - 1;
+                }
+            }
+            Arrays.sort(durations);
+
+            StringBuilder report = new StringBuilder();
+            report.append("rows=").append(FORECAST_DAYS).append('\n');
+            report.append("flings=").append(FLINGS).append('\n');
+            report.append("refresh_period_ms=").append(millis(refreshPeriodNanos)).append('\n');
+            report.append("frames=").append(count).append('\n');
+            report.append("frame_ms_p50=").append(millis(percentile(durations, 50))).append('\n');
+            report.append("frame_ms_p90=").append(millis(percentile(durations, 90))).append('\n');
+            report.append("frame_ms_p99=").append(millis(percentile(durations, 99))).append('\n');
+            report.append("frame_ms_max=")
+                    .append(millis(count == 0 ? 0 : durations[count - 1])).append('\n');
+            report.append("janky_frames=").append(janky).append('\n');
+            report.append("dropped_frames=").append(dropped).append('\n');
+            report.append("binds=").append(binds).append('\n');
+            report.append("binds_per_frame=")
+                    .append(count == 0 ? "0" : String.format("%.2f", binds / (float) count))
+                    .append('\n');
+            return report.toString();
+        }
+
+        private static long percentile(long[] sorted, int percent) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+        }
+
+        private static String millis(long nanos) {
+            return String.format("%.2f", nanos / 1000000f);
+        }
+    }
+}
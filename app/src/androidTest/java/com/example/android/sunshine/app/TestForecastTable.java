@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/*
+    Checks that the forecast table holds exactly what the cursor did, and measures what the
+    adapter pays per row to read a bind's worth of columns from each of them.
+ */
+public class TestForecastTable extends AndroidTestCase {
+    public static final String LOG_TAG = TestForecastTable.class.getSimpleName();
+
+    // enough rows that the cursor can't keep them all in one window
+    private static final int FORECAST_DAYS = 2000;
+    private static final int BENCHMARK_PASSES = 20;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ForecastTestUtilities.deleteAllRecords(mContext);
+        ForecastTestUtilities.insertForecast(mContext, FORECAST_DAYS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ForecastTestUtilities.deleteAllRecords(mContext);
+        super.tearDown();
+    }
+
+    private Cursor queryForecast() {
+        return mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocation(
+                        ForecastTestUtilities.TEST_LOCATION),
+                ForecastTable.FORECAST_COLUMNS, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    public void testFromCursor() {
+        Cursor cursor = queryForecast();
+        ForecastTable forecast = ForecastTable.fromCursor(cursor);
+        assertEquals(FORECAST_DAYS, forecast.getCount());
+        assertEquals(ForecastTestUtilities.TEST_LOCATION, forecast.getLocationSetting());
+        assertEquals(64.7488, forecast.getCoordLat(), 0.00001);
+        assertEquals(-147.353, forecast.getCoordLong(), 0.00001);
+
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            assertEquals(cursor.getLong(ForecastTable.COL_WEATHER_ID), forecast.getId(i));
+            assertEquals(cursor.getLong(ForecastTable.COL_WEATHER_DATE), forecast.getDate(i));
+            assertEquals(cursor.getInt(ForecastTable.COL_WEATHER_CONDITION_ID),
+                    forecast.getWeatherId(i));
+            assertEquals(cursor.getDouble(ForecastTable.COL_WEATHER_MAX_TEMP),
+                    forecast.getMaxTemp(i));
+            assertEquals(cursor.getDouble(ForecastTable.COL_WEATHER_MIN_TEMP),
+                    forecast.getMinTemp(i));
+            assertEquals(cursor.getString(ForecastTable.COL_WEATHER_DESC),
+                    forecast.getDescription(i));
+            assertEquals(i, forecast.getPositionForDate(forecast.getDate(i)));
+        }
+        cursor.close();
+
+        assertEquals(0, ForecastTable.fromCursor(null).getCount());
+        assertEquals(-1, forecast.getPositionForDate(0));
+    }
+
+    /*
+        Each pass scrolls to the bottom and back up again, reading the same columns that
+        onBindViewHolder reads.  Scrolling back up is what makes the cursor refill its window.
+     */
+    public void testBindPathCostPerRow() {
+        Cursor cursor = queryForecast();
+        ForecastTable forecast = ForecastTable.fromCursor(cursor);
+        int count = forecast.getCount();
+
+        long checksum = 0;
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int pass = 0; pass < BENCHMARK_PASSES; pass++) {
+            for (int i = 0; i < 2 * count; i++) {
+                int position = i < count ? i : 2 * count - 1 - i;
+                cursor.moveToPosition(position);
+                checksum += cursor.getInt(ForecastTable.COL_WEATHER_CONDITION_ID);
+                checksum += cursor.getLong(ForecastTable.COL_WEATHER_DATE);
+                checksum += (long) cursor.getDouble(ForecastTable.COL_WEATHER_MAX_TEMP);
+                checksum += (long) cursor.getDouble(ForecastTable.COL_WEATHER_MIN_TEMP);
+            }
+        }
+        long cursorNanos = SystemClock.elapsedRealtimeNanos() - start;
+        cursor.close();
+
+        long tableChecksum = 0;
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int pass = 0; pass < BENCHMARK_PASSES; pass++) {
+            for (int i = 0; i < 2 * count; i++) {
+                int position = i < count ? i : 2 * count - 1 - i;
+                tableChecksum += forecast.getWeatherId(position);
+                tableChecksum += forecast.getDate(position);
+                tableChecksum += (long) forecast.getMaxTemp(position);
+                tableChecksum += (long) forecast.getMinTemp(position);
+            }
+        }
+        long tableNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        assertEquals(checksum, tableChecksum);
+        long rows = (long) BENCHMARK_PASSES * 2 * count;
+        Log.i(LOG_TAG, "bind path per row, cursor: " + cursorNanos / rows + "ns, table: " +
+                tableNanos / rows + "ns");
+    }
+}
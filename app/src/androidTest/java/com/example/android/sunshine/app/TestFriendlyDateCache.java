@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.DataSetObserver;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+    Compares the cached date strings with the formatting Utility used to do on every call, checks
+    that they hold up when read from several threads at once and that a date change reaches the
+    cache's observers, and logs what a call costs with and without the cache.
+ */
+public class TestFriendlyDateCache extends AndroidTestCase {
+    public static final String LOG_TAG = TestFriendlyDateCache.class.getSimpleName();
+
+    private static final int DAYS = 20;
+    private static final int THREADS = 4;
+    private static final int BENCHMARK_PASSES = 100;
+
+    private FriendlyDateCache mCache;
+    private long[] mDates;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCache = FriendlyDateCache.getInstance(mContext);
+        mCache.invalidate();
+
+        // the same days the sync adapter stores, from yesterday on
+        Time dayTime = new Time();
+        dayTime.setToNow();
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+        mDates = new long[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            mDates[i] = dayTime.setJulianDay(julianStartDay - 1 + i);
+        }
+    }
+
+    public void testCacheMatchesFormatting() {
+        // twice, so the second pass reads what the first one cached
+        for (int pass = 0; pass < 2; pass++) {
+            for (long date : mDates) {
+                assertEquals(legacyFriendlyDayString(mContext, date, true),
+                        Utility.getFriendlyDayString(mContext, date, true));
+                assertEquals(legacyFriendlyDayString(mContext, date, false),
+                        Utility.getFriendlyDayString(mContext, date, false));
+                assertEquals(legacyFullFriendlyDayString(mContext, date),
+                        Utility.getFullFriendlyDayString(mContext, date));
+                assertEquals(legacyDayName(mContext, date),
+                        Utility.getDayName(mContext, date));
+                assertEquals(legacyFormattedMonthDay(date),
+                        Utility.getFormattedMonthDay(mContext, date));
+            }
+        }
+
+        // far enough away that it isn't kept
+        long farAway = mDates[0] + 365L * ForecastTestUtilities.MILLIS_IN_A_DAY;
+        assertEquals(legacyFriendlyDayString(mContext, farAway, false),
+                Utility.getFriendlyDayString(mContext, farAway, false));
+    }
+
+    public void testInvalidateRebuildsStrings() {
+        FriendlyDateCache.DayStrings before = mCache.getDayStrings(mDates[1]);
+        assertSame(before, mCache.getDayStrings(mDates[1]));
+        mCache.invalidate();
+        FriendlyDateCache.DayStrings after = mCache.getDayStrings(mDates[1]);
+        assertNotSame(before, after);
+        assertEquals(before.friendlyLongToday, after.friendlyLongToday);
+    }
+
+    public void testDateChangeTellsObservers() {
+        final int[] changes = new int[1];
+        DataSetObserver observer = new DataSetObserver() {
+            @Override
+            public void onChanged() {
+                changes[0]++;
+            }
+        };
+        FriendlyDateCache.DayStrings before = mCache.getDayStrings(mDates[1]);
+        mCache.registerObserver(observer);
+        try {
+            mCache.onDatesChanged();
+            assertEquals("Error: a date change wasn't passed on to the forecast loader",
+                    1, changes[0]);
+            assertNotSame(before, mCache.getDayStrings(mDates[1]));
+        } finally {
+            mCache.unregisterObserver(observer);
+        }
+        mCache.onDatesChanged();
+        assertEquals(1, changes[0]);
+    }
+
+    public void testConcurrentReadsMatchFormatting() throws InterruptedException {
+        final String[] expected = new String[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            expected[i] = legacyFullFriendlyDayString(mContext, mDates[i]);
+        }
+
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int pass = 0; pass < BENCHMARK_PASSES; pass++) {
+                        if (pass % 10 == 0) {
+                            // as if a time zone broadcast arrived mid read
+                            mCache.invalidate();
+                        }
+                        for (int i = 0; i < DAYS; i++) {
+                            String actual = mCache.getFullFriendlyDayString(mDates[i]);
+                            if (!expected[i].equals(actual)) {
+                                failure.set("expected " + expected[i] + " but was " + actual);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get(), failure.get());
+    }
+
+    public void testFormattingCost() {
+        int calls = BENCHMARK_PASSES * DAYS * 2;
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocCount();
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (int pass = 0; pass < BENCHMARK_PASSES; pass++) {
+                for (long date : mDates) {
+                    legacyFriendlyDayString(mContext, date, false);
+                    legacyFullFriendlyDayString(mContext, date);
+                }
+            }
+            long legacyNanos = SystemClock.elapsedRealtimeNanos() - start;
+            int legacyAllocs = Debug.getThreadAllocCount();
+
+            // warm the cache, as a day's worth of binds would
+            for (long date : mDates) {
+                Utility.getFriendlyDayString(mContext, date, false);
+            }
+            Debug.resetThreadAllocCount();
+            start = SystemClock.elapsedRealtimeNanos();
+            for (int pass = 0; pass < BENCHMARK_PASSES; pass++) {
+                for (long date : mDates) {
+                    Utility.getFriendlyDayString(mContext, date, false);
+                    Utility.getFullFriendlyDayString(mContext, date);
+                }
+            }
+            long cachedNanos = SystemClock.elapsedRealtimeNanos() - start;
+            int cachedAllocs = Debug.getThreadAllocCount();
+
+            Log.i(LOG_TAG, "per call, formatting: " + legacyNanos / calls + "ns " +
+                    legacyAllocs / calls + " allocs, cached: " + cachedNanos / calls + "ns " +
+                    cachedAllocs / calls + " allocs");
+            assertTrue("Error: cached reads allocate as much as formatting",
+                    cachedAllocs < legacyAllocs);
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    // What Utility did before the cache, kept to check against and to measure
+
+    private static String legacyFriendlyDayString(Context context, long dateInMillis,
+                                                  boolean displayLongToday) {
+        Time time = new Time();
+        time.setToNow();
+        long currentTime = System.currentTimeMillis();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
+
+        if (displayLongToday && julianDay == currentJulianDay) {
+            String today = context.getString(R.string.today);
+            int formatId = R.string.format_full_friendly_date;
+            return String.format(context.getString(
+                    formatId,
+                    today,
+                    legacyFormattedMonthDay(dateInMillis)));
+        } else if ( julianDay < currentJulianDay + 7 ) {
+            return legacyDayName(context, dateInMillis);
+        } else {
+            SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
+            return shortenedDateFormat.format(dateInMillis);
+        }
+    }
+
+    private static String legacyFullFriendlyDayString(Context context, long dateInMillis) {
+        String day = legacyDayName(context, dateInMillis);
+        int formatId = R.string.format_full_friendly_date;
+        return String.format(context.getString(
+                formatId,
+                day,
+                legacyFormattedMonthDay(dateInMillis)));
+    }
+
+    private static String legacyDayName(Context context, long dateInMillis) {
+        Time t = new Time();
+        t.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
+        if (julianDay == currentJulianDay) {
+            return context.getString(R.string.today);
+        } else if ( julianDay == currentJulianDay +1 ) {
+            return context.getString(R.string.tomorrow);
+        } else {
+            SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
+            return dayFormat.format(dateInMillis);
+        }
+    }
+
+    private static String legacyFormattedMonthDay(long dateInMillis) {
+        SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMMM dd");
+        return monthDayFormat.format(dateInMillis);
+    }
+}
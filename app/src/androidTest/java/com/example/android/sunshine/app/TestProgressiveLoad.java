@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.v4.content.Loader;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherSnapshot;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Runs the forecast loader against a long forecast with no snapshot, so it reads the database a
+    page at a time.  Checks that today's row is delivered first, that each page only adds rows to
+    the one before it, and that the last delivery matches a single query for the whole forecast.
+    Also checks that a page still starts straight after the last date read when rows before it
+    are deleted between pages, as a sync does.
+    Logs how long the first row takes to arrive next to how long the whole query takes.
+ */
+public class TestProgressiveLoad extends AndroidTestCase {
+    public static final String LOG_TAG = TestProgressiveLoad.class.getSimpleName();
+
+    private static final int FORECAST_DAYS = 1000;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private SharedPreferences mPrefs;
+    private String mLocationKey;
+    private String mSavedLocation;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mLocationKey = mContext.getString(R.string.pref_location_key);
+        mSavedLocation = mPrefs.getString(mLocationKey, null);
+        mPrefs.edit().putString(mLocationKey, ForecastTestUtilities.TEST_LOCATION).commit();
+        SettingsStore.getInstance(mContext).reload();
+
+        ForecastTestUtilities.deleteAllRecords(mContext);
+        ForecastTestUtilities.insertForecast(mContext, FORECAST_DAYS);
+        WeatherSnapshot.getFile(mContext).delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ForecastTestUtilities.deleteAllRecords(mContext);
+        mPrefs.edit().putString(mLocationKey, mSavedLocation).commit();
+        SettingsStore.getInstance(mContext).reload();
+        super.tearDown();
+    }
+
+    public void testPagesBuildTheWholeForecast() throws InterruptedException {
+        Deliveries deliveries = runLoader();
+        ArrayList<ForecastTable> tables = deliveries.tables;
+
+        assertTrue("Error: The forecast was delivered in one go", tables.size() > 1);
+        assertEquals("Error: The first delivery wasn't just today's row",
+                1, tables.get(0).getCount());
+        for (int i = 0; i < tables.size() - 1; i++) {
+            assertTrue("Error: A page before the last wasn't marked partial",
+                    tables.get(i).isPartial());
+            assertPrefix(tables.get(i), tables.get(i + 1));
+        }
+
+        ForecastTable last = tables.get(tables.size() - 1);
+        assertFalse("Error: The last delivery was marked partial", last.isPartial());
+        ForecastTable full = queryWholeForecast();
+        assertEquals("Error: The pages didn't add up to the whole forecast",
+                full.getCount(), last.getCount());
+        assertPrefix(full, last);
+        assertEquals("Error: The location wasn't carried through the pages",
+                full.getLocationSetting(), last.getLocationSetting());
+    }
+
+    public void testPageStartsAfterLastDateRead() {
+        Uri uri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                ForecastTestUtilities.TEST_LOCATION, System.currentTimeMillis());
+        ForecastTable first = queryPage(WeatherContract.WeatherEntry.buildPage(uri, 10));
+        assertEquals(10, first.getCount());
+        long lastDate = first.getDate(first.getCount() - 1);
+
+        // a sync drops the first few days before the next page is read
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                new String[]{Long.toString(first.getDate(2))});
+
+        ForecastTable next = queryPage(
+                WeatherContract.WeatherEntry.buildPageAfter(uri, lastDate, 10));
+        assertEquals(10, next.getCount());
+        assertEquals("Error: the next page didn't start on the day after the last one read",
+                queryWholeForecast().getDate(first.getCount() - 3), next.getDate(0));
+        assertTrue(next.getDate(0) > lastDate);
+    }
+
+    public void testTimeToFirstRow() throws InterruptedException {
+        // once to warm up the provider and the database
+        runLoader();
+        queryWholeForecast();
+
+        Deliveries deliveries = runLoader();
+        long start = SystemClock.elapsedRealtime();
+        queryWholeForecast();
+        long fullQuery = SystemClock.elapsedRealtime() - start;
+
+        Log.i(LOG_TAG, FORECAST_DAYS + " days: first row after " + deliveries.firstMillis +
+                "ms, whole forecast after " + deliveries.lastMillis +
+                "ms in " + deliveries.tables.size() + " deliveries; single query " +
+                fullQuery + "ms");
+        assertTrue("Error: Today's row arrived after the whole forecast",
+                deliveries.firstMillis <= deliveries.lastMillis);
+    }
+
+    private static class Deliveries {
+        final ArrayList<ForecastTable> tables = new ArrayList<ForecastTable>();
+        long firstMillis;
+        long lastMillis;
+    }
+
+    // Starts a loader on the main thread, and collects what it delivers until it delivers a
+    // complete forecast
+    private Deliveries runLoader() throws InterruptedException {
+        final Deliveries deliveries = new Deliveries();
+        final CountDownLatch done = new CountDownLatch(1);
+        final ForecastLoader loader = new ForecastLoader(mContext);
+        final long start = SystemClock.elapsedRealtime();
+        final Handler handler = new Handler(Looper.getMainLooper());
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                loader.registerListener(0, new Loader.OnLoadCompleteListener<ForecastTable>() {
+                    @Override
+                    public void onLoadComplete(Loader<ForecastTable> loader,
+                                               ForecastTable data) {
+                        long elapsed = SystemClock.elapsedRealtime() - start;
+                        if (deliveries.tables.isEmpty()) {
+                            deliveries.firstMillis = elapsed;
+                        }
+                        deliveries.tables.add(data);
+                        if (!data.isPartial()) {
+                            deliveries.lastMillis = elapsed;
+                            done.countDown();
+                        }
+                    }
+                });
+                loader.startLoading();
+            }
+        });
+        try {
+            assertTrue("Error: The loader didn't finish",
+                    done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        } finally {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    loader.reset();
+                }
+            });
+        }
+        return deliveries;
+    }
+
+    private ForecastTable queryWholeForecast() {
+        return queryPage(WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                ForecastTestUtilities.TEST_LOCATION, System.currentTimeMillis()));
+    }
+
+    private ForecastTable queryPage(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri, ForecastTable.FORECAST_COLUMNS,
+                null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        assertNotNull("Error: The forecast query returned no cursor", cursor);
+        try {
+            return ForecastTable.fromCursor(mContext, cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // every row of the shorter table is the same day, in the same place, in the longer one
+    private static void assertPrefix(ForecastTable shorter, ForecastTable longer) {
+        assertTrue("Error: A later delivery lost rows", shorter.getCount() <= longer.getCount());
+        for (int i = 0; i < shorter.getCount(); i++) {
+            assertEquals("Error: Row " + i + " moved between deliveries",
+                    shorter.getDate(i), longer.getDate(i));
+            assertEquals("Error: Row " + i + " changed between deliveries",
+                    shorter.getWeatherId(i), longer.getWeatherId(i));
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+    Checks that the settings snapshot follows preference edits, stays internally consistent
+    while several threads edit the preferences, and logs what a settings read costs with and
+    without it.
+ */
+public class TestSettingsStore extends AndroidTestCase {
+    public static final String LOG_TAG = TestSettingsStore.class.getSimpleName();
+
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int EDITS_PER_WRITER = 200;
+    private static final int BENCHMARK_READS = 20000;
+
+    private SharedPreferences mPrefs;
+    private SettingsStore mStore;
+    private String mLocationKey;
+    private String mUnitsKey;
+    private String mSavedLocation;
+    private String mSavedUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mStore = SettingsStore.getInstance(mContext);
+        mLocationKey = mContext.getString(R.string.pref_location_key);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mSavedLocation = mPrefs.getString(mLocationKey, null);
+        mSavedUnits = mPrefs.getString(mUnitsKey, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit()
+                .putString(mLocationKey, mSavedLocation)
+                .putString(mUnitsKey, mSavedUnits)
+                .commit();
+        mStore.reload();
+        super.tearDown();
+    }
+
+    // Location "<n>" goes with metric units when n is even, so a reader can tell whether the
+    // two settings it sees came from the same edit
+    private void commitPair(int n) {
+        mPrefs.edit()
+                .putString(mLocationKey, Integer.toString(n))
+                .putString(mUnitsKey, mContext.getString(n % 2 == 0 ?
+                        R.string.pref_units_metric : R.string.pref_units_imperial))
+                .commit();
+    }
+
+    private static boolean isCoherent(SettingsStore.Settings settings) {
+        int n = Integer.parseInt(settings.locationSetting);
+        return settings.isMetric == (n % 2 == 0);
+    }
+
+    public void testSnapshotFollowsEdits() {
+        commitPair(3);
+        mStore.reload();
+        SettingsStore.Settings settings = mStore.getSettings();
+        assertEquals("3", settings.locationSetting);
+        assertFalse(settings.isMetric);
+        assertEquals("3", Utility.getPreferredLocation(mContext));
+        assertFalse(Utility.isMetric(mContext));
+
+        commitPair(4);
+        mStore.reload();
+        assertEquals("4", Utility.getPreferredLocation(mContext));
+        assertTrue(Utility.isMetric(mContext));
+    }
+
+    public void testListenerIsToldOnTheMainThread() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<SettingsStore.Settings> received =
+                new AtomicReference<SettingsStore.Settings>();
+        SettingsStore.OnSettingsChangedListener listener =
+                new SettingsStore.OnSettingsChangedListener() {
+                    @Override
+                    public void onSettingsChanged(SettingsStore.Settings settings) {
+                        if (Looper.myLooper() == Looper.getMainLooper() &&
+                                "5".equals(settings.locationSetting)) {
+                            received.set(settings);
+                            latch.countDown();
+                        }
+                    }
+                };
+        mStore.addListener(listener);
+        try {
+            commitPair(5);
+            mStore.reload();
+            assertTrue("Error: listener wasn't called",
+                    latch.await(5, TimeUnit.SECONDS));
+            assertFalse(received.get().isMetric);
+        } finally {
+            mStore.removeListener(listener);
+        }
+    }
+
+    public void testSnapshotStaysCoherentUnderConcurrentEdits() throws InterruptedException {
+        commitPair(0);
+        mStore.reload();
+
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        final CountDownLatch writersDone = new CountDownLatch(WRITERS);
+        Thread[] threads = new Thread[WRITERS + READERS];
+        for (int w = 0; w < WRITERS; w++) {
+            final int writer = w;
+            threads[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < EDITS_PER_WRITER; i++) {
+                        commitPair(writer * EDITS_PER_WRITER + i);
+                        mStore.reload();
+                    }
+                    writersDone.countDown();
+                }
+            });
+        }
+        for (int r = 0; r < READERS; r++) {
+            threads[WRITERS + r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (writersDone.getCount() > 0) {
+                        SettingsStore.Settings settings = mStore.getSettings();
+                        if (!isCoherent(settings)) {
+                            failure.set("location " + settings.locationSetting +
+                                    " seen with metric " + settings.isMetric);
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get(), failure.get());
+        // once the edits stop, the snapshot has to match what was written last
+        SettingsStore.Settings settings = mStore.getSettings();
+        assertEquals(mPrefs.getString(mLocationKey, null), settings.locationSetting);
+        assertTrue(isCoherent(settings));
+    }
+
+    public void testSettingsReadCost() {
+        int checksum = 0;
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < BENCHMARK_READS; i++) {
+            // what Utility.getPreferredLocation and isMetric did on every call
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+            String location = prefs.getString(mContext.getString(R.string.pref_location_key),
+                    mContext.getString(R.string.pref_location_default));
+            boolean isMetric = prefs.getString(mContext.getString(R.string.pref_units_key),
+                    mContext.getString(R.string.pref_units_metric))
+                    .equals(mContext.getString(R.string.pref_units_metric));
+            checksum += location.length() + (isMetric ? 1 : 0);
+        }
+        long preferencesNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        int storeChecksum = 0;
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < BENCHMARK_READS; i++) {
+            String location = Utility.getPreferredLocation(mContext);
+            boolean isMetric = Utility.isMetric(mContext);
+            storeChecksum += location.length() + (isMetric ? 1 : 0);
+        }
+        long storeNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        assertEquals(checksum, storeChecksum);
+        Log.i(LOG_TAG, "location and units read, preferences: " +
+                preferencesNanos / BENCHMARK_READS + "ns, settings store: " +
+                storeNanos / BENCHMARK_READS + "ns");
+    }
+}
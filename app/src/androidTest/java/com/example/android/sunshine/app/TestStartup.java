@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+import android.view.ViewTreeObserver;
+
+import com.example.android.sunshine.app.data.WeatherSnapshot;
+
+/*
+    Launches MainActivity with a stored forecast and logs how long it takes for the first
+    forecast row to be drawn, when the forecast comes from the snapshot and when it has to come
+    from the database.  The time is taken by a pre-draw listener the test puts on the list as
+    soon as the activity has its views.
+ */
+@TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+public class TestStartup extends ActivityInstrumentationTestCase2<MainActivity> {
+    public static final String LOG_TAG = TestStartup.class.getSimpleName();
+
+    private static final int FORECAST_DAYS = 14;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private SharedPreferences mPrefs;
+    private String mLocationKey;
+    private String mSavedLocation;
+    // when the list was first about to draw with rows, or 0 if it hasn't been yet
+    private volatile long mFirstRowTime;
+
+    public TestStartup() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Context context = getInstrumentation().getTargetContext();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        mLocationKey = context.getString(R.string.pref_location_key);
+        mSavedLocation = mPrefs.getString(mLocationKey, null);
+        mPrefs.edit().putString(mLocationKey, ForecastTestUtilities.TEST_LOCATION).commit();
+        SettingsStore.getInstance(context).reload();
+
+        ForecastTestUtilities.deleteAllRecords(context);
+        ForecastTestUtilities.insertForecast(context, FORECAST_DAYS);
+        WeatherSnapshot.writeFromProvider(context, ForecastTestUtilities.TEST_LOCATION);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // finishes the activity before its data goes away
+        super.tearDown();
+        Context context = getInstrumentation().getTargetContext();
+        ForecastTestUtilities.deleteAllRecords(context);
+        WeatherSnapshot.getFile(context).delete();
+        mPrefs.edit().putString(mLocationKey, mSavedLocation).commit();
+        SettingsStore.getInstance(context).reload();
+    }
+
+    public void testStartupFromSnapshot() throws InterruptedException {
+        long millis = timeToFirstRow();
+        Log.i(LOG_TAG, "first forecast row drawn from the snapshot after " + millis + "ms");
+    }
+
+    public void testStartupFromDatabase() throws InterruptedException {
+        WeatherSnapshot.getFile(getInstrumentation().getTargetContext()).delete();
+        long millis = timeToFirstRow();
+        Log.i(LOG_TAG, "first forecast row drawn from the database after " + millis + "ms");
+    }
+
+    private long timeToFirstRow() throws InterruptedException {
+        Application application = (Application)
+                getInstrumentation().getTargetContext().getApplicationContext();
+        Application.ActivityLifecycleCallbacks callbacks = new FirstRowTimer();
+        application.registerActivityLifecycleCallbacks(callbacks);
+        MainActivity activity;
+        long start = SystemClock.elapsedRealtime();
+        try {
+            activity = getActivity();
+            long deadline = start + TIMEOUT_MILLIS;
+            while (mFirstRowTime == 0 && SystemClock.elapsedRealtime() < deadline) {
+                Thread.sleep(5);
+            }
+        } finally {
+            application.unregisterActivityLifecycleCallbacks(callbacks);
+        }
+        long shown = mFirstRowTime;
+        assertTrue("Error: the forecast wasn't shown", shown != 0);
+
+        RecyclerView list = (RecyclerView) activity.findViewById(R.id.recyclerview_forecast);
+        assertTrue("Error: the forecast was shown without any rows", list.getChildCount() > 0);
+        return shown - start;
+    }
+
+    /*
+        Watches the list of the activity under test from the moment its views are created, and
+        records when it's first about to draw with rows in it.
+     */
+    private class FirstRowTimer implements Application.ActivityLifecycleCallbacks {
+        @Override
+        public void onActivityStarted(Activity activity) {
+            if (!(activity instanceof MainActivity)) {
+                return;
+            }
+            final RecyclerView list =
+                    (RecyclerView) activity.findViewById(R.id.recyclerview_forecast);
+            if (null == list) {
+                return;
+            }
+            list.getViewTreeObserver().addOnPreDrawListener(
+                    new ViewTreeObserver.OnPreDrawListener() {
+                        @Override
+                        public boolean onPreDraw() {
+                            if (list.getChildCount() > 0) {
+                                mFirstRowTime = SystemClock.elapsedRealtime();
+                                list.getViewTreeObserver().removeOnPreDrawListener(this);
+                            }
+                            return true;
+                        }
+                    });
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.os.Parcel;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.widget.RemoteViews;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.widget.WidgetArtCache;
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.util.concurrent.ExecutionException;
+
+/*
+    Serves a full size art pack from a local stand-in server, and checks that the detail widget's
+    rows get it scaled down to the row's icon, fetched once per image.  Logs what building a row's
+    views costs, and how big the views are when they're sent to the launcher, with the art loaded
+    the way the widget used to load it and with the cache.
+ */
+public class TestWidgetArtCache extends AndroidTestCase {
+    public static final String LOG_TAG = TestWidgetArtCache.class.getSimpleName();
+
+    // about the size of the real art packs
+    private static final int ART_SIZE = 512;
+    private static final int ROWS = 14;
+
+    private TestArtCache.ArtServer mServer;
+    private SharedPreferences mPrefs;
+    private String mArtPackKey;
+    private String mSavedArtPack;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new TestArtCache.ArtServer(ART_SIZE);
+        mServer.start();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mArtPackKey = mContext.getString(R.string.pref_art_pack_key);
+        mSavedArtPack = mPrefs.getString(mArtPackKey, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().putString(mArtPackKey, mSavedArtPack).commit();
+        SettingsStore.getInstance(mContext).reload();
+        mServer.close();
+        super.tearDown();
+    }
+
+    // Each pack gets its own path, so nothing cached for an earlier one can answer for it
+    private void useArtPack(String name) {
+        mPrefs.edit().putString(mArtPackKey, "http://127.0.0.1:" + mServer.getPort() + "/" +
+                name + SystemClock.elapsedRealtimeNanos() + "/art_%s.png").commit();
+        SettingsStore.getInstance(mContext).reload();
+    }
+
+    public void testArtIsScaledToTheRow() {
+        useArtPack("scaled");
+        WidgetArtCache cache = WidgetArtCache.getInstance(mContext);
+        int size = mContext.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        for (int condition = 0; condition < WeatherConditions.CONDITION_COUNT; condition++) {
+            Bitmap art = cache.get(Utility.getArtUrlForCondition(mContext, condition));
+            assertNotNull("Error: no widget art for condition " + condition, art);
+            assertTrue("Error: widget art is bigger than the row's icon",
+                    art.getWidth() <= size && art.getHeight() <= size);
+        }
+        int requests = mServer.getRequestCount();
+
+        // a second pass, and a prefetch of the same pack, don't fetch anything
+        for (int condition = 0; condition < WeatherConditions.CONDITION_COUNT; condition++) {
+            cache.get(Utility.getArtUrlForCondition(mContext, condition));
+        }
+        cache.prefetch();
+        assertEquals(requests, mServer.getRequestCount());
+    }
+
+    public void testRowCost() throws InterruptedException, ExecutionException {
+        useArtPack("legacy");
+        long legacyNanos = 0;
+        int legacyBytes = 0;
+        for (int row = 0; row < ROWS; row++) {
+            String artUrl = Utility.getArtUrlForCondition(mContext,
+                    row % WeatherConditions.CONDITION_COUNT);
+            long start = SystemClock.elapsedRealtimeNanos();
+            // the way getViewAt loaded its art before the cache
+            Bitmap art = Glide.with(mContext)
+                    .load(artUrl)
+                    .asBitmap()
+                    .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
+            RemoteViews views = buildRow(art);
+            legacyNanos += SystemClock.elapsedRealtimeNanos() - start;
+            legacyBytes += getParcelSize(views);
+        }
+
+        useArtPack("cached");
+        WidgetArtCache cache = WidgetArtCache.getInstance(mContext);
+        cache.prefetch();
+        long cachedNanos = 0;
+        int cachedBytes = 0;
+        for (int row = 0; row < ROWS; row++) {
+            String artUrl = Utility.getArtUrlForCondition(mContext,
+                    row % WeatherConditions.CONDITION_COUNT);
+            long start = SystemClock.elapsedRealtimeNanos();
+            RemoteViews views = buildRow(cache.get(artUrl));
+            cachedNanos += SystemClock.elapsedRealtimeNanos() - start;
+            cachedBytes += getParcelSize(views);
+        }
+
+        Log.i(LOG_TAG, ROWS + " rows of " + ART_SIZE + "px art, as loaded before: " +
+                legacyNanos / ROWS + "ns and " + legacyBytes / ROWS + " bytes per row; " +
+                "from the cache: " + cachedNanos / ROWS + "ns and " + cachedBytes / ROWS +
+                " bytes per row");
+        assertTrue("Error: the cached rows aren't any smaller", cachedBytes < legacyBytes);
+    }
+
+    private RemoteViews buildRow(Bitmap art) {
+        RemoteViews views = new RemoteViews(mContext.getPackageName(),
+                R.layout.widget_detail_list_item);
+        views.setImageViewBitmap(R.id.widget_icon, art);
+        views.setTextViewText(R.id.widget_date, "Today");
+        views.setTextViewText(R.id.widget_description, "Clear");
+        views.setTextViewText(R.id.widget_high_temperature, "21°");
+        views.setTextViewText(R.id.widget_low_temperature, "12°");
+        return views;
+    }
+
+    // what the views cost to send across to the launcher
+    private static int getParcelSize(RemoteViews views) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            views.writeToParcel(parcel, 0);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+/*
+    Checks that the forecast snapshot survives a round trip, and that a location too long to
+    store whole isn't snapshotted.  Compares how long it takes to get at today's forecast through
+    the snapshot and through a freshly opened database, which is what a widget update in a cold
+    process has to do.
+ */
+public class TestWeatherSnapshot extends AndroidTestCase {
+    public static final String LOG_TAG = TestWeatherSnapshot.class.getSimpleName();
+
+    private static final int BENCHMARK_ITERATIONS = 50;
+
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mFile = new File(mContext.getCacheDir(), "test_" + WeatherSnapshot.FILE_NAME);
+        mFile.delete();
+
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] values = TestProvider.createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    private Cursor querySnapshotColumns() {
+        Uri uri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+        return mContext.getContentResolver().query(uri, WeatherSnapshot.SNAPSHOT_COLUMNS,
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    private void writeSnapshot() {
+        Cursor cursor = querySnapshotColumns();
+        assertTrue("Error: snapshot was not written", WeatherSnapshot.write(mFile, cursor));
+        cursor.close();
+    }
+
+    public void testRoundTrip() {
+        writeSnapshot();
+        WeatherSnapshot snapshot = WeatherSnapshot.read(mFile);
+        assertNotNull("Error: snapshot could not be read back", snapshot);
+        assertEquals(TestUtilities.TEST_LOCATION, snapshot.getLocationSetting());
+        assertEquals(64.7488, snapshot.getCoordLat(), 0.00001);
+        assertEquals(-147.353, snapshot.getCoordLong(), 0.00001);
+
+        Cursor cursor = querySnapshotColumns();
+        assertEquals(cursor.getCount(), snapshot.getCount());
+        for (int i = 0; cursor.moveToNext(); i++) {
+            assertEquals(cursor.getLong(0), snapshot.getDate(i));
+            assertEquals(cursor.getInt(1), snapshot.getWeatherId(i));
+            assertEquals(cursor.getDouble(2), snapshot.getMaxTemp(i));
+            assertEquals(cursor.getDouble(3), snapshot.getMinTemp(i));
+            assertEquals(cursor.getFloat(4), snapshot.getHumidity(i));
+            assertEquals(cursor.getFloat(5), snapshot.getPressure(i));
+            assertEquals(cursor.getFloat(6), snapshot.getWindSpeed(i));
+            assertEquals(cursor.getFloat(7), snapshot.getDegrees(i));
+            assertEquals(cursor.getString(8), snapshot.getShortDesc(i));
+        }
+        cursor.close();
+
+        assertEquals(0, snapshot.getFirstIndexOnOrAfter(TestUtilities.TEST_DATE));
+        assertEquals(-1, snapshot.getFirstIndexOnOrAfter(System.currentTimeMillis()));
+    }
+
+    public void testEmptyCursorRemovesSnapshot() {
+        writeSnapshot();
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation("nowhere"), WeatherSnapshot.SNAPSHOT_COLUMNS,
+                null, null, null);
+        assertFalse(WeatherSnapshot.write(mFile, cursor));
+        cursor.close();
+        assertFalse("Error: stale snapshot left behind", mFile.exists());
+        assertNull(WeatherSnapshot.read(mFile));
+    }
+
+    public void testLongLocationIsNotSnapshotted() {
+        writeSnapshot();
+        StringBuilder location = new StringBuilder();
+        while (location.length() < 64) {
+            location.append("Llanfair\u00e9 ");
+        }
+        MatrixCursor cursor = new MatrixCursor(WeatherSnapshot.SNAPSHOT_COLUMNS);
+        cursor.addRow(new Object[]{TestUtilities.TEST_DATE, 800, 20.0, 10.0, 40f, 1015f, 2.5f,
+                90f, "Clear", location.toString(), 64.7488, -147.353});
+        assertFalse("Error: a location that doesn't fit was snapshotted",
+                WeatherSnapshot.write(mFile, cursor));
+        cursor.close();
+        assertFalse("Error: the snapshot for another location was left behind", mFile.exists());
+    }
+
+    public void testCorruptSnapshotIsIgnored() throws Exception {
+        writeSnapshot();
+        FileOutputStream out = new FileOutputStream(mFile, true);
+        out.write(new byte[]{1, 2, 3});
+        out.close();
+        assertNull("Error: truncated or padded snapshot was accepted",
+                WeatherSnapshot.read(mFile));
+    }
+
+    public void testTimeToDataSnapshotVersusProvider() {
+        writeSnapshot();
+        String sql = "SELECT " + WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                WeatherEntry.COLUMN_SHORT_DESC + ", " + WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherEntry.COLUMN_MIN_TEMP + " FROM " + WeatherEntry.TABLE_NAME +
+                " INNER JOIN " + LocationEntry.TABLE_NAME + " ON " + WeatherEntry.TABLE_NAME +
+                "." + WeatherEntry.COLUMN_LOC_KEY + " = " + LocationEntry.TABLE_NAME + "." +
+                LocationEntry._ID + " WHERE " + LocationEntry.COLUMN_LOCATION_SETTING +
+                " = ? AND " + WeatherEntry.COLUMN_DATE + " >= ? ORDER BY " +
+                WeatherEntry.COLUMN_DATE + " ASC";
+        String[] args = {TestUtilities.TEST_LOCATION, Long.toString(TestUtilities.TEST_DATE)};
+
+        long snapshotNanos = 0;
+        long databaseNanos = 0;
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            WeatherSnapshot snapshot = WeatherSnapshot.read(mFile);
+            int today = snapshot.getFirstIndexOnOrAfter(TestUtilities.TEST_DATE);
+            double maxTemp = snapshot.getMaxTemp(today);
+            snapshotNanos += SystemClock.elapsedRealtimeNanos() - start;
+
+            // A cold IntentService has to open the database before it can run the query
+            start = SystemClock.elapsedRealtimeNanos();
+            WeatherDbHelper helper = new WeatherDbHelper(mContext);
+            SQLiteDatabase db = helper.getReadableDatabase();
+            Cursor cursor = db.rawQuery(sql, args);
+            assertTrue(cursor.moveToFirst());
+            double dbMaxTemp = cursor.getDouble(2);
+            cursor.close();
+            helper.close();
+            databaseNanos += SystemClock.elapsedRealtimeNanos() - start;
+
+            assertEquals(dbMaxTemp, maxTemp);
+        }
+
+        Log.i(LOG_TAG, "time to data, snapshot: " +
+                snapshotNanos / BENCHMARK_ITERATIONS / 1000 + "us, database: " +
+                databaseNanos / BENCHMARK_ITERATIONS / 1000 + "us");
+    }
+}
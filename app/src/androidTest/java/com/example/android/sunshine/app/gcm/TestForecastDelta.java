@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Feeds recorded GCM messages to the listener service's message handling, and checks the rows
+    each forecast delta leaves in the database.  Counts the change notifications the provider
+    sends and the notifications the service posts:  every delta that applies should be written
+    in one batch, rejected deltas shouldn't touch the database, and only weather alerts should
+    post a notification.
+ */
+public class TestForecastDelta extends AndroidTestCase {
+    private static final String LOCATION = "99705";
+    private static final int STORED_DAYS = 3;
+    private static final long SETTLE_MILLIS = 500;
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    // Recorded payloads, with %1$s standing for the first day they change
+    private static final String DELTA_CHANGED_FIELDS = "{\"location\":\"99705\"," +
+            "\"start\":\"%1$s\",\"days\":[{},{\"id\":501,\"desc\":\"Rain\",\"max\":18.5}]}";
+    private static final String DELTA_NEW_DAY = "{\"location\":\"99705\",\"start\":\"%1$s\"," +
+            "\"days\":[{\"id\":800,\"desc\":\"Clear\",\"max\":25,\"min\":14,\"hum\":40," +
+            "\"pres\":1015.5,\"wind\":2.5,\"deg\":90}]}";
+    private static final String DELTA_NEW_DAY_INCOMPLETE = "{\"location\":\"99705\"," +
+            "\"start\":\"%1$s\",\"days\":[{\"id\":800,\"desc\":\"Clear\"}]}";
+    private static final String DELTA_BAD_HUMIDITY = "{\"location\":\"99705\"," +
+            "\"start\":\"%1$s\",\"days\":[{\"hum\":140}]}";
+    private static final String DELTA_BAD_WEATHER_ID = "{\"location\":\"99705\"," +
+            "\"start\":\"%1$s\",\"days\":[{\"id\":99}]}";
+    private static final String DELTA_BAD_TEMPERATURE = "{\"location\":\"99705\"," +
+            "\"start\":\"%1$s\",\"days\":[{\"max\":1000}]}";
+    private static final String DELTA_HIGH_BELOW_LOW = "{\"location\":\"99705\"," +
+            "\"start\":\"%1$s\",\"days\":[{\"max\":-40}]}";
+    private static final String DELTA_UNKNOWN_LOCATION = "{\"location\":\"00000\"," +
+            "\"start\":\"%1$s\",\"days\":[{\"id\":800}]}";
+    // %1$s keeps alerts from earlier runs in this process from hiding this one as a repeat
+    private static final String ALERT =
+            "{\"weather\":\"Hurricane %1$s\",\"location\":\"99705\"}";
+
+    private int mToday;
+    private HandlerThread mObserverThread;
+    private ContentObserver mObserver;
+    private final AtomicInteger mChanges = new AtomicInteger();
+    private int mNotifications;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Time dayTime = new Time();
+        dayTime.setToNow();
+        mToday = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+
+        deleteAllRecords();
+        insertForecast();
+
+        mObserverThread = new HandlerThread("ForecastDeltaObserver");
+        mObserverThread.start();
+        mObserver = new ContentObserver(new Handler(mObserverThread.getLooper())) {
+            @Override
+            public void onChange(boolean selfChange) {
+                mChanges.incrementAndGet();
+            }
+        };
+        mContext.getContentResolver().registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI, true, mObserver);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().unregisterContentObserver(mObserver);
+        mObserverThread.quit();
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    public void testChangedFieldsAreMerged() throws InterruptedException {
+        ContentValues before = queryDay(1);
+        feedDelta(DELTA_CHANGED_FIELDS, 0);
+
+        ContentValues after = queryDay(1);
+        assertEquals(501, (int) after.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID));
+        assertEquals("Rain", after.getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC));
+        assertEquals(18.5, after.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP));
+        assertEquals("Error: a field the delta didn't carry was changed",
+                before.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP),
+                after.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP));
+        assertEquals("Error: a day the delta left empty was changed",
+                "Clear", queryDay(0).getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC));
+        assertEquals(STORED_DAYS, countDays());
+
+        assertChanges(1);
+        assertEquals("Error: a forecast delta posted a notification", 0, mNotifications);
+    }
+
+    public void testNewDayIsAdded() throws InterruptedException {
+        feedDelta(DELTA_NEW_DAY, STORED_DAYS);
+        assertEquals(STORED_DAYS + 1, countDays());
+        assertEquals("Clear", queryDay(STORED_DAYS)
+                .getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC));
+        assertChanges(1);
+    }
+
+    public void testBadDeltasAreRejected() throws InterruptedException {
+        feedDelta(DELTA_NEW_DAY_INCOMPLETE, STORED_DAYS);
+        feedDelta(DELTA_BAD_HUMIDITY, 0);
+        feedDelta(DELTA_BAD_WEATHER_ID, 0);
+        feedDelta(DELTA_BAD_TEMPERATURE, 0);
+        feedDelta(DELTA_HIGH_BELOW_LOW, 0);
+        feedDelta(DELTA_UNKNOWN_LOCATION, 0);
+        // too long ago to be part of the forecast
+        feedDelta(DELTA_CHANGED_FIELDS, -5);
+        feedDelta(DELTA_NEW_DAY, ForecastDelta.MAX_DAYS);
+
+        assertEquals(STORED_DAYS, countDays());
+        assertEquals("Clear", queryDay(1)
+                .getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC));
+        assertChanges(0);
+        assertEquals(0, mNotifications);
+    }
+
+    public void testAlertPostsNotification() throws InterruptedException {
+        Bundle data = new Bundle();
+        data.putString("data", String.format(ALERT, SystemClock.elapsedRealtimeNanos()));
+        if (MyGcmListenerService.handleMessage(mContext, data)) {
+            mNotifications++;
+        }
+        feedDelta(DELTA_CHANGED_FIELDS, 0);
+        assertEquals(1, mNotifications);
+        assertChanges(1);
+    }
+
+    private void feedDelta(String payload, int startDay) {
+        Time time = new Time();
+        time.setJulianDay(mToday + startDay);
+        Bundle data = new Bundle();
+        data.putString(MyGcmListenerService.EXTRA_FORECAST,
+                String.format(payload, time.format("%Y-%m-%d")));
+        if (MyGcmListenerService.handleMessage(mContext, data)) {
+            mNotifications++;
+        }
+    }
+
+    // Change notifications are delivered on the observer's thread, so give them time to arrive
+    private void assertChanges(int expected) throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+        while (mChanges.get() < expected && SystemClock.elapsedRealtime() < deadline) {
+            Thread.sleep(50);
+        }
+        Thread.sleep(SETTLE_MILLIS);
+        assertEquals("Error: unexpected number of change notifications",
+                expected, mChanges.get());
+    }
+
+    private void insertForecast() {
+        ContentValues location = new ContentValues();
+        location.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, LOCATION);
+        location.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -147.353);
+        long locationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI, location));
+
+        Time dayTime = new Time();
+        ContentValues[] days = new ContentValues[STORED_DAYS];
+        for (int i = 0; i < STORED_DAYS; i++) {
+            ContentValues values = new ContentValues();
+            values.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+            values.put(WeatherContract.WeatherEntry.COLUMN_DATE, dayTime.setJulianDay(mToday + i));
+            values.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 800);
+            values.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+            values.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 20 + i);
+            values.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 10 + i);
+            values.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 50);
+            values.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1010);
+            values.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 3);
+            values.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 180);
+            days[i] = values;
+        }
+        mContext.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, days);
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private ContentValues queryDay(int day) {
+        Time dayTime = new Time();
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        LOCATION, dayTime.setJulianDay(mToday + day)),
+                null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue("Error: no row for day " + day, cursor.moveToFirst());
+            ContentValues values = new ContentValues();
+            DatabaseUtils.cursorRowToContentValues(cursor, values);
+            return values;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int countDays() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocation(LOCATION),
+                null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Debug;
+import android.support.v4.app.NotificationCompat;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+
+import java.util.ArrayList;
+
+/*
+    Drives the alert pipeline with a stand-in clock, scheduler, wake lock and notification
+    manager.  Checks that repeats are dropped within the window, that a burst is posted as one
+    summary with the wake lock held until it's out, that the summary counts every alert while
+    keeping only the latest, and that dismissing it starts it over.  Then replays a burst of a
+    thousand alerts and logs the CPU time and posts it costs, next to posting a notification for
+    every message the way the listener service used to.
+ */
+public class TestWeatherAlertPipeline extends AndroidTestCase {
+    public static final String LOG_TAG = TestWeatherAlertPipeline.class.getSimpleName();
+
+    private static final int BURST = 1000;
+    // a burst from a storm moving over a handful of places, with a few kinds of alert each
+    private static final String[] LOCATIONS = {"94043", "99705", "10001", "60601", "98101"};
+    private static final String[] ALERTS = {"Hurricane", "Flood", "Tornado", "Hail"};
+    private static final long BURST_SPACING_MILLIS = 10;
+
+    private FakeTime mTime;
+    private FakeWakeLock mWakeLock;
+    private ArrayList<Notification> mPosts;
+    private WeatherAlertPipeline mPipeline;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTime = new FakeTime();
+        mWakeLock = new FakeWakeLock();
+        mPosts = new ArrayList<Notification>();
+        mPipeline = new WeatherAlertPipeline(mContext, mTime, mTime, mWakeLock,
+                new WeatherAlertPipeline.Poster() {
+                    @Override
+                    public void post(Notification notification) {
+                        mPosts.add(notification);
+                    }
+                });
+    }
+
+    public void testRepeatsAreDropped() {
+        assertTrue(mPipeline.offer("Hurricane", "94043"));
+        mTime.advance(WeatherAlertPipeline.DEDUPE_WINDOW_MILLIS - 1);
+        assertFalse("Error: a repeat within the window was shown",
+                mPipeline.offer("Hurricane", "94043"));
+        assertTrue("Error: the same alert for another location was dropped",
+                mPipeline.offer("Hurricane", "99705"));
+        assertTrue("Error: another alert for the same location was dropped",
+                mPipeline.offer("Flood", "94043"));
+
+        mTime.advance(1);
+        assertTrue("Error: a repeat after the window was dropped",
+                mPipeline.offer("Hurricane", "94043"));
+    }
+
+    public void testBurstIsCoalesced() {
+        mPipeline.offer("Hurricane", "94043");
+        assertEquals("Error: the first alert of a burst wasn't posted straight away",
+                1, mPosts.size());
+
+        mTime.advance(10);
+        mPipeline.offer("Flood", "94043");
+        mTime.advance(10);
+        mPipeline.offer("Tornado", "99705");
+        assertEquals("Error: alerts inside the coalescing window were posted", 1, mPosts.size());
+
+        mTime.advance(WeatherAlertPipeline.COALESCE_MILLIS);
+        assertEquals("Error: the end of the burst wasn't posted", 2, mPosts.size());
+        assertEquals(3, mPosts.get(1).number);
+    }
+
+    public void testWakeLockIsHeldUntilTheBurstIsPosted() {
+        mPipeline.offer("Hurricane", "94043");
+        assertEquals("Error: a post made straight away took the wake lock", 0, mWakeLock.mHeld);
+
+        mTime.advance(10);
+        mPipeline.offer("Flood", "94043");
+        mTime.advance(10);
+        mPipeline.offer("Tornado", "99705");
+        assertEquals("Error: the end of the burst wasn't kept awake", 1, mWakeLock.mHeld);
+
+        mTime.advance(WeatherAlertPipeline.COALESCE_MILLIS);
+        assertEquals(2, mPosts.size());
+        assertEquals("Error: the wake lock outlived the post", 0, mWakeLock.mHeld);
+        assertEquals(1, mWakeLock.mAcquires);
+    }
+
+    public void testSummaryCountsEveryAlert() {
+        int count = 0;
+        for (String location : LOCATIONS) {
+            for (String alert : ALERTS) {
+                mPipeline.offer(alert, location);
+                count++;
+                mTime.advance(BURST_SPACING_MILLIS);
+            }
+        }
+        mTime.advance(WeatherAlertPipeline.COALESCE_MILLIS);
+        assertTrue(count > WeatherAlertPipeline.MAX_LINES);
+        assertEquals("Error: the summary lost count of the alerts it no longer lists",
+                count, mPosts.get(mPosts.size() - 1).number);
+    }
+
+    public void testDismissStartsOver() {
+        mPipeline.offer("Hurricane", "94043");
+        mTime.advance(10);
+        mPipeline.offer("Flood", "94043");
+        mPipeline.reset();
+        mTime.advance(WeatherAlertPipeline.COALESCE_MILLIS);
+        assertEquals("Error: a dismissed summary was posted again", 1, mPosts.size());
+        assertEquals(0, mWakeLock.mHeld);
+
+        mPipeline.offer("Tornado", "99705");
+        assertEquals(2, mPosts.size());
+        assertEquals("Error: the alert after a dismissal was added to the old summary",
+                0, mPosts.get(1).number);
+        assertFalse("Error: a dismissal let a repeat through",
+                mPipeline.offer("Hurricane", "94043"));
+    }
+
+    public void testBurstCost() {
+        String[] locations = new String[BURST];
+        String[] alerts = new String[BURST];
+        for (int i = 0; i < BURST; i++) {
+            locations[i] = LOCATIONS[i % LOCATIONS.length];
+            alerts[i] = ALERTS[(i / LOCATIONS.length) % ALERTS.length];
+        }
+
+        long start = Debug.threadCpuTimeNanos();
+        int legacyPosts = 0;
+        for (int i = 0; i < BURST; i++) {
+            mPosts.add(buildLegacyNotification(String.format(
+                    mContext.getString(R.string.gcm_weather_alert), alerts[i], locations[i])));
+            legacyPosts++;
+        }
+        long legacyNanos = Debug.threadCpuTimeNanos() - start;
+        mPosts.clear();
+
+        start = Debug.threadCpuTimeNanos();
+        for (int i = 0; i < BURST; i++) {
+            mPipeline.offer(alerts[i], locations[i]);
+            mTime.advance(BURST_SPACING_MILLIS);
+        }
+        mTime.advance(WeatherAlertPipeline.COALESCE_MILLIS);
+        long pipelineNanos = Debug.threadCpuTimeNanos() - start;
+
+        Log.i(LOG_TAG, BURST + " alerts, posted one by one: " + legacyNanos / 1000 + "us CPU, " +
+                legacyPosts + " posts; through the pipeline: " + pipelineNanos / 1000 +
+                "us CPU, " + mPosts.size() + " posts");
+        int distinct = LOCATIONS.length * ALERTS.length;
+        long burstMillis = BURST * BURST_SPACING_MILLIS;
+        assertTrue("Error: the burst was posted more often than the coalescing window allows",
+                mPosts.size() <= burstMillis / WeatherAlertPipeline.COALESCE_MILLIS + 2);
+        assertEquals("Error: the summary doesn't count every distinct alert",
+                distinct, mPosts.get(mPosts.size() - 1).number);
+    }
+
+    // What the listener service built for every message before the pipeline
+    private Notification buildLegacyNotification(String message) {
+        PendingIntent contentIntent = PendingIntent.getActivity(mContext, 0,
+                new Intent(mContext, MainActivity.class), 0);
+        Bitmap largeIcon = BitmapFactory.decodeResource(mContext.getResources(),
+                R.drawable.art_storm);
+        return new NotificationCompat.Builder(mContext)
+                .setSmallIcon(R.drawable.art_clear)
+                .setLargeIcon(largeIcon)
+                .setContentTitle("Weather Alert!")
+                .setStyle(new NotificationCompat.BigTextStyle().bigText(message))
+                .setContentText(message)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setContentIntent(contentIntent)
+                .build();
+    }
+
+    /*
+        A wake lock that counts how often it's taken, and how many holds are outstanding.
+     */
+    static class FakeWakeLock implements WeatherAlertPipeline.WakeLock {
+        int mHeld;
+        int mAcquires;
+
+        @Override
+        public void acquire() {
+            mHeld++;
+            mAcquires++;
+        }
+
+        @Override
+        public void release() {
+            mHeld--;
+        }
+    }
+
+    /*
+        A clock that only moves when told to, and runs whatever was scheduled as it passes.
+     */
+    static class FakeTime implements WeatherAlertPipeline.Clock, WeatherAlertPipeline.Scheduler {
+        private long mNow;
+        private final ArrayList<Runnable> mTasks = new ArrayList<Runnable>();
+        private final ArrayList<Long> mDueTimes = new ArrayList<Long>();
+
+        @Override
+        public long elapsedRealtime() {
+            return mNow;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            mTasks.add(task);
+            mDueTimes.add(mNow + delayMillis);
+        }
+
+        void advance(long millis) {
+            long until = mNow + millis;
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < mDueTimes.size(); i++) {
+                    if (mDueTimes.get(i) <= until &&
+                            (next == -1 || mDueTimes.get(i) < mDueTimes.get(next))) {
+                        next = i;
+                    }
+                }
+                if (next == -1) {
+                    break;
+                }
+                mNow = Math.max(mNow, mDueTimes.remove(next));
+                mTasks.remove(next).run();
+            }
+            mNow = until;
+        }
+    }
+}
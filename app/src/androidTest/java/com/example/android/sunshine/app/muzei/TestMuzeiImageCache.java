@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.TestArtCache;
+import com.google.android.apps.muzei.api.Artwork;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+    Serves the Muzei photos from a local stand-in server, and runs a series of syncs through the
+    same checks WeatherMuzeiSource makes.  Counts the downloads and the artwork published:  a
+    sync that brings the same condition shouldn't do either, a new description for the same
+    photo should be published without a download, and a photo that's been shown before shouldn't
+    be downloaded again.  Also checks that a redirected photo is followed and a missing one isn't
+    kept.
+ */
+public class TestMuzeiImageCache extends AndroidTestCase {
+    private static final int IMAGE_SIZE = 1024;
+    private static final int SYNCS = 10;
+    private static final String LOCATION = "99705";
+    private static final String DESC = "Light Rain";
+
+    private TestArtCache.ArtServer mServer;
+    private String mPrefix;
+    private Artwork mCurrent;
+    private int mPublished;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new TestArtCache.ArtServer(IMAGE_SIZE);
+        mServer.start();
+        // a new path for each run, so nothing kept by an earlier run answers for it
+        mPrefix = "http://127.0.0.1:" + mServer.getPort() + "/" + SystemClock.elapsedRealtimeNanos();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.close();
+        super.tearDown();
+    }
+
+    // What WeatherMuzeiSource does with a sync's photo
+    private void sync(String imageUrl) {
+        sync(imageUrl, DESC);
+    }
+
+    private void sync(String imageUrl, String desc) {
+        if (WeatherMuzeiSource.isShowing(mCurrent, imageUrl, desc, LOCATION)) {
+            return;
+        }
+        Uri imageUri = MuzeiImageCache.getInstance(mContext).get(imageUrl);
+        assertNotNull("Error: the photo wasn't kept", imageUri);
+        mCurrent = new Artwork.Builder()
+                .imageUri(imageUri)
+                .token(imageUrl)
+                .title(desc)
+                .byline(LOCATION)
+                .build();
+        mPublished++;
+    }
+
+    public void testRepeatedSyncsDownloadOnce() {
+        String rain = mPrefix + "/rain.jpg";
+        String clear = mPrefix + "/clear.jpg";
+        for (int i = 0; i < SYNCS; i++) {
+            sync(rain);
+        }
+        assertEquals("Error: the same photo was published more than once", 1, mPublished);
+        assertEquals("Error: the same photo was downloaded more than once",
+                1, mServer.getRequestCount());
+
+        sync(clear);
+        sync(rain);
+        for (int i = 0; i < SYNCS; i++) {
+            sync(rain);
+        }
+        assertEquals(3, mPublished);
+        assertEquals("Error: a photo that was already kept was downloaded again",
+                2, mServer.getRequestCount());
+    }
+
+    public void testNewDescriptionIsPublished() {
+        String rain = mPrefix + "/rain.jpg";
+        sync(rain);
+        sync(rain, "Moderate Rain");
+        assertEquals("Error: a new description for the same photo wasn't published",
+                2, mPublished);
+        assertEquals("Error: a new description downloaded the photo again",
+                1, mServer.getRequestCount());
+    }
+
+    public void testRedirectIsFollowed() {
+        Uri imageUri = MuzeiImageCache.getInstance(mContext).get(
+                mPrefix + TestArtCache.ArtServer.MOVED + "storm.jpg");
+        assertNotNull("Error: a redirected photo wasn't kept", imageUri);
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    public void testMissingPhotoIsNotKept() {
+        assertNull("Error: an error page was kept as the photo",
+                MuzeiImageCache.getInstance(mContext).get(
+                        mPrefix + TestArtCache.ArtServer.MISSING + "snow.jpg"));
+    }
+
+    public void testKeptPhotoIsReadable() throws IOException {
+        Uri imageUri = MuzeiImageCache.getInstance(mContext).get(mPrefix + "/fog.jpg");
+        assertNotNull(imageUri);
+        assertEquals("content", imageUri.getScheme());
+
+        InputStream in = mContext.getContentResolver().openInputStream(imageUri);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try {
+            BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+        int screen = Math.max(mContext.getResources().getDisplayMetrics().widthPixels,
+                mContext.getResources().getDisplayMetrics().heightPixels);
+        // only ever reduced while it still covers the screen
+        assertTrue("Error: the kept photo is too small to fill the screen",
+                options.outWidth >= Math.min(IMAGE_SIZE, screen));
+    }
+}
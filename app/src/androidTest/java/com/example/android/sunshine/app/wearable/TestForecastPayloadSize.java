@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wearable;
+
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.ForecastTestUtilities;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherSnapshot;
+import com.example.android.sunshine.shared.ForecastPayload;
+import com.google.android.gms.wearable.DataMap;
+
+import java.util.ArrayList;
+
+/*
+    Reads the forecast the wearable bridge sends from the database, and checks that it stops at
+    a day missing from the database.  Compares the size of the data item it makes with the one
+    the bridge used to make, carrying the same days as separate DataMap keys, for 1, 7 and 14
+    days.
+ */
+public class TestForecastPayloadSize extends AndroidTestCase {
+    public static final String LOG_TAG = TestForecastPayloadSize.class.getSimpleName();
+
+    // the keys the bridge used to send today's weather under
+    private static final String KEY_WEATHER_ID = "com.example.key.weather_id";
+    private static final String KEY_TEMP_MAX = "com.example.key.max_temp";
+    private static final String KEY_TEMP_MIN = "com.example.key.min_temp";
+    private static final String KEY_LOCATION = "com.example.key.location";
+    private static final String KEY_DAYS = "com.example.key.days";
+
+    // a day the database is missing, counted from today
+    private static final int MISSING_DAY = 3;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // read from the database, not from what the last sync left
+        WeatherSnapshot.getFile(mContext).delete();
+        ForecastTestUtilities.deleteAllRecords(mContext);
+        ForecastTestUtilities.insertForecast(mContext, 20);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ForecastTestUtilities.deleteAllRecords(mContext);
+        super.tearDown();
+    }
+
+    public void testReadForecast() {
+        ForecastPayload forecast = WearableIntentService.readForecast(mContext,
+                ForecastTestUtilities.TEST_LOCATION);
+        assertNotNull(forecast);
+        assertEquals(WearableIntentService.WEAR_DAYS, forecast.getDayCount());
+        Time time = new Time();
+        time.setToNow();
+        assertEquals("Error: the forecast doesn't start today",
+                Time.getJulianDay(System.currentTimeMillis(), time.gmtoff),
+                forecast.getFirstDay());
+
+        ForecastPayload decoded = ForecastPayload.decode(forecast.encode());
+        assertNotNull(decoded);
+        for (int i = 0; i < forecast.getDayCount(); i++) {
+            assertEquals(forecast.getWeatherId(i), decoded.getWeatherId(i));
+            assertEquals(forecast.getMaxTemp(i), decoded.getMaxTemp(i));
+            assertEquals(forecast.getMinTemp(i), decoded.getMinTemp(i));
+        }
+    }
+
+    public void testForecastStopsAtMissingDay() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_DATE}, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        assertNotNull(cursor);
+        long missingDate;
+        try {
+            assertTrue(cursor.moveToPosition(MISSING_DAY));
+            missingDate = cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(missingDate)});
+
+        ForecastPayload forecast = WearableIntentService.readForecast(mContext,
+                ForecastTestUtilities.TEST_LOCATION);
+        assertNotNull(forecast);
+        assertEquals("Error: the days after a missing day were sent as the days before it",
+                MISSING_DAY, forecast.getDayCount());
+    }
+
+    public void testEncodedSize() {
+        ForecastPayload forecast = WearableIntentService.readForecast(mContext,
+                ForecastTestUtilities.TEST_LOCATION);
+        assertNotNull(forecast);
+
+        for (int days : new int[]{1, 7, 14}) {
+            ForecastPayload payload = new ForecastPayload(forecast.getLocation(),
+                    forecast.getFirstDay(), days);
+            DataMap legacy = new DataMap();
+            legacy.putString(KEY_LOCATION, forecast.getLocation().toUpperCase());
+            ArrayList<DataMap> legacyDays = new ArrayList<DataMap>();
+            for (int i = 0; i < days; i++) {
+                payload.setDay(i, forecast.getWeatherId(i), forecast.getMaxTemp(i),
+                        forecast.getMinTemp(i));
+                DataMap day = i == 0 ? legacy : new DataMap();
+                day.putInt(KEY_WEATHER_ID, forecast.getWeatherId(i));
+                day.putDouble(KEY_TEMP_MAX, forecast.getMaxTemp(i));
+                day.putDouble(KEY_TEMP_MIN, forecast.getMinTemp(i));
+                if (i > 0) {
+                    legacyDays.add(day);
+                }
+            }
+            if (!legacyDays.isEmpty()) {
+                legacy.putDataMapArrayList(KEY_DAYS, legacyDays);
+            }
+
+            DataMap compact = new DataMap();
+            compact.putByteArray(WearableForecastSender.KEY_FORECAST, payload.encode());
+
+            int legacySize = legacy.toByteArray().length;
+            int compactSize = compact.toByteArray().length;
+            Log.i(LOG_TAG, days + " days: " + legacySize + " bytes as DataMap keys, " +
+                    compactSize + " bytes as one payload");
+            assertTrue("Error: the payload is bigger than the keys it replaces for " + days +
+                    " days", compactSize <= legacySize);
+        }
+    }
+}
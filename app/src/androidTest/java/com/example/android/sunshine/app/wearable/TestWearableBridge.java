@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wearable;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.shared.ForecastPayload;
+import com.google.android.gms.wearable.DataMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+    Drives the bridge with a stand-in clock, scheduler, wake lock, transport and forecast source.
+    Checks that a burst of forecasts goes out as one send of the latest, that a burst of watch
+    requests costs one read and one send, and is answered without a read while the last forecast
+    is current, that the wake lock is held until either is answered, and that the connection is
+    kept between sends and dropped once idle.  Then replays an hour of
+    watch requests and syncs, and logs the sends per burst and the connections made, next to
+    connecting for every request the way the intent service used to.
+ */
+public class TestWearableBridge extends AndroidTestCase {
+    public static final String LOG_TAG = TestWearableBridge.class.getSimpleName();
+
+    private static final int FIRST_DAY = 2457198; // 2015-06-24
+    private static final int BURST = 20;
+    private static final long BURST_SPACING_MILLIS = 10;
+    // the watch asks every half minute for the first twenty minutes, then a sync brings a burst
+    private static final long HOUR_MILLIS = 60 * 60 * 1000;
+    private static final long REQUEST_SPACING_MILLIS = 30 * 1000;
+    private static final long REQUESTS_UNTIL_MILLIS = 20 * 60 * 1000;
+    private static final long SYNC_AT_MILLIS = 40 * 60 * 1000;
+    private static final int REQUEST_BURST = 100;
+    private static final long REQUEST_WINDOW_MILLIS = 2000;
+
+    private FakeTime mTime;
+    private FakeWakeLock mWakeLock;
+    private FakeTransport mTransport;
+    private FakeSource mSource;
+    private WearableBridge mBridge;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTime = new FakeTime();
+        mWakeLock = new FakeWakeLock();
+        mTransport = new FakeTransport();
+        new WearableForecastSender(mContext, mTransport).reset();
+        mSource = new FakeSource();
+        mBridge = new WearableBridge(mContext, mTime, mTime, mWakeLock, mTransport, mSource,
+                REQUEST_WINDOW_MILLIS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new WearableForecastSender(mContext, mTransport).reset();
+        super.tearDown();
+    }
+
+    private static byte[] makeForecast(int version) {
+        ForecastPayload forecast = new ForecastPayload("Mountain View, CA", FIRST_DAY, 7);
+        for (int i = 0; i < 7; i++) {
+            forecast.setDay(i, 800 + i, 20 + i + version, 10 + i);
+        }
+        return forecast.encode();
+    }
+
+    public void testBurstIsOneSendOfTheLatest() {
+        for (int i = 0; i < BURST; i++) {
+            mBridge.offer(makeForecast(i), false);
+            mTime.advance(BURST_SPACING_MILLIS);
+        }
+        assertEquals("Error: a forecast was sent inside the coalescing window",
+                0, mTransport.mPuts);
+
+        mTime.advance(WearableBridge.COALESCE_MILLIS);
+        assertEquals("Error: the burst wasn't sent once", 1, mTransport.mPuts);
+        byte[] sent = DataMap.fromByteArray(mTransport.mItem)
+                .getByteArray(WearableForecastSender.KEY_FORECAST);
+        assertTrue("Error: the burst didn't send its latest forecast",
+                Arrays.equals(makeForecast(BURST - 1), sent));
+    }
+
+    public void testWakeLockIsHeldUntilTheSend() {
+        for (int i = 0; i < BURST; i++) {
+            mBridge.offer(makeForecast(i), false);
+            mTime.advance(BURST_SPACING_MILLIS);
+        }
+        assertTrue("Error: a scheduled send wasn't kept awake", mWakeLock.mHeld > 0);
+        mTime.advance(WearableBridge.COALESCE_MILLIS);
+        assertEquals(1, mTransport.mPuts);
+        assertEquals("Error: the wake lock outlived the send", 0, mWakeLock.mHeld);
+        assertEquals("Error: the burst took the wake lock more than once", 1, mWakeLock.mAcquires);
+
+        mTransport.mRefuse = true;
+        mBridge.offer(makeForecast(0), false);
+        mTime.advance(WearableBridge.COALESCE_MILLIS);
+        assertEquals("Error: a failed send kept the wake lock", 0, mWakeLock.mHeld);
+    }
+
+    public void testForceSticksForTheBurst() {
+        mBridge.offer(makeForecast(0), false);
+        mTime.advance(WearableBridge.COALESCE_MILLIS);
+        assertEquals(1, mTransport.mTransfers);
+
+        mBridge.offer(makeForecast(0), true);
+        mBridge.offer(makeForecast(0), false);
+        mTime.advance(WearableBridge.COALESCE_MILLIS);
+        assertEquals("Error: a forced request was lost in the burst", 2, mTransport.mTransfers);
+    }
+
+    public void testRequestBurstIsOneReadAndOneSend() {
+        // every node the watch can reach asks, on every quick wake
+        for (int i = 0; i < REQUEST_BURST; i++) {
+            mBridge.request(i % 2 == 0);
+            mTime.advance(BURST_SPACING_MILLIS);
+        }
+        mTime.advance(REQUEST_WINDOW_MILLIS);
+
+        Log.i(LOG_TAG, REQUEST_BURST + " requests: " + mSource.mReads + " reads, " +
+                mTransport.mPuts + " sends");
+        assertEquals("Error: the burst read the forecast more than once", 1, mSource.mReads);
+        assertEquals("Error: the burst wasn't answered with one send", 1, mTransport.mPuts);
+        assertEquals(1, mTransport.mTransfers);
+    }
+
+    public void testRequestsWaitForTheWindow() {
+        mBridge.request(true);
+        mTime.advance(REQUEST_WINDOW_MILLIS - 1);
+        assertEquals("Error: a request was answered inside the window", 0, mTransport.mPuts);
+        mTime.advance(1);
+        assertEquals(1, mTransport.mPuts);
+    }
+
+    public void testRequestWindowIsKeptAwake() {
+        for (int i = 0; i < REQUEST_BURST; i++) {
+            mBridge.request(false);
+            mTime.advance(BURST_SPACING_MILLIS);
+        }
+        assertTrue("Error: the request window wasn't kept awake", mWakeLock.mHeld > 0);
+        mTime.advance(REQUEST_WINDOW_MILLIS);
+        assertEquals(1, mTransport.mPuts);
+        assertEquals("Error: the wake lock outlived the answer", 0, mWakeLock.mHeld);
+        assertEquals(1, mWakeLock.mAcquires);
+    }
+
+    public void testRequestIsAnsweredFromTheLastForecast() {
+        mBridge.request(true);
+        mTime.advance(REQUEST_WINDOW_MILLIS);
+        assertEquals(1, mSource.mReads);
+
+        mTime.advance(WearableBridge.FORECAST_MAX_AGE_MILLIS / 2);
+        mBridge.request(true);
+        mTime.advance(REQUEST_WINDOW_MILLIS);
+        assertEquals("Error: a current forecast was read again", 1, mSource.mReads);
+        assertEquals("Error: a forced request wasn't answered", 2, mTransport.mTransfers);
+
+        // a forecast offered by a sync is the one to answer with from then on
+        mBridge.offer(makeForecast(1), false);
+        mTime.advance(WearableBridge.COALESCE_MILLIS);
+        mBridge.request(false);
+        mTime.advance(REQUEST_WINDOW_MILLIS);
+        assertEquals(1, mSource.mReads);
+        byte[] sent = DataMap.fromByteArray(mTransport.mItem)
+                .getByteArray(WearableForecastSender.KEY_FORECAST);
+        assertTrue(Arrays.equals(makeForecast(1), sent));
+
+        mTime.advance(WearableBridge.FORECAST_MAX_AGE_MILLIS);
+        mBridge.request(false);
+        mTime.advance(REQUEST_WINDOW_MILLIS);
+        assertEquals("Error: an old forecast wasn't read again", 2, mSource.mReads);
+    }
+
+    public void testConnectionIsReusedUntilIdle() {
+        mBridge.offer(makeForecast(0), false);
+        mTime.advance(WearableBridge.COALESCE_MILLIS);
+        mTime.advance(WearableBridge.IDLE_TIMEOUT_MILLIS / 2);
+        mBridge.offer(makeForecast(1), false);
+        mTime.advance(WearableBridge.COALESCE_MILLIS);
+        assertEquals("Error: the connection wasn't reused", 1, mTransport.mConnects);
+        assertEquals(2, mTransport.mPuts);
+
+        mTime.advance(WearableBridge.IDLE_TIMEOUT_MILLIS);
+        assertFalse("Error: the idle connection wasn't dropped", mTransport.mConnected);
+
+        mBridge.offer(makeForecast(2), false);
+        mTime.advance(WearableBridge.COALESCE_MILLIS);
+        assertEquals(2, mTransport.mConnects);
+        assertEquals(3, mTransport.mPuts);
+    }
+
+    public void testFailedConnectionIsRetried() {
+        mTransport.mRefuse = true;
+        mBridge.offer(makeForecast(0), false);
+        mTime.advance(WearableBridge.COALESCE_MILLIS);
+        assertEquals(0, mTransport.mPuts);
+
+        mTransport.mRefuse = false;
+        mBridge.offer(makeForecast(0), false);
+        mTime.advance(WearableBridge.COALESCE_MILLIS);
+        assertEquals("Error: a forecast that couldn't be sent was skipped the next time",
+                1, mTransport.mPuts);
+    }
+
+    public void testConnectionsPerHour() {
+        int requests = 0;
+        int bursts = 0;
+        for (long t = 0; t < REQUESTS_UNTIL_MILLIS; t += REQUEST_SPACING_MILLIS) {
+            mBridge.offer(makeForecast(0), false);
+            requests++;
+            bursts++;
+            mTime.advance(REQUEST_SPACING_MILLIS);
+        }
+        mTime.advance(SYNC_AT_MILLIS - REQUESTS_UNTIL_MILLIS);
+        // the sync updates the provider and the watch asks at once, for the new forecast
+        for (int i = 0; i < BURST; i++) {
+            mBridge.offer(makeForecast(1), false);
+            requests++;
+            mTime.advance(BURST_SPACING_MILLIS);
+        }
+        bursts++;
+        mTime.advance(HOUR_MILLIS - SYNC_AT_MILLIS);
+
+        Log.i(LOG_TAG, "one hour, " + requests + " requests: " + requests +
+                " connections connecting for each; through the bridge: " +
+                mTransport.mConnects + " connections, " + mTransport.mPuts + " puts, " +
+                mTransport.mTransfers + " transfers for " + bursts + " bursts");
+        assertEquals("Error: a connection was made while one was open", 2, mTransport.mConnects);
+        assertTrue("Error: a burst was sent more than once", mTransport.mPuts <= bursts);
+        assertEquals(2, mTransport.mTransfers);
+        assertFalse("Error: the connection was kept after the hour", mTransport.mConnected);
+    }
+
+    /*
+        A forecast source that counts its reads, each as one database query.
+     */
+    static class FakeSource implements WearableBridge.ForecastSource {
+        int mReads;
+
+        @Override
+        public byte[] readForecast() {
+            mReads++;
+            return makeForecast(0);
+        }
+    }
+
+    /*
+        A transport that counts connections, and can be told to refuse them.
+     */
+    static class FakeTransport extends TestWearableForecastSender.FakeDataLayer
+            implements WearableBridge.Transport {
+        boolean mConnected;
+        boolean mRefuse;
+        int mConnects;
+
+        @Override
+        public boolean connect() {
+            if (mRefuse) {
+                return false;
+            }
+            mConnects++;
+            mConnected = true;
+            return true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return mConnected;
+        }
+
+        @Override
+        public void disconnect() {
+            mConnected = false;
+        }
+    }
+
+    /*
+        A wake lock that counts how often it's taken, and how many holds are outstanding.
+     */
+    static class FakeWakeLock implements WearableBridge.WakeLock {
+        int mHeld;
+        int mAcquires;
+
+        @Override
+        public void acquire() {
+            mHeld++;
+            mAcquires++;
+        }
+
+        @Override
+        public void release() {
+            mHeld--;
+        }
+    }
+
+    /*
+        A clock that only moves when told to, and runs whatever was scheduled as it passes.
+     */
+    static class FakeTime implements WearableBridge.Clock, WearableBridge.Scheduler {
+        private long mNow;
+        private final ArrayList<Runnable> mTasks = new ArrayList<Runnable>();
+        private final ArrayList<Long> mDueTimes = new ArrayList<Long>();
+
+        @Override
+        public long elapsedRealtime() {
+            return mNow;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            mTasks.add(task);
+            mDueTimes.add(mNow + delayMillis);
+        }
+
+        void advance(long millis) {
+            long until = mNow + millis;
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < mDueTimes.size(); i++) {
+                    if (mDueTimes.get(i) <= until &&
+                            (next == -1 || mDueTimes.get(i) < mDueTimes.get(next))) {
+                        next = i;
+                    }
+                }
+                if (next == -1) {
+                    break;
+                }
+                mNow = Math.max(mNow, mDueTimes.remove(next));
+                mTasks.remove(next).run();
+            }
+            mNow = until;
+        }
+    }
+}
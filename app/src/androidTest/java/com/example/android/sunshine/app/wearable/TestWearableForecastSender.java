@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wearable;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.shared.ForecastPayload;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+
+import java.util.Arrays;
+
+/*
+    Runs repeated syncs through the sender with a fake data layer, which, like the real one, only
+    passes an item on to the watch when its bytes differ from the item it already holds.  Counts
+    the transfers when every put carries a unique "time" key, as the bridge used to, and when puts
+    are skipped by the forecast's hash, and checks that forced sends always go out.
+ */
+public class TestWearableForecastSender extends AndroidTestCase {
+    public static final String LOG_TAG = TestWearableForecastSender.class.getSimpleName();
+
+    private static final int SYNCS = 24;
+    private static final int FORECAST_CHANGES = 3;
+    private static final int FIRST_DAY = 2457198; // 2015-06-24
+
+    // the key the bridge used to make every item unique
+    private static final String KEY_TIME = "time";
+
+    /**
+     * Holds the last item put, and counts the puts that would reach the watch.
+     */
+    static class FakeDataLayer implements WearableForecastSender.DataLayer {
+        byte[] mItem;
+        int mPuts;
+        int mTransfers;
+
+        @Override
+        public boolean putDataItem(PutDataRequest request) {
+            mPuts++;
+            if (!Arrays.equals(mItem, request.getData())) {
+                mItem = request.getData();
+                mTransfers++;
+            }
+            return true;
+        }
+    }
+
+    private FakeDataLayer mDataLayer;
+    private WearableForecastSender mSender;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDataLayer = new FakeDataLayer();
+        mSender = new WearableForecastSender(mContext, mDataLayer);
+        mSender.reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mSender.reset();
+        super.tearDown();
+    }
+
+    private static byte[] makeForecast(int version) {
+        ForecastPayload forecast = new ForecastPayload("Mountain View, CA", FIRST_DAY, 7);
+        for (int i = 0; i < 7; i++) {
+            forecast.setDay(i, 800 + i, 20 + i + version, 10 + i);
+        }
+        return forecast.encode();
+    }
+
+    // the forecast a sync brings: it changes only a few times over all the syncs
+    private static byte[] forecastForSync(int sync) {
+        return makeForecast(sync * FORECAST_CHANGES / SYNCS);
+    }
+
+    public void testUnchangedForecastIsNotPut() {
+        byte[] forecast = makeForecast(0);
+        assertTrue(mSender.send(forecast, false));
+        assertFalse("Error: an unchanged forecast was put again", mSender.send(forecast, false));
+        assertTrue("Error: a changed forecast wasn't put", mSender.send(makeForecast(1), false));
+        assertEquals(2, mDataLayer.mPuts);
+    }
+
+    public void testForcedSendIsAlwaysTransferred() {
+        byte[] forecast = makeForecast(0);
+        assertTrue(mSender.send(forecast, false));
+        for (int i = 0; i < 3; i++) {
+            int transfers = mDataLayer.mTransfers;
+            assertTrue("Error: a forced send wasn't put", mSender.send(forecast, true));
+            assertEquals("Error: a forced send wasn't transferred", transfers + 1,
+                    mDataLayer.mTransfers);
+            // make sure the refresh key can't repeat
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                fail();
+            }
+        }
+    }
+
+    public void testFailedPutIsRetried() {
+        byte[] forecast = makeForecast(0);
+        WearableForecastSender failing = new WearableForecastSender(mContext,
+                new WearableForecastSender.DataLayer() {
+                    @Override
+                    public boolean putDataItem(PutDataRequest request) {
+                        return false;
+                    }
+                });
+        assertFalse(failing.send(forecast, false));
+        assertTrue("Error: a forecast the data layer didn't take wasn't put again",
+                mSender.send(forecast, false));
+    }
+
+    public void testTransfersPerSync() {
+        FakeDataLayer legacy = new FakeDataLayer();
+        for (int i = 0; i < SYNCS; i++) {
+            PutDataMapRequest request =
+                    PutDataMapRequest.create(WearableForecastSender.PATH_FORECAST);
+            request.getDataMap().putByteArray(WearableForecastSender.KEY_FORECAST,
+                    forecastForSync(i));
+            request.getDataMap().putLong(KEY_TIME, i);
+            legacy.putDataItem(request.asPutDataRequest());
+        }
+
+        for (int i = 0; i < SYNCS; i++) {
+            mSender.send(forecastForSync(i), false);
+        }
+
+        Log.i(LOG_TAG, SYNCS + " syncs: " + legacy.mTransfers + " transfers with a time key, " +
+                mDataLayer.mTransfers + " hashed");
+        assertEquals(SYNCS, legacy.mTransfers);
+        assertEquals(FORECAST_CHANGES, mDataLayer.mPuts);
+        assertEquals(FORECAST_CHANGES, mDataLayer.mTransfers);
+    }
+}
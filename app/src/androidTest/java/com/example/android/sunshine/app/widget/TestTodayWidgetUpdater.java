@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.test.AndroidTestCase;
+import android.util.SparseIntArray;
+import android.widget.RemoteViews;
+
+import com.example.android.sunshine.app.R;
+
+/*
+    Runs the Today widget updates against a stand-in for the AppWidgetManager, and counts the
+    updates and width lookups a run of syncs costs.  Syncs that bring the same weather shouldn't
+    update any widget, any change to what the widgets show should reach all of them, and a
+    widget's width should only be looked up again once it's resized.
+ */
+public class TestTodayWidgetUpdater extends AndroidTestCase {
+    private static final int SYNCS = 10;
+
+    private FakeHost mHost;
+    private TodayWidgetUpdater mUpdater;
+    private int mDefaultWidth;
+    private int mLargeWidth;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDefaultWidth = mContext.getResources().getDimensionPixelSize(
+                R.dimen.widget_today_default_width);
+        mLargeWidth = mContext.getResources().getDimensionPixelSize(
+                R.dimen.widget_today_large_width);
+        mHost = new FakeHost();
+        mHost.addWidget(1, mDefaultWidth);
+        mHost.addWidget(2, mDefaultWidth);
+        mHost.addWidget(3, mLargeWidth);
+        mUpdater = new TodayWidgetUpdater(mContext);
+    }
+
+    private static TodayWidgetUpdater.Content content(String description) {
+        return new TodayWidgetUpdater.Content(R.drawable.art_clear, description, "21°", "12°");
+    }
+
+    public void testNoOpSyncsDontUpdate() {
+        assertEquals("Error: the first sync didn't update every widget",
+                3, mUpdater.update(mHost, content("Clear")));
+        for (int i = 0; i < SYNCS; i++) {
+            mUpdater.update(mHost, content("Clear"));
+        }
+        assertEquals("Error: syncs with the same weather updated widgets", 3, mHost.mUpdates);
+        assertEquals("Error: widths were looked up on every sync", 3, mHost.mWidthLookups);
+
+        assertEquals("Error: new weather didn't update every widget",
+                3, mUpdater.update(mHost, content("Rain")));
+        assertEquals(6, mHost.mUpdates);
+    }
+
+    public void testAnyChangeIsSent() {
+        mUpdater.update(mHost, content("Clear"));
+        TodayWidgetUpdater.Content[] changes = {
+                new TodayWidgetUpdater.Content(R.drawable.art_clouds, "Clear", "21°", "12°"),
+                new TodayWidgetUpdater.Content(R.drawable.art_clouds, "Clear", "22°", "12°"),
+                new TodayWidgetUpdater.Content(R.drawable.art_clouds, "Clear", "22°", "11°"),
+                new TodayWidgetUpdater.Content(R.drawable.art_clouds, null, "22°", "11°"),
+        };
+        for (TodayWidgetUpdater.Content change : changes) {
+            assertEquals("Error: a change to what the widgets show wasn't sent",
+                    3, mUpdater.update(mHost, change));
+        }
+        assertEquals(0, mUpdater.update(mHost,
+                new TodayWidgetUpdater.Content(R.drawable.art_clouds, null, "22°", "11°")));
+    }
+
+    public void testResizeOnlyUpdatesThatWidget() {
+        mUpdater.update(mHost, content("Clear"));
+
+        // still the same layout, so the new width doesn't change what it shows
+        mHost.mWidths.put(1, mDefaultWidth + 1);
+        mUpdater.invalidateLayout(1);
+        assertEquals(0, mUpdater.update(mHost, content("Clear")));
+
+        mHost.mWidths.put(2, mLargeWidth);
+        mUpdater.invalidateLayout(2);
+        assertEquals("Error: a resize into a new layout wasn't sent", 1,
+                mUpdater.update(mHost, content("Clear")));
+        assertEquals(2, mHost.mLastUpdated);
+        assertEquals(R.layout.widget_today_large, mHost.mLastLayout);
+        assertEquals("Error: widths were looked up for widgets that weren't resized",
+                5, mHost.mWidthLookups);
+    }
+
+    public void testInvalidatedWidgetsAreResent() {
+        mUpdater.update(mHost, content("Clear"));
+        mUpdater.invalidateContent(new int[]{3});
+        assertEquals(1, mUpdater.update(mHost, content("Clear")));
+        assertEquals(3, mHost.mLastUpdated);
+
+        // a widget that's deleted and comes back under the same id starts over
+        mUpdater.forget(new int[]{1});
+        assertEquals(1, mUpdater.update(mHost, content("Clear")));
+        assertEquals(1, mHost.mLastUpdated);
+    }
+
+    /*
+        Counts what the updater asks of the AppWidgetManager.
+     */
+    static class FakeHost implements TodayWidgetUpdater.Host {
+        final SparseIntArray mWidths = new SparseIntArray();
+        int mUpdates;
+        int mWidthLookups;
+        int mLastUpdated;
+        int mLastLayout;
+
+        void addWidget(int appWidgetId, int width) {
+            mWidths.put(appWidgetId, width);
+        }
+
+        @Override
+        public int[] getAppWidgetIds() {
+            int[] ids = new int[mWidths.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = mWidths.keyAt(i);
+            }
+            return ids;
+        }
+
+        @Override
+        public int getWidgetWidth(int appWidgetId) {
+            mWidthLookups++;
+            return mWidths.get(appWidgetId);
+        }
+
+        @Override
+        public void updateAppWidget(int appWidgetId, RemoteViews views) {
+            mUpdates++;
+            mLastUpdated = appWidgetId;
+            mLastLayout = views.getLayoutId();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * {@link ArtCache} keeps the art for every weather condition in the current art pack decoded
+ * and pinned in memory, so the forecast list and the detail screen can show it as soon as they
+ * bind rather than starting a load per view.  There are only a handful of conditions, so the
+ * whole pack is fetched at once after each sync and whenever the art pack changes.
+ */
+public class ArtCache {
+    public static final String LOG_TAG = ArtCache.class.getSimpleName();
+
+    private static ArtCache sInstance;
+
+    private final Context mContext;
+    // Replaced as a whole by each prefetch, so readers never see a half filled pack
+    private volatile Map<String, Bitmap> mPinned = Collections.emptyMap();
+    // Holding on to the requests keeps Glide from reusing the bitmaps we've pinned
+    private Map<String, FutureTarget<Bitmap>> mTargets = Collections.emptyMap();
+
+    public static synchronized ArtCache getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new ArtCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ArtCache(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * @return the pinned art for the url, or null if it isn't one of the current art pack's
+     * images or hasn't been fetched yet.  Never blocks, so it's safe to call while binding.
+     */
+    public Bitmap get(String artUrl) {
+        return null == artUrl ? null : mPinned.get(artUrl);
+    }
+
+    /**
+     * Fetches and decodes the art for every condition in the current art pack, then pins it in
+     * place of whatever was pinned before.  Images that are already pinned aren't fetched
+     * again.  This blocks on the network, so it must not be called on the main thread.
+     */
+    public synchronized void prefetch() {
+        HashMap<String, Bitmap> pinned = new HashMap<String, Bitmap>();
+        HashMap<String, FutureTarget<Bitmap>> targets = new HashMap<String, FutureTarget<Bitmap>>();
+        if (Utility.usingLocalGraphics(mContext)) {
+            pin(pinned, targets);
+            return;
+        }
+
+        // Decode at the size the art is shown at in the today row and the detail screen; the
+        // list's smaller icons scale down from it
+        int size = mContext.getResources().getDimensionPixelSize(R.dimen.today_icon);
+        for (int condition = 0; condition < WeatherConditions.CONDITION_COUNT; condition++) {
+            String artUrl = Utility.getArtUrlForCondition(mContext, condition);
+            if (pinned.containsKey(artUrl)) {
+                continue;
+            }
+            Bitmap art = mPinned.get(artUrl);
+            if (null != art) {
+                pinned.put(artUrl, art);
+                targets.put(artUrl, mTargets.get(artUrl));
+                continue;
+            }
+
+            FutureTarget<Bitmap> target = Glide.with(mContext)
+                    .load(artUrl)
+                    .asBitmap()
+                    .dontTransform()
+                    .into(size, size);
+            try {
+                pinned.put(artUrl, target.get());
+                targets.put(artUrl, target);
+            } catch (InterruptedException | ExecutionException e) {
+                // binds fall back to loading this one themselves
+                Log.e(LOG_TAG, "Error retrieving art from " + artUrl, e);
+                target.clear();
+            }
+        }
+        pin(pinned, targets);
+    }
+
+    // Swaps in the new pack, and lets Glide have back whatever isn't in it
+    private void pin(Map<String, Bitmap> pinned, Map<String, FutureTarget<Bitmap>> targets) {
+        mPinned = pinned;
+        for (Map.Entry<String, FutureTarget<Bitmap>> entry : mTargets.entrySet()) {
+            if (!targets.containsKey(entry.getKey())) {
+                entry.getValue().clear();
+            }
+        }
+        mTargets = targets;
+    }
+
+    /**
+     * Runs {@link #prefetch()} on a background thread.
+     */
+    public void prefetchAsync() {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                prefetch();
+            }
+        }, LOG_TAG).start();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+/**
+ * {@link ForecastDiff} is the smallest set of removes, inserts and changes that turns one
+ * forecast into the next.  Rows are matched by date, and both forecasts are sorted by date, so
+ * the diff is a single merge over the two.  It is computed on the loader thread and only
+ * dispatched to the adapter on the main thread.
+ */
+public class ForecastDiff {
+    static final int UPDATE_REMOVE = 0;
+    static final int UPDATE_INSERT = 1;
+    static final int UPDATE_CHANGE = 2;
+
+    static class Update {
+        final int type;
+        final int position;
+        int count;
+
+        Update(int type, int position) {
+            this.type = type;
+            this.position = position;
+            this.count = 1;
+        }
+    }
+
+    // Weak, so that a chain of forecasts doesn't keep every earlier forecast alive
+    private final WeakReference<ForecastTable> mFrom;
+    private final ArrayList<Update> mUpdates = new ArrayList<Update>();
+
+    private ForecastDiff(ForecastTable from) {
+        mFrom = new WeakReference<ForecastTable>(from);
+    }
+
+    /**
+     * Computes the updates that turn {@code from} into {@code to}.  Positions in each update
+     * are relative to the list as it stands after the updates before it have been applied,
+     * which is what {@link RecyclerView.Adapter}'s notify methods expect.
+     */
+    public static ForecastDiff compute(ForecastTable from, ForecastTable to) {
+        ForecastDiff diff = new ForecastDiff(from);
+        int fromCount = from.getCount();
+        int toCount = to.getCount();
+        int i = 0;
+        int j = 0;
+        int position = 0;
+        while (i < fromCount || j < toCount) {
+            if (j == toCount || (i < fromCount && from.getDate(i) < to.getDate(j))) {
+                // the row is gone, and the rows after it move up into its place
+                diff.add(UPDATE_REMOVE, position);
+                i++;
+            } else if (i == fromCount || to.getDate(j) < from.getDate(i)) {
+                diff.add(UPDATE_INSERT, position);
+                j++;
+                position++;
+            } else {
+                // A row that moves to or from the top changes layout, even if its data doesn't
+                if (rowChanged(from, i, to, j) || (i == 0) != (j == 0)) {
+                    diff.add(UPDATE_CHANGE, position);
+                }
+                i++;
+                j++;
+                position++;
+            }
+        }
+        return diff;
+    }
+
+    private static boolean rowChanged(ForecastTable from, int i, ForecastTable to, int j) {
+        ForecastDisplayModel fromModel = from.getDisplayModel(i);
+        ForecastDisplayModel toModel = to.getDisplayModel(j);
+        if (null != fromModel && null != toModel) {
+            return !fromModel.equals(toModel);
+        }
+        return from.getWeatherId(i) != to.getWeatherId(j) ||
+                from.getMaxTemp(i) != to.getMaxTemp(j) ||
+                from.getMinTemp(i) != to.getMinTemp(j);
+    }
+
+    // Runs of the same kind of update are folded into one ranged update
+    private void add(int type, int position) {
+        if (!mUpdates.isEmpty()) {
+            Update last = mUpdates.get(mUpdates.size() - 1);
+            if (last.type == type) {
+                if (type == UPDATE_REMOVE && last.position == position) {
+                    last.count++;
+                    return;
+                } else if (type != UPDATE_REMOVE && last.position + last.count == position) {
+                    last.count++;
+                    return;
+                }
+            }
+        }
+        mUpdates.add(new Update(type, position));
+    }
+
+    /**
+     * @return true if this diff was computed from the given forecast, and so can be applied to
+     * an adapter that is currently showing it.
+     */
+    public boolean isFrom(ForecastTable forecast) {
+        return null != forecast && mFrom.get() == forecast;
+    }
+
+    public boolean isEmpty() {
+        return mUpdates.isEmpty();
+    }
+
+    ArrayList<Update> getUpdates() {
+        return mUpdates;
+    }
+
+    /**
+     * Tells the adapter about each update.  Must be called on the main thread, after the
+     * adapter has switched to the new forecast.
+     */
+    public void dispatchUpdatesTo(RecyclerView.Adapter adapter) {
+        for (Update update : mUpdates) {
+            switch (update.type) {
+                case UPDATE_REMOVE:
+                    adapter.notifyItemRangeRemoved(update.position, update.count);
+                    break;
+                case UPDATE_INSERT:
+                    adapter.notifyItemRangeInserted(update.position, update.count);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(update.position, update.count);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+/**
+ * {@link ForecastDisplayModel} holds everything one forecast list item shows, already formatted
+ * for the current units, art pack and locale.  Models are built on the loader thread, so
+ * binding a row is nothing more than handing these fields to its views.
+ */
+public class ForecastDisplayModel {
+    public final long date;
+    // "Today, June 24" for today's row in the today layout, otherwise the same as dateText
+    public final String longDateText;
+    public final String dateText;
+    public final String description;
+    public final String descriptionA11y;
+    public final String highText;
+    public final String highA11y;
+    public final String lowText;
+    public final String lowA11y;
+    public final int iconResourceId;
+    public final int artResourceId;
+    // null when the art pack is the built in one and the resources should be used directly
+    public final String artUrl;
+    public final String transitionName;
+
+    private ForecastDisplayModel(long date, String longDateText, String dateText,
+                                 String description, String descriptionA11y,
+                                 String highText, String highA11y,
+                                 String lowText, String lowA11y,
+                                 int iconResourceId, int artResourceId, String artUrl,
+                                 String transitionName) {
+        this.date = date;
+        this.longDateText = longDateText;
+        this.dateText = dateText;
+        this.description = description;
+        this.descriptionA11y = descriptionA11y;
+        this.highText = highText;
+        this.highA11y = highA11y;
+        this.lowText = lowText;
+        this.lowA11y = lowA11y;
+        this.iconResourceId = iconResourceId;
+        this.artResourceId = artResourceId;
+        this.artUrl = artUrl;
+        this.transitionName = transitionName;
+    }
+
+    /**
+     * Formats every row of a forecast.  This reads preferences and resources and allocates
+     * date formatters, so it must not be called on the main thread.
+     */
+    public static ForecastDisplayModel[] fromForecast(Context context, ForecastTable forecast) {
+        int count = forecast.getCount();
+        ForecastDisplayModel[] models = new ForecastDisplayModel[count];
+        if (count == 0) {
+            return models;
+        }
+
+        // These don't change from row to row, so only look them up once
+        boolean isMetric = Utility.isMetric(context);
+        boolean usingLocalGraphics = Utility.usingLocalGraphics(context);
+        String temperatureFormat = context.getString(R.string.format_temperature);
+
+        for (int i = 0; i < count; i++) {
+            long date = forecast.getDate(i);
+            int weatherId = forecast.getWeatherId(i);
+
+            String dateText = Utility.getFriendlyDayString(context, date, false);
+            String longDateText = Utility.getFriendlyDayString(context, date, true);
+
+            String description = Utility.getStringForWeatherCondition(context, weatherId);
+            String highText = Utility.formatTemperature(temperatureFormat,
+                    forecast.getMaxTemp(i), isMetric);
+            String lowText = Utility.formatTemperature(temperatureFormat,
+                    forecast.getMinTemp(i), isMetric);
+
+            models[i] = new ForecastDisplayModel(date, longDateText, dateText,
+                    description, context.getString(R.string.a11y_forecast, description),
+                    highText, context.getString(R.string.a11y_high_temp, highText),
+                    lowText, context.getString(R.string.a11y_low_temp, lowText),
+                    Utility.getIconResourceForWeatherCondition(weatherId),
+                    Utility.getArtResourceForWeatherCondition(weatherId),
+                    usingLocalGraphics ? null :
+                            Utility.getArtUrlForWeatherCondition(context, weatherId),
+                    // this enables better animations. even if we lose state due to a device
+                    // rotation, the animator can use this to re-find the original view.  Keyed
+                    // by date so that a row keeps its name when rows above it come and go.
+                    "iconView" + date);
+        }
+        return models;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ForecastDisplayModel)) return false;
+        ForecastDisplayModel other = (ForecastDisplayModel) o;
+        // the content descriptions and the transition name follow from the fields compared here
+        return date == other.date &&
+                iconResourceId == other.iconResourceId &&
+                artResourceId == other.artResourceId &&
+                equal(longDateText, other.longDateText) &&
+                equal(dateText, other.dateText) &&
+                equal(description, other.description) &&
+                equal(highText, other.highText) &&
+                equal(lowText, other.lowText) &&
+                equal(artUrl, other.artUrl);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (date ^ (date >>> 32));
+        result = 31 * result + (dateText != null ? dateText.hashCode() : 0);
+        result = 31 * result + (description != null ? description.hashCode() : 0);
+        result = 31 * result + (highText != null ? highText.hashCode() : 0);
+        result = 31 * result + (lowText != null ? lowText.hashCode() : 0);
+        result = 31 * result + iconResourceId;
+        return result;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DataSetObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherSnapshot;
+
+/**
+ * {@link ForecastLoader} queries the forecast for the preferred location on a background thread
+ * and hands the list a {@link ForecastTable}, so the cursor never reaches the main thread.
+ * Like {@link android.support.v4.content.CursorLoader} it reloads whenever the weather data
+ * changes, and it also reloads when the day changes, since the rows' dates are formatted
+ * relative to today.
+ * <p>
+ * The first load reads the forecast from the {@link WeatherSnapshot} the last sync wrote, so a
+ * cold start can show the list without opening the database.  The database is queried straight
+ * after that snapshot has been delivered.
+ * <p>
+ * When the list has nothing to show yet, and there's no snapshot, the database is read a page
+ * at a time: today's row first, then the rest of the days in pages, with each page delivered
+ * as soon as it's read.  Later reloads read everything at once, so the rows already on screen
+ * are only diffed.
+ */
+public class ForecastLoader extends AsyncTaskLoader<ForecastTable> {
+    // today's row is a page of its own, so it can be shown before anything else is read
+    private static final int FIRST_PAGE_SIZE = 1;
+    private static final int PAGE_SIZE = 100;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    // The rows' "Today" and "Tomorrow" are formatted when they're loaded, so they're loaded
+    // again when the day changes
+    private final DataSetObserver mDateObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            onContentChanged();
+        }
+    };
+    // read by the loader thread to diff each new forecast against the one the list has
+    private volatile ForecastTable mForecast;
+    private boolean mObserverRegistered;
+    // Only the first load of a loader tries the snapshot
+    private volatile boolean mSnapshotTried;
+    // set when the last load came from the snapshot, so the database still has to be read
+    private volatile boolean mNeedsDatabase;
+
+    public ForecastLoader(Context context) {
+        super(context);
+    }
+
+    @Override
+    public ForecastTable loadInBackground() {
+        // To only show current and future dates, filter the query to return weather only for
+        // dates after or including today.
+
+        // Sort order:  Ascending, by date.
+        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+        String locationSetting = Utility.getPreferredLocation(getContext());
+        long now = System.currentTimeMillis();
+
+        if (!mSnapshotTried) {
+            mSnapshotTried = true;
+            ForecastTable forecast = ForecastTable.fromSnapshot(getContext(),
+                    WeatherSnapshot.readForLocation(getContext(), locationSetting), now);
+            if (forecast.getCount() > 0) {
+                mNeedsDatabase = true;
+                return forecast;
+            }
+        }
+        mNeedsDatabase = false;
+
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, now);
+
+        ForecastTable previous = mForecast;
+        if (null == previous) {
+            return loadInPages(weatherForLocationUri, sortOrder);
+        }
+
+        ForecastTable forecast = query(weatherForLocationUri, sortOrder);
+        // Work out which rows actually changed here, rather than on the main thread
+        return forecast.withDiffFrom(previous);
+    }
+
+    private ForecastTable query(Uri uri, String sortOrder) {
+        Cursor cursor = getContext().getContentResolver().query(uri,
+                ForecastTable.FORECAST_COLUMNS, null, null, sortOrder);
+        if (null == cursor) {
+            return ForecastTable.EMPTY;
+        }
+        try {
+            return ForecastTable.fromCursor(getContext(), cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Delivers every page but the last as it's read, and returns the whole forecast
+    private ForecastTable loadInPages(Uri uri, String sortOrder) {
+        ForecastTable forecast = ForecastTable.EMPTY;
+        ForecastTable delivered = null;
+        int pageSize = FIRST_PAGE_SIZE;
+        while (true) {
+            // each page starts after the last date read, so rows moved by a sync in between
+            // are neither skipped nor read twice
+            Uri pageUri = forecast.getCount() == 0
+                    ? WeatherContract.WeatherEntry.buildPage(uri, pageSize)
+                    : WeatherContract.WeatherEntry.buildPageAfter(uri,
+                            forecast.getDate(forecast.getCount() - 1), pageSize);
+            ForecastTable page = query(pageUri, sortOrder);
+            boolean last = page.getCount() < pageSize || isLoadInBackgroundCanceled();
+            forecast = ForecastTable.concat(forecast, page, !last);
+            if (null != delivered) {
+                // so the adapter only hears about the rows this page added
+                forecast = forecast.withDiffFrom(delivered);
+            }
+            if (last) {
+                return forecast;
+            }
+            deliverPage(forecast);
+            delivered = forecast;
+            pageSize = PAGE_SIZE;
+        }
+    }
+
+    private void deliverPage(final ForecastTable forecast) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isStarted() && !isAbandoned()) {
+                    deliverResult(forecast);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void deliverResult(ForecastTable forecast) {
+        if (isReset()) {
+            return;
+        }
+        mForecast = forecast;
+        if (isStarted()) {
+            super.deliverResult(forecast);
+        }
+        if (mNeedsDatabase) {
+            // The snapshot is on screen, now catch up with the database
+            mNeedsDatabase = false;
+            onContentChanged();
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserverRegistered) {
+            // The provider notifies on the weather root, which covers every forecast uri
+            getContext().getContentResolver().registerContentObserver(
+                    WeatherContract.WeatherEntry.CONTENT_URI, true, mObserver);
+            FriendlyDateCache.getInstance(getContext()).registerObserver(mDateObserver);
+            mObserverRegistered = true;
+        }
+        if (mForecast != null) {
+            deliverResult(mForecast);
+        }
+        if (takeContentChanged() || mForecast == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            FriendlyDateCache.getInstance(getContext()).unregisterObserver(mDateObserver);
+            mObserverRegistered = false;
+        }
+        mForecast = null;
+    }
+}
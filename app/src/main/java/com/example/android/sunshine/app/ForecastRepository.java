@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.ArrayList;
+
+/**
+ * {@link ForecastRepository} holds the forecast an activity's list has loaded, so other
+ * fragments in the same activity can show rows from it without querying for them again.  In
+ * two-pane mode the detail pane finds the selected day here, and hears about each reload of the
+ * list rather than running its own loader.
+ * <p>
+ * A repository belongs to one activity and is only used on the main thread.
+ */
+public class ForecastRepository {
+    /**
+     * Implemented by activities that share a repository with their fragments.
+     */
+    public interface Owner {
+        ForecastRepository getForecastRepository();
+    }
+
+    /**
+     * Callback for when the list loads a new forecast.
+     */
+    public interface Observer {
+        void onForecastChanged(ForecastTable forecast);
+    }
+
+    private final ArrayList<Observer> mObservers = new ArrayList<Observer>();
+    private ForecastTable mForecast;
+
+    /**
+     * @return the last forecast the list loaded, or null if it hasn't loaded one yet.
+     */
+    public ForecastTable getForecast() {
+        return mForecast;
+    }
+
+    public void setForecast(ForecastTable forecast) {
+        mForecast = forecast;
+        // copied, so an observer can remove itself while being told
+        for (Observer observer : new ArrayList<Observer>(mObservers)) {
+            observer.onForecastChanged(forecast);
+        }
+    }
+
+    public void addObserver(Observer observer) {
+        if (!mObservers.contains(observer)) {
+            mObservers.add(observer);
+        }
+    }
+
+    public void removeObserver(Observer observer) {
+        mObservers.remove(observer);
+    }
+}
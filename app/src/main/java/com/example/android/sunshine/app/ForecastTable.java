@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherSnapshot;
+
+/**
+ * {@link ForecastTable} is an immutable, array-backed copy of the forecast rows the list shows.
+ * Each column is held in its own primitive array, so the adapter can read any row without
+ * moving a {@link Cursor} or refilling its window while the list scrolls.  A table loaded for
+ * display also carries a {@link ForecastDisplayModel} per row.
+ */
+public class ForecastTable {
+    // For the forecast view we're showing only a small subset of the stored data.
+    // Specify the columns we need.
+    static final String[] FORECAST_COLUMNS = {
+            // In this case the id needs to be fully qualified with a table name, since
+            // the content provider joins the location & weather tables in the background
+            // (both have an _id column)
+            // On the one hand, that's annoying.  On the other, you can search the weather table
+            // using the location set by the user, which is only in the Location table.
+            // So the convenience is worth it.
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+            // the rest are only shown by the detail pane, which reads them from here rather
+            // than querying for the row again
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    // These indices are tied to FORECAST_COLUMNS.  If FORECAST_COLUMNS changes, these
+    // must change.
+    static final int COL_WEATHER_ID = 0;
+    static final int COL_WEATHER_DATE = 1;
+    static final int COL_WEATHER_DESC = 2;
+    static final int COL_WEATHER_MAX_TEMP = 3;
+    static final int COL_WEATHER_MIN_TEMP = 4;
+    static final int COL_LOCATION_SETTING = 5;
+    static final int COL_WEATHER_CONDITION_ID = 6;
+    static final int COL_COORD_LAT = 7;
+    static final int COL_COORD_LONG = 8;
+    static final int COL_WEATHER_HUMIDITY = 9;
+    static final int COL_WEATHER_PRESSURE = 10;
+    static final int COL_WEATHER_WIND_SPEED = 11;
+    static final int COL_WEATHER_DEGREES = 12;
+
+    public static final ForecastTable EMPTY = new ForecastTable(new long[0], new long[0],
+            new int[0], new double[0], new double[0], new String[0],
+            new float[0], new float[0], new float[0], new float[0], null, 0, 0,
+            new ForecastDisplayModel[0], null, false);
+
+    private final long[] mIds;
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final double[] mMaxTemps;
+    private final double[] mMinTemps;
+    private final String[] mDescriptions;
+    private final float[] mHumidities;
+    private final float[] mPressures;
+    private final float[] mWindSpeeds;
+    private final float[] mDegrees;
+    // every row of a forecast query belongs to the same location
+    private final String mLocationSetting;
+    private final double mCoordLat;
+    private final double mCoordLong;
+    private final ForecastDisplayModel[] mDisplayModels;
+    private final ForecastDiff mDiff;
+    // true while the loader is still reading later pages of this forecast
+    private final boolean mPartial;
+
+    private ForecastTable(long[] ids, long[] dates, int[] weatherIds, double[] maxTemps,
+                          double[] minTemps, String[] descriptions, float[] humidities,
+                          float[] pressures, float[] windSpeeds, float[] degrees,
+                          String locationSetting,
+                          double coordLat, double coordLong,
+                          ForecastDisplayModel[] displayModels, ForecastDiff diff,
+                          boolean partial) {
+        mIds = ids;
+        mDates = dates;
+        mWeatherIds = weatherIds;
+        mMaxTemps = maxTemps;
+        mMinTemps = minTemps;
+        mDescriptions = descriptions;
+        mHumidities = humidities;
+        mPressures = pressures;
+        mWindSpeeds = windSpeeds;
+        mDegrees = degrees;
+        mLocationSetting = locationSetting;
+        mCoordLat = coordLat;
+        mCoordLong = coordLong;
+        mDisplayModels = displayModels;
+        mDiff = diff;
+        mPartial = partial;
+    }
+
+    /**
+     * Copies every row of a cursor over {@link #FORECAST_COLUMNS} into a new table.  This walks
+     * the cursor once, so it belongs on a background thread.  The cursor is left open.
+     */
+    public static ForecastTable fromCursor(Cursor cursor) {
+        if (null == cursor || !cursor.moveToFirst()) {
+            return EMPTY;
+        }
+        int count = cursor.getCount();
+        long[] ids = new long[count];
+        long[] dates = new long[count];
+        int[] weatherIds = new int[count];
+        double[] maxTemps = new double[count];
+        double[] minTemps = new double[count];
+        String[] descriptions = new String[count];
+        float[] humidities = new float[count];
+        float[] pressures = new float[count];
+        float[] windSpeeds = new float[count];
+        float[] degrees = new float[count];
+        String locationSetting = cursor.getString(COL_LOCATION_SETTING);
+        double coordLat = cursor.getDouble(COL_COORD_LAT);
+        double coordLong = cursor.getDouble(COL_COORD_LONG);
+
+        int i = 0;
+        do {
+            ids[i] = cursor.getLong(COL_WEATHER_ID);
+            dates[i] = cursor.getLong(COL_WEATHER_DATE);
+            weatherIds[i] = cursor.getInt(COL_WEATHER_CONDITION_ID);
+            maxTemps[i] = cursor.getDouble(COL_WEATHER_MAX_TEMP);
+            minTemps[i] = cursor.getDouble(COL_WEATHER_MIN_TEMP);
+            descriptions[i] = cursor.getString(COL_WEATHER_DESC);
+            humidities[i] = cursor.getFloat(COL_WEATHER_HUMIDITY);
+            pressures[i] = cursor.getFloat(COL_WEATHER_PRESSURE);
+            windSpeeds[i] = cursor.getFloat(COL_WEATHER_WIND_SPEED);
+            degrees[i] = cursor.getFloat(COL_WEATHER_DEGREES);
+            i++;
+        } while (i < count && cursor.moveToNext());
+
+        return new ForecastTable(ids, dates, weatherIds, maxTemps, minTemps, descriptions,
+                humidities, pressures, windSpeeds, degrees, locationSetting, coordLat, coordLong,
+                null, null, false);
+    }
+
+    /**
+     * Copies the cursor as {@link #fromCursor(Cursor)} does, then formats every row for display.
+     */
+    public static ForecastTable fromCursor(Context context, Cursor cursor) {
+        ForecastTable table = fromCursor(cursor);
+        if (table.getCount() == 0) {
+            return EMPTY;
+        }
+        return table.withDisplayModels(ForecastDisplayModel.fromForecast(context, table));
+    }
+
+    /**
+     * Builds a table from the rows of a snapshot on or after {@code startDate}, formatted for
+     * display.  Snapshots don't keep row ids, so every id is -1; the list only keys rows by
+     * date.
+     *
+     * @return the table, or {@link #EMPTY} if the snapshot is null or has no rows that recent.
+     */
+    public static ForecastTable fromSnapshot(Context context, WeatherSnapshot snapshot,
+                                             long startDate) {
+        if (null == snapshot) {
+            return EMPTY;
+        }
+        int first = snapshot.getFirstIndexOnOrAfter(startDate);
+        if (first == -1) {
+            return EMPTY;
+        }
+        int count = snapshot.getCount() - first;
+        long[] ids = new long[count];
+        long[] dates = new long[count];
+        int[] weatherIds = new int[count];
+        double[] maxTemps = new double[count];
+        double[] minTemps = new double[count];
+        String[] descriptions = new String[count];
+        float[] humidities = new float[count];
+        float[] pressures = new float[count];
+        float[] windSpeeds = new float[count];
+        float[] degrees = new float[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = -1;
+            dates[i] = snapshot.getDate(first + i);
+            weatherIds[i] = snapshot.getWeatherId(first + i);
+            maxTemps[i] = snapshot.getMaxTemp(first + i);
+            minTemps[i] = snapshot.getMinTemp(first + i);
+            descriptions[i] = snapshot.getShortDesc(first + i);
+            humidities[i] = snapshot.getHumidity(first + i);
+            pressures[i] = snapshot.getPressure(first + i);
+            windSpeeds[i] = snapshot.getWindSpeed(first + i);
+            degrees[i] = snapshot.getDegrees(first + i);
+        }
+
+        ForecastTable table = new ForecastTable(ids, dates, weatherIds, maxTemps, minTemps,
+                descriptions, humidities, pressures, windSpeeds, degrees,
+                snapshot.getLocationSetting(), snapshot.getCoordLat(), snapshot.getCoordLong(),
+                null, null, false);
+        return table.withDisplayModels(ForecastDisplayModel.fromForecast(context, table));
+    }
+
+    /**
+     * @return a copy of this table that also knows how to get to it from {@code previous}.
+     */
+    public ForecastTable withDiffFrom(ForecastTable previous) {
+        return new ForecastTable(mIds, mDates, mWeatherIds, mMaxTemps, mMinTemps, mDescriptions,
+                mHumidities, mPressures, mWindSpeeds, mDegrees, mLocationSetting, mCoordLat,
+                mCoordLong, mDisplayModels, ForecastDiff.compute(previous, this), mPartial);
+    }
+
+    private ForecastTable withDisplayModels(ForecastDisplayModel[] displayModels) {
+        return new ForecastTable(mIds, mDates, mWeatherIds, mMaxTemps, mMinTemps, mDescriptions,
+                mHumidities, mPressures, mWindSpeeds, mDegrees, mLocationSetting, mCoordLat,
+                mCoordLong, displayModels, mDiff, mPartial);
+    }
+
+    /**
+     * Joins two formatted tables for the same location, with {@code tail}'s rows after
+     * {@code head}'s.  Only the new rows are formatted when a forecast is read a page at a time.
+     *
+     * @param partial whether more rows are still to come
+     */
+    public static ForecastTable concat(ForecastTable head, ForecastTable tail, boolean partial) {
+        int headCount = head.getCount();
+        int count = headCount + tail.getCount();
+        ForecastDisplayModel[] displayModels = new ForecastDisplayModel[count];
+        System.arraycopy(head.mDisplayModels, 0, displayModels, 0, headCount);
+        System.arraycopy(tail.mDisplayModels, 0, displayModels, headCount, tail.getCount());
+        ForecastTable any = headCount > 0 ? head : tail;
+        return new ForecastTable(concat(head.mIds, tail.mIds), concat(head.mDates, tail.mDates),
+                concat(head.mWeatherIds, tail.mWeatherIds),
+                concat(head.mMaxTemps, tail.mMaxTemps), concat(head.mMinTemps, tail.mMinTemps),
+                concat(head.mDescriptions, tail.mDescriptions, new String[count]),
+                concat(head.mHumidities, tail.mHumidities),
+                concat(head.mPressures, tail.mPressures),
+                concat(head.mWindSpeeds, tail.mWindSpeeds), concat(head.mDegrees, tail.mDegrees),
+                any.mLocationSetting, any.mCoordLat, any.mCoordLong, displayModels, null, partial);
+    }
+
+    private static long[] concat(long[] head, long[] tail) {
+        long[] result = new long[head.length + tail.length];
+        System.arraycopy(head, 0, result, 0, head.length);
+        System.arraycopy(tail, 0, result, head.length, tail.length);
+        return result;
+    }
+
+    private static int[] concat(int[] head, int[] tail) {
+        int[] result = new int[head.length + tail.length];
+        System.arraycopy(head, 0, result, 0, head.length);
+        System.arraycopy(tail, 0, result, head.length, tail.length);
+        return result;
+    }
+
+    private static double[] concat(double[] head, double[] tail) {
+        double[] result = new double[head.length + tail.length];
+        System.arraycopy(head, 0, result, 0, head.length);
+        System.arraycopy(tail, 0, result, head.length, tail.length);
+        return result;
+    }
+
+    private static float[] concat(float[] head, float[] tail) {
+        float[] result = new float[head.length + tail.length];
+        System.arraycopy(head, 0, result, 0, head.length);
+        System.arraycopy(tail, 0, result, head.length, tail.length);
+        return result;
+    }
+
+    private static String[] concat(String[] head, String[] tail, String[] result) {
+        System.arraycopy(head, 0, result, 0, head.length);
+        System.arraycopy(tail, 0, result, head.length, tail.length);
+        return result;
+    }
+
+    /**
+     * @return true if this is the first part of a forecast that is still being loaded.
+     */
+    public boolean isPartial() {
+        return mPartial;
+    }
+
+    /**
+     * @return the updates from the table this one was diffed against, or null if it wasn't.
+     */
+    public ForecastDiff getDiff() {
+        return mDiff;
+    }
+
+    public int getCount() {
+        return mDates.length;
+    }
+
+    public long getId(int position) {
+        return mIds[position];
+    }
+
+    public long getDate(int position) {
+        return mDates[position];
+    }
+
+    public int getWeatherId(int position) {
+        return mWeatherIds[position];
+    }
+
+    public double getMaxTemp(int position) {
+        return mMaxTemps[position];
+    }
+
+    public double getMinTemp(int position) {
+        return mMinTemps[position];
+    }
+
+    public String getDescription(int position) {
+        return mDescriptions[position];
+    }
+
+    public float getHumidity(int position) {
+        return mHumidities[position];
+    }
+
+    public float getPressure(int position) {
+        return mPressures[position];
+    }
+
+    public float getWindSpeed(int position) {
+        return mWindSpeeds[position];
+    }
+
+    public float getDegrees(int position) {
+        return mDegrees[position];
+    }
+
+    /**
+     * @return the formatted row, or null if this table wasn't loaded for display.
+     */
+    public ForecastDisplayModel getDisplayModel(int position) {
+        return null == mDisplayModels ? null : mDisplayModels[position];
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    public double getCoordLat() {
+        return mCoordLat;
+    }
+
+    public double getCoordLong() {
+        return mCoordLong;
+    }
+
+    /**
+     * @return the position of the row for the given date, or -1 if there isn't one.
+     */
+    public int getPositionForDate(long date) {
+        for (int i = 0; i < mDates.length; i++) {
+            if (mDates[i] == date) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
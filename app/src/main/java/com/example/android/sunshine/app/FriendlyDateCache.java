@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.DataSetObservable;
+import android.database.DataSetObserver;
+import android.text.format.Time;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * {@link FriendlyDateCache} builds the strings {@link Utility} shows for a date once per day
+ * rather than once per call.  What a date is called only depends on its Julian day, today's
+ * Julian day and the locale, so the strings are kept per Julian day in a generation that is
+ * thrown away at midnight, or when the time, time zone or locale changes.
+ * <p>
+ * Reads don't take a lock, so the list, the widgets and the sync adapter can all use it at once.
+ * Anything that keeps strings built from it, like the forecast list's display models, can
+ * register to hear when they've gone stale.
+ */
+public class FriendlyDateCache {
+    // Days before and after today that are kept.  The forecast only covers the next two weeks.
+    private static final int DAYS_BEFORE_TODAY = 7;
+    private static final int DAYS_AFTER_TODAY = 57;
+
+    /**
+     * Everything that's shown for one day.
+     */
+    static final class DayStrings {
+        // "Today", "Tomorrow" or "Wednesday"
+        final String dayName;
+        // "June 24"
+        final String monthDay;
+        // the day name within a week of today, otherwise "Mon Jun 3"
+        final String friendly;
+        // "Today, June 24" for today, otherwise the same as friendly
+        final String friendlyLongToday;
+        // "Wednesday, June 24"
+        final String fullFriendly;
+
+        DayStrings(String dayName, String monthDay, String friendly, String friendlyLongToday,
+                   String fullFriendly) {
+            this.dayName = dayName;
+            this.monthDay = monthDay;
+            this.friendly = friendly;
+            this.friendlyLongToday = friendlyLongToday;
+            this.fullFriendly = fullFriendly;
+        }
+    }
+
+    /**
+     * The strings for every day, as seen from one day, in one time zone and locale.
+     */
+    private static final class Generation {
+        final long gmtoff;
+        final int today;
+        final Locale locale;
+        // the first moment this generation is wrong about which day is today
+        final long nextMidnight;
+        // Filled in lazily.  Entries are immutable, so a reader that sees one sees all of it,
+        // and two threads that miss the same day just both build it.
+        final DayStrings[] days = new DayStrings[DAYS_BEFORE_TODAY + DAYS_AFTER_TODAY];
+
+        // SimpleDateFormat isn't thread safe, so these are only used while holding the
+        // generation's lock
+        final SimpleDateFormat dayFormat;
+        final SimpleDateFormat monthDayFormat;
+        final SimpleDateFormat shortenedDateFormat;
+
+        Generation(long now) {
+            Time time = new Time();
+            time.set(now);
+            gmtoff = time.gmtoff;
+            today = Time.getJulianDay(now, gmtoff);
+            locale = Locale.getDefault();
+
+            time.set(0, 0, 0, time.monthDay + 1, time.month, time.year);
+            nextMidnight = time.normalize(true);
+
+            dayFormat = new SimpleDateFormat("EEEE");
+            monthDayFormat = new SimpleDateFormat("MMMM dd");
+            shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
+        }
+
+        boolean isCurrent(long now) {
+            return now < nextMidnight && locale == Locale.getDefault();
+        }
+    }
+
+    private static FriendlyDateCache sInstance;
+
+    private final Context mContext;
+    private volatile Generation mGeneration;
+    // told on the main thread when the day, time, time zone or locale changes
+    private final DataSetObservable mObservable = new DataSetObservable();
+
+    public static synchronized FriendlyDateCache getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new FriendlyDateCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private FriendlyDateCache(Context context) {
+        mContext = context;
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_DATE_CHANGED);
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onDatesChanged();
+            }
+        }, filter);
+    }
+
+    /**
+     * Drops every cached string.  The next read builds them again for the current day, time
+     * zone and locale.
+     */
+    public void invalidate() {
+        mGeneration = null;
+    }
+
+    // Called on the main thread
+    void onDatesChanged() {
+        invalidate();
+        mObservable.notifyChanged();
+    }
+
+    /**
+     * Registers an observer to be told, on the main thread, when the day, time, time zone or
+     * locale changes, and strings built from the cache before then may be wrong.
+     */
+    public void registerObserver(DataSetObserver observer) {
+        mObservable.registerObserver(observer);
+    }
+
+    public void unregisterObserver(DataSetObserver observer) {
+        mObservable.unregisterObserver(observer);
+    }
+
+    /**
+     * @see Utility#getFriendlyDayString(Context, long, boolean)
+     */
+    public String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        DayStrings day = getDayStrings(dateInMillis);
+        return displayLongToday ? day.friendlyLongToday : day.friendly;
+    }
+
+    /**
+     * @see Utility#getFullFriendlyDayString(Context, long)
+     */
+    public String getFullFriendlyDayString(long dateInMillis) {
+        return getDayStrings(dateInMillis).fullFriendly;
+    }
+
+    /**
+     * @see Utility#getDayName(Context, long)
+     */
+    public String getDayName(long dateInMillis) {
+        return getDayStrings(dateInMillis).dayName;
+    }
+
+    /**
+     * @see Utility#getFormattedMonthDay(Context, long)
+     */
+    public String getFormattedMonthDay(long dateInMillis) {
+        return getDayStrings(dateInMillis).monthDay;
+    }
+
+    DayStrings getDayStrings(long dateInMillis) {
+        long now = System.currentTimeMillis();
+        Generation generation = mGeneration;
+        if (null == generation || !generation.isCurrent(now)) {
+            generation = new Generation(now);
+            mGeneration = generation;
+        }
+
+        int julianDay = Time.getJulianDay(dateInMillis, generation.gmtoff);
+        int index = julianDay - generation.today + DAYS_BEFORE_TODAY;
+        if (index < 0 || index >= generation.days.length) {
+            // too far away to be worth keeping
+            return buildDayStrings(generation, julianDay, dateInMillis);
+        }
+        DayStrings day = generation.days[index];
+        if (null == day) {
+            day = buildDayStrings(generation, julianDay, dateInMillis);
+            generation.days[index] = day;
+        }
+        return day;
+    }
+
+    private DayStrings buildDayStrings(Generation generation, int julianDay, long dateInMillis) {
+        String dayName;
+        String monthDay;
+        String shortened;
+        synchronized (generation) {
+            // If the date is today, use the localized version of "Today" instead of the actual
+            // day name.
+            if (julianDay == generation.today) {
+                dayName = mContext.getString(R.string.today);
+            } else if (julianDay == generation.today + 1) {
+                dayName = mContext.getString(R.string.tomorrow);
+            } else {
+                dayName = generation.dayFormat.format(dateInMillis);
+            }
+            monthDay = generation.monthDayFormat.format(dateInMillis);
+            shortened = generation.shortenedDateFormat.format(dateInMillis);
+        }
+
+        // Less than a week in the future just shows the day name
+        String friendly = julianDay < generation.today + 7 ? dayName : shortened;
+        String friendlyLongToday = julianDay == generation.today ?
+                mContext.getString(R.string.format_full_friendly_date,
+                        mContext.getString(R.string.today), monthDay) :
+                friendly;
+        String fullFriendly = mContext.getString(R.string.format_full_friendly_date,
+                dayName, monthDay);
+        return new DayStrings(dayName, monthDay, friendly, friendlyLongToday, fullFriendly);
+    }
+}
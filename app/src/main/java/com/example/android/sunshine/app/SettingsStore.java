@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link SettingsStore} keeps the user's settings in memory as one immutable {@link Settings}
+ * snapshot, so reading a setting is a field read rather than a preferences lookup plus a
+ * resource lookup for the key and the default.  The snapshot is rebuilt and swapped whenever
+ * the preferences change, and interested parts of the app can be told when that happens.
+ */
+public class SettingsStore {
+    /**
+     * One consistent view of the settings.  Every field comes from the same read of the
+     * preferences.
+     */
+    public static final class Settings {
+        public final String locationSetting;
+        public final boolean isMetric;
+        // the art pack url format
+        public final String artPack;
+        public final boolean usingLocalGraphics;
+        public final @SunshineSyncAdapter.LocationStatus int locationStatus;
+        public final boolean displayNotifications;
+
+        Settings(String locationSetting, boolean isMetric, String artPack,
+                 boolean usingLocalGraphics, @SunshineSyncAdapter.LocationStatus int locationStatus,
+                 boolean displayNotifications) {
+            this.locationSetting = locationSetting;
+            this.isMetric = isMetric;
+            this.artPack = artPack;
+            this.usingLocalGraphics = usingLocalGraphics;
+            this.locationStatus = locationStatus;
+            this.displayNotifications = displayNotifications;
+        }
+
+        boolean sameAs(Settings other) {
+            return locationSetting.equals(other.locationSetting) &&
+                    isMetric == other.isMetric &&
+                    artPack.equals(other.artPack) &&
+                    locationStatus == other.locationStatus &&
+                    displayNotifications == other.displayNotifications;
+        }
+    }
+
+    /**
+     * Callback for when the settings change.  Listeners are always called on the main thread.
+     */
+    public interface OnSettingsChangedListener {
+        void onSettingsChanged(Settings settings);
+    }
+
+    private static SettingsStore sInstance;
+
+    private final SharedPreferences mPrefs;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicReference<Settings> mSettings = new AtomicReference<Settings>();
+    private final CopyOnWriteArrayList<OnSettingsChangedListener> mListeners =
+            new CopyOnWriteArrayList<OnSettingsChangedListener>();
+    // serializes reloads, so an older read of the preferences can't replace a newer one
+    private final Object mReloadLock = new Object();
+
+    // The keys and defaults, looked up once
+    private final String mLocationKey;
+    private final String mLocationDefault;
+    private final String mUnitsKey;
+    private final String mUnitsMetric;
+    private final String mArtPackKey;
+    private final String mArtPackSunshine;
+    private final String mLocationStatusKey;
+    private final String mNotificationsKey;
+    private final boolean mNotificationsDefault;
+
+    // SharedPreferences only holds weak references to its listeners, so we hold this one
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPreferenceListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    reload();
+                }
+            };
+
+    public static synchronized SettingsStore getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new SettingsStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Shortcut for the current settings.
+     */
+    public static Settings get(Context context) {
+        return getInstance(context).getSettings();
+    }
+
+    private SettingsStore(Context context) {
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        mLocationKey = context.getString(R.string.pref_location_key);
+        mLocationDefault = context.getString(R.string.pref_location_default);
+        mUnitsKey = context.getString(R.string.pref_units_key);
+        mUnitsMetric = context.getString(R.string.pref_units_metric);
+        mArtPackKey = context.getString(R.string.pref_art_pack_key);
+        mArtPackSunshine = context.getString(R.string.pref_art_pack_sunshine);
+        mLocationStatusKey = context.getString(R.string.pref_location_status_key);
+        mNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
+        mNotificationsDefault = Boolean.parseBoolean(
+                context.getString(R.string.pref_enable_notifications_default));
+
+        mPrefs.registerOnSharedPreferenceChangeListener(mPreferenceListener);
+        mSettings.set(readSettings());
+    }
+
+    public Settings getSettings() {
+        return mSettings.get();
+    }
+
+    public void addListener(OnSettingsChangedListener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(OnSettingsChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Rebuilds the snapshot from the preferences.  The preference listener does this on the
+     * main thread, but code that writes a setting should call it right after committing, so
+     * readers on its own thread see the write straight away.
+     */
+    public void reload() {
+        synchronized (mReloadLock) {
+            Settings settings = readSettings();
+            Settings old = mSettings.getAndSet(settings);
+            if (null != old && old.sameAs(settings)) {
+                return;
+            }
+        }
+        dispatchChange();
+    }
+
+    // Listeners get whatever is current when they run, so a late delivery never hands them an
+    // older snapshot than one they've already seen
+    private void dispatchChange() {
+        if (mListeners.isEmpty()) {
+            return;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            Settings settings = mSettings.get();
+            for (OnSettingsChangedListener listener : mListeners) {
+                listener.onSettingsChanged(settings);
+            }
+        } else {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    dispatchChange();
+                }
+            });
+        }
+    }
+
+    @SuppressWarnings("ResourceType")
+    private Settings readSettings() {
+        // getAll hands back a copy taken under the preferences' lock, so every value in the
+        // snapshot comes from the same state even while another thread is committing
+        Map<String, ?> values = mPrefs.getAll();
+
+        String locationSetting = getString(values, mLocationKey, mLocationDefault);
+        boolean isMetric = getString(values, mUnitsKey, mUnitsMetric).equals(mUnitsMetric);
+        String artPack = getString(values, mArtPackKey, mArtPackSunshine);
+        Object status = values.get(mLocationStatusKey);
+        int locationStatus = status instanceof Integer ?
+                (Integer) status : SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN;
+        Object notifications = values.get(mNotificationsKey);
+        boolean displayNotifications = notifications instanceof Boolean ?
+                (Boolean) notifications : mNotificationsDefault;
+
+        return new Settings(locationSetting, isMetric, artPack, artPack.equals(mArtPackSunshine),
+                locationStatus, displayNotifications);
+    }
+
+    private static String getString(Map<String, ?> values, String key, String defaultValue) {
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : defaultValue;
+    }
+}
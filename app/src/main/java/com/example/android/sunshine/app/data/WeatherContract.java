@@ -126,6 +126,10 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Query parameters for reading a location's weather a page at a time
+        public static final String PARAM_AFTER_DATE = "after";
+        public static final String PARAM_LIMIT = "limit";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -144,6 +148,24 @@ public class WeatherContract {
                     .appendQueryParameter(COLUMN_DATE, Long.toString(normalizedDate)).build();
         }
 
+        /**
+         * Limits a weather by location uri to its first {@code limit} rows by date.
+         */
+        public static Uri buildPage(Uri weatherLocationUri, int limit) {
+            return weatherLocationUri.buildUpon()
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        /**
+         * Limits a weather by location uri to the first {@code limit} rows dated after
+         * {@code date}.  Paging by the last date read, rather than by a count of rows, means a
+         * sync that lands between two pages can't make the next one skip or repeat rows.
+         */
+        public static Uri buildPageAfter(Uri weatherLocationUri, long date, int limit) {
+            return buildPage(weatherLocationUri, limit).buildUpon()
+                    .appendQueryParameter(PARAM_AFTER_DATE, Long.toString(date)).build();
+        }
+
         public static Uri buildWeatherLocationWithDate(String locationSetting, long date) {
             return CONTENT_URI.buildUpon().appendPath(locationSetting)
                     .appendPath(Long.toString(normalizeDate(date))).build();
@@ -157,6 +179,28 @@ public class WeatherContract {
             return Long.parseLong(uri.getPathSegments().get(2));
         }
 
+        /**
+         * @return the uri's page size as an SQL limit clause, or null if it isn't limited.
+         */
+        public static String getLimitFromUri(Uri uri) {
+            String limit = uri.getQueryParameter(PARAM_LIMIT);
+            if (null == limit || limit.length() == 0) {
+                return null;
+            }
+            return Integer.toString(Integer.parseInt(limit));
+        }
+
+        /**
+         * @return the date the uri's page starts after, or 0 if it starts at the first row.
+         */
+        public static long getAfterDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_AFTER_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
         public static long getStartDateFromUri(Uri uri) {
             String dateString = uri.getQueryParameter(COLUMN_DATE);
             if (null != dateString && dateString.length() > 0)
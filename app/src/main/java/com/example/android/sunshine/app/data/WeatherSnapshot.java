@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A small, fixed-layout binary copy of the forecast for the preferred location.
+ *
+ * The sync adapter writes it next to the database after every successful sync, so that
+ * components which start in a fresh process (widgets, Muzei, the wearable bridge) can get at
+ * the current forecast by memory-mapping one file instead of opening weather.db.
+ *
+ * File layout (big endian):
+ * <pre>
+ *   header  magic (int), version (short), record size (short), record count (int),
+ *           written at (long), latitude (double), longitude (double),
+ *           location setting (LOCATION_FIELD_SIZE bytes: length byte + UTF-8; a location
+ *           that doesn't fit isn't snapshotted, since it could never be matched)
+ *   record  date (long), weather id (int), max (double), min (double), humidity (float),
+ *           pressure (float), wind speed (float), degrees (float),
+ *           short description (DESC_FIELD_SIZE bytes: length byte + UTF-8)
+ * </pre>
+ */
+public class WeatherSnapshot {
+    private static final String LOG_TAG = WeatherSnapshot.class.getSimpleName();
+
+    static final String FILE_NAME = "forecast.snapshot";
+
+    private static final int MAGIC = 0x53554e53; // "SUNS"
+    static final int VERSION = 1;
+
+    private static final int LOCATION_FIELD_SIZE = 64;
+    private static final int DESC_FIELD_SIZE = 24;
+
+    static final int HEADER_SIZE = 4 + 2 + 2 + 4 + 8 + 8 + 8 + LOCATION_FIELD_SIZE;
+    static final int RECORD_SIZE = 8 + 4 + 8 + 8 + 4 + 4 + 4 + 4 + DESC_FIELD_SIZE;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // The columns the snapshot is built from.  The location columns are repeated on every row
+    // of the joined query, so they are only read from the first one.
+    public static final String[] SNAPSHOT_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_HUMIDITY = 4;
+    private static final int INDEX_PRESSURE = 5;
+    private static final int INDEX_WIND_SPEED = 6;
+    private static final int INDEX_DEGREES = 7;
+    private static final int INDEX_SHORT_DESC = 8;
+    private static final int INDEX_LOCATION_SETTING = 9;
+    private static final int INDEX_COORD_LAT = 10;
+    private static final int INDEX_COORD_LONG = 11;
+
+    private final String mLocationSetting;
+    private final double mCoordLat;
+    private final double mCoordLong;
+    private final long mWrittenAt;
+
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final double[] mMaxTemps;
+    private final double[] mMinTemps;
+    private final float[] mHumidity;
+    private final float[] mPressure;
+    private final float[] mWindSpeed;
+    private final float[] mDegrees;
+    private final String[] mShortDesc;
+
+    private WeatherSnapshot(String locationSetting, double coordLat, double coordLong,
+                            long writtenAt, int count) {
+        mLocationSetting = locationSetting;
+        mCoordLat = coordLat;
+        mCoordLong = coordLong;
+        mWrittenAt = writtenAt;
+        mDates = new long[count];
+        mWeatherIds = new int[count];
+        mMaxTemps = new double[count];
+        mMinTemps = new double[count];
+        mHumidity = new float[count];
+        mPressure = new float[count];
+        mWindSpeed = new float[count];
+        mDegrees = new float[count];
+        mShortDesc = new String[count];
+    }
+
+    public static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Rebuilds the snapshot for the given location from the ContentProvider.  This does I/O
+     * and must not be called from the UI thread.
+     *
+     * @param context Context used to reach the ContentProvider and the files directory
+     * @param locationSetting The location whose forecast should be captured
+     */
+    public static void writeFromProvider(Context context, String locationSetting) {
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherForLocationUri,
+                SNAPSHOT_COLUMNS, null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return;
+        }
+        try {
+            write(getFile(context), cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Writes the rows of a cursor built with {@link #SNAPSHOT_COLUMNS} to the given file.  The
+     * data is written to a temporary file in the same directory first and then renamed over the
+     * old snapshot, so readers only ever see a complete file.
+     *
+     * @return true if a snapshot was written, false if the cursor was empty, its location is
+     * too long to store whole, or writing failed
+     */
+    static boolean write(File file, Cursor cursor) {
+        int count = cursor.getCount();
+        if (!cursor.moveToFirst()) {
+            // Nothing to capture; make sure nobody reads a stale forecast instead.
+            file.delete();
+            return false;
+        }
+        String locationSetting = cursor.getString(INDEX_LOCATION_SETTING);
+        if (!fits(locationSetting, LOCATION_FIELD_SIZE)) {
+            // A cut location would never match the preference, so readers go to the database
+            Log.w(LOG_TAG, "Location setting too long to snapshot: " + locationSetting);
+            file.delete();
+            return false;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * RECORD_SIZE)
+                .order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) RECORD_SIZE);
+        buffer.putInt(count);
+        buffer.putLong(System.currentTimeMillis());
+        buffer.putDouble(cursor.getDouble(INDEX_COORD_LAT));
+        buffer.putDouble(cursor.getDouble(INDEX_COORD_LONG));
+        putString(buffer, locationSetting, LOCATION_FIELD_SIZE);
+
+        do {
+            buffer.putLong(cursor.getLong(INDEX_DATE));
+            buffer.putInt(cursor.getInt(INDEX_WEATHER_ID));
+            buffer.putDouble(cursor.getDouble(INDEX_MAX_TEMP));
+            buffer.putDouble(cursor.getDouble(INDEX_MIN_TEMP));
+            buffer.putFloat(cursor.getFloat(INDEX_HUMIDITY));
+            buffer.putFloat(cursor.getFloat(INDEX_PRESSURE));
+            buffer.putFloat(cursor.getFloat(INDEX_WIND_SPEED));
+            buffer.putFloat(cursor.getFloat(INDEX_DEGREES));
+            putString(buffer, cursor.getString(INDEX_SHORT_DESC), DESC_FIELD_SIZE);
+        } while (cursor.moveToNext());
+
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmpFile);
+            out.write(buffer.array());
+            out.flush();
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file)) {
+                Log.e(LOG_TAG, "Unable to replace " + file);
+                tmpFile.delete();
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing " + tmpFile, e);
+            tmpFile.delete();
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the last written snapshot.
+     *
+     * @return the snapshot, or null if there is none or it can't be decoded
+     */
+    public static WeatherSnapshot read(Context context) {
+        return read(getFile(context));
+    }
+
+    /**
+     * Reads the last written snapshot, but only if it was captured for the given location.
+     *
+     * @return the snapshot, or null if there is no usable snapshot for this location
+     */
+    public static WeatherSnapshot readForLocation(Context context, String locationSetting) {
+        WeatherSnapshot snapshot = read(context);
+        if (snapshot == null || !snapshot.mLocationSetting.equals(locationSetting)) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    static WeatherSnapshot read(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            return decode(buffer, size);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error reading " + file, e);
+            return null;
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + file, e);
+                }
+            }
+        }
+    }
+
+    private static WeatherSnapshot decode(ByteBuffer buffer, long size) {
+        if (buffer.getInt() != MAGIC) {
+            Log.w(LOG_TAG, "Not a forecast snapshot");
+            return null;
+        }
+        int version = buffer.getShort();
+        int recordSize = buffer.getShort();
+        int count = buffer.getInt();
+        if (version != VERSION || recordSize != RECORD_SIZE || count < 0
+                || size != HEADER_SIZE + (long) count * RECORD_SIZE) {
+            Log.w(LOG_TAG, "Discarding snapshot version " + version + " with " + count + " rows");
+            return null;
+        }
+        long writtenAt = buffer.getLong();
+        double coordLat = buffer.getDouble();
+        double coordLong = buffer.getDouble();
+        String locationSetting = getString(buffer, LOCATION_FIELD_SIZE);
+
+        WeatherSnapshot snapshot =
+                new WeatherSnapshot(locationSetting, coordLat, coordLong, writtenAt, count);
+        for (int i = 0; i < count; i++) {
+            snapshot.mDates[i] = buffer.getLong();
+            snapshot.mWeatherIds[i] = buffer.getInt();
+            snapshot.mMaxTemps[i] = buffer.getDouble();
+            snapshot.mMinTemps[i] = buffer.getDouble();
+            snapshot.mHumidity[i] = buffer.getFloat();
+            snapshot.mPressure[i] = buffer.getFloat();
+            snapshot.mWindSpeed[i] = buffer.getFloat();
+            snapshot.mDegrees[i] = buffer.getFloat();
+            snapshot.mShortDesc[i] = getString(buffer, DESC_FIELD_SIZE);
+        }
+        return snapshot;
+    }
+
+    // Strings are stored in a fixed-size field: one length byte followed by up to
+    // fieldSize - 1 bytes of UTF-8.  Longer values are cut at a character boundary.
+    private static void putString(ByteBuffer buffer, String value, int fieldSize) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(UTF_8);
+        int length = Math.min(bytes.length, fieldSize - 1);
+        if (length < bytes.length) {
+            // don't split a multi-byte sequence
+            while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+                length--;
+            }
+        }
+        int start = buffer.position();
+        buffer.put((byte) length);
+        buffer.put(bytes, 0, length);
+        buffer.position(start + fieldSize);
+    }
+
+    private static boolean fits(String value, int fieldSize) {
+        return value == null || value.getBytes(UTF_8).length <= fieldSize - 1;
+    }
+
+    private static String getString(ByteBuffer buffer, int fieldSize) {
+        int start = buffer.position();
+        int length = Math.min(buffer.get() & 0xFF, fieldSize - 1);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        buffer.position(start + fieldSize);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Returns the index of the first row on or after the given date, e.g. today's forecast
+     * when called with the current time.
+     *
+     * @param dateInMillis The date in milliseconds; it is normalized the same way the
+     *                     ContentProvider normalizes dates
+     * @return the row index, or -1 if all rows are older than the date
+     */
+    public int getFirstIndexOnOrAfter(long dateInMillis) {
+        long normalizedDate = WeatherContract.normalizeDate(dateInMillis);
+        for (int i = 0; i < mDates.length; i++) {
+            if (mDates[i] >= normalizedDate) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getCount() {
+        return mDates.length;
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    public double getCoordLat() {
+        return mCoordLat;
+    }
+
+    public double getCoordLong() {
+        return mCoordLong;
+    }
+
+    public long getWrittenAt() {
+        return mWrittenAt;
+    }
+
+    public long getDate(int position) {
+        return mDates[position];
+    }
+
+    public int getWeatherId(int position) {
+        return mWeatherIds[position];
+    }
+
+    public double getMaxTemp(int position) {
+        return mMaxTemps[position];
+    }
+
+    public double getMinTemp(int position) {
+        return mMinTemps[position];
+    }
+
+    public float getHumidity(int position) {
+        return mHumidity[position];
+    }
+
+    public float getPressure(int position) {
+        return mPressure[position];
+    }
+
+    public float getWindSpeed(int position) {
+        return mWindSpeed[position];
+    }
+
+    public float getDegrees(int position) {
+        return mDegrees[position];
+    }
+
+    public String getShortDesc(int position) {
+        return mShortDesc[position];
+    }
+}
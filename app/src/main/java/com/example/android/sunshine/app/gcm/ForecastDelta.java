@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.text.format.Time;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * {@link ForecastDelta} is a change to a location's forecast pushed over GCM, so the app can
+ * update its database without fetching the whole forecast from OpenWeatherMap.  A delta names a
+ * location and a first day, and carries one object per day from there on, holding only the
+ * fields that changed:
+ * <pre>
+ * {"location": "94043", "start": "2015-06-24",
+ *  "days": [{}, {"id": 501, "desc": "Rain", "max": 18.5}]}
+ * </pre>
+ * The fields are "id", "desc", "max", "min", "hum", "pres", "wind" and "deg".  A day the database
+ * doesn't have yet must carry all of them.
+ */
+public class ForecastDelta {
+    // A delta may only touch the days a sync would have fetched, from yesterday on
+    static final int MAX_DAYS = 16;
+    // Temperatures are stored in Celsius; anything outside the records ever taken is a bad push
+    private static final double MIN_TEMP = -100;
+    private static final double MAX_TEMP = 70;
+
+    private static final String DELTA_LOCATION = "location";
+    private static final String DELTA_START = "start";
+    private static final String DELTA_DAYS = "days";
+
+    // The delta's name for each column, and the column it changes
+    private static final String[][] FIELDS = {
+            {"id", WeatherContract.WeatherEntry.COLUMN_WEATHER_ID},
+            {"desc", WeatherContract.WeatherEntry.COLUMN_SHORT_DESC},
+            {"max", WeatherContract.WeatherEntry.COLUMN_MAX_TEMP},
+            {"min", WeatherContract.WeatherEntry.COLUMN_MIN_TEMP},
+            {"hum", WeatherContract.WeatherEntry.COLUMN_HUMIDITY},
+            {"pres", WeatherContract.WeatherEntry.COLUMN_PRESSURE},
+            {"wind", WeatherContract.WeatherEntry.COLUMN_WIND_SPEED},
+            {"deg", WeatherContract.WeatherEntry.COLUMN_DEGREES}
+    };
+
+    private static final String[] ROW_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    private final String mLocationSetting;
+    private final int mStartJulianDay;
+    // the changed columns for each day, empty for a day that hasn't changed
+    private final ContentValues[] mDays;
+
+    private ForecastDelta(String locationSetting, int startJulianDay, ContentValues[] days) {
+        mLocationSetting = locationSetting;
+        mStartJulianDay = startJulianDay;
+        mDays = days;
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    /**
+     * Parses and checks a delta.  Anything malformed, out of range, or too far from today is
+     * rejected as a whole, so a bad message never leaves half a change behind.
+     *
+     * @throws JSONException if the delta isn't one this app can apply.
+     */
+    public static ForecastDelta parse(String json) throws JSONException {
+        JSONObject delta = new JSONObject(json);
+        String locationSetting = delta.getString(DELTA_LOCATION);
+        if (locationSetting.length() == 0) {
+            throw new JSONException("No location");
+        }
+
+        int startJulianDay = parseJulianDay(delta.getString(DELTA_START));
+        Time dayTime = new Time();
+        dayTime.setToNow();
+        int today = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+        JSONArray daysArray = delta.getJSONArray(DELTA_DAYS);
+        if (startJulianDay < today - 1 ||
+                startJulianDay + daysArray.length() > today + MAX_DAYS) {
+            throw new JSONException("Days out of range");
+        }
+
+        ContentValues[] days = new ContentValues[daysArray.length()];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = parseDay(daysArray.getJSONObject(i));
+        }
+        return new ForecastDelta(locationSetting, startJulianDay, days);
+    }
+
+    // "2015-06-24", in the device's time zone like the rest of the dates
+    private static int parseJulianDay(String date) throws JSONException {
+        String[] parts = date.split("-");
+        if (parts.length != 3) {
+            throw new JSONException("Bad date " + date);
+        }
+        Time time = new Time();
+        try {
+            time.set(Integer.parseInt(parts[2]), Integer.parseInt(parts[1]) - 1,
+                    Integer.parseInt(parts[0]));
+        } catch (NumberFormatException e) {
+            throw new JSONException("Bad date " + date);
+        }
+        long millis = time.normalize(true);
+        return Time.getJulianDay(millis, time.gmtoff);
+    }
+
+    private static ContentValues parseDay(JSONObject day) throws JSONException {
+        ContentValues values = new ContentValues();
+        Iterator<String> keys = day.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            String column = getColumn(key);
+            if (null == column) {
+                // from a newer server; the fields this app knows about still apply
+                continue;
+            }
+            if (WeatherContract.WeatherEntry.COLUMN_SHORT_DESC.equals(column)) {
+                String desc = day.getString(key);
+                if (desc.length() == 0) {
+                    throw new JSONException("Empty description");
+                }
+                values.put(column, desc);
+            } else if (WeatherContract.WeatherEntry.COLUMN_WEATHER_ID.equals(column)) {
+                int weatherId = day.getInt(key);
+                if (!WeatherConditions.isWeatherId(weatherId)) {
+                    throw new JSONException("Weather id out of range");
+                }
+                values.put(column, weatherId);
+            } else {
+                double value = day.getDouble(key);
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    throw new JSONException("Bad " + key);
+                }
+                values.put(column, value);
+            }
+        }
+
+        Double humidity = values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_HUMIDITY);
+        if (null != humidity && (humidity < 0 || humidity > 100)) {
+            throw new JSONException("Humidity out of range");
+        }
+        for (String column : new String[]{WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherContract.WeatherEntry.COLUMN_MIN_TEMP}) {
+            Double temp = values.getAsDouble(column);
+            if (null != temp && (temp < MIN_TEMP || temp > MAX_TEMP)) {
+                throw new JSONException("Temperature out of range");
+            }
+        }
+        Double degrees = values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_DEGREES);
+        if (null != degrees && (degrees < 0 || degrees > 360)) {
+            throw new JSONException("Wind direction out of range");
+        }
+        return values;
+    }
+
+    private static String getColumn(String field) {
+        for (String[] mapping : FIELDS) {
+            if (mapping[0].equals(field)) {
+                return mapping[1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Merges the delta with the rows already stored, and writes the changed days in one
+     * bulk insert.  The database replaces a day's row as a whole, so each changed day is
+     * written with every column.
+     *
+     * @return the number of days written, or -1 if the delta can't be applied: the location
+     * isn't one the app has fetched, or a new day is missing fields, or a day's high is below
+     * its low.
+     */
+    public int apply(Context context) {
+        long locationId = getLocationId(context);
+        if (-1 == locationId) {
+            return -1;
+        }
+
+        Time dayTime = new Time();
+        long startDate = dayTime.setJulianDay(mStartJulianDay);
+        HashMap<Long, ContentValues> stored = getStoredDays(context, startDate);
+
+        ContentValues[] changed = new ContentValues[mDays.length];
+        int count = 0;
+        for (int i = 0; i < mDays.length; i++) {
+            if (mDays[i].size() == 0) {
+                continue;
+            }
+            long date = dayTime.setJulianDay(mStartJulianDay + i);
+            ContentValues values = stored.get(date);
+            values = null == values ? new ContentValues() : new ContentValues(values);
+            values.putAll(mDays[i]);
+            for (String column : ROW_COLUMNS) {
+                if (!values.containsKey(column)) {
+                    return -1;
+                }
+            }
+            if (values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP) <
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP)) {
+                return -1;
+            }
+            values.put(WeatherContract.WeatherEntry.COLUMN_DATE, date);
+            values.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+            changed[count++] = values;
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        ContentValues[] cvArray = new ContentValues[count];
+        System.arraycopy(changed, 0, cvArray, 0, count);
+        return context.getContentResolver().bulkInsert(
+                WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
+    }
+
+    private long getLocationId(Context context) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{mLocationSetting},
+                null);
+        if (null == cursor) {
+            return -1;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private HashMap<Long, ContentValues> getStoredDays(Context context, long startDate) {
+        HashMap<Long, ContentValues> days = new HashMap<Long, ContentValues>();
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        mLocationSetting, startDate),
+                ROW_COLUMNS, null, null, null);
+        if (null == cursor) {
+            return days;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                ContentValues values = new ContentValues();
+                DatabaseUtils.cursorRowToContentValues(cursor, values);
+                days.put(cursor.getLong(0), values);
+            }
+        } finally {
+            cursor.close();
+        }
+        return days;
+    }
+}
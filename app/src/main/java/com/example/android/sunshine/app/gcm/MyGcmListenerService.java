@@ -16,19 +16,15 @@
 
 package com.example.android.sunshine.app.gcm;
 
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.content.Context;
-import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 import android.widget.Toast;
 
-import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherSnapshot;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.gcm.GcmListenerService;
 
 import org.json.JSONException;
@@ -41,6 +37,8 @@ public class MyGcmListenerService extends GcmListenerService {
     private static final String EXTRA_DATA = "data";
     private static final String EXTRA_WEATHER = "weather";
     private static final String EXTRA_LOCATION = "location";
+    // a ForecastDelta, sent in place of the data extra
+    static final String EXTRA_FORECAST = "forecast";
 
     public static final int NOTIFICATION_ID = 1;
 
@@ -62,49 +60,56 @@ public class MyGcmListenerService extends GcmListenerService {
             }
             // Not a bad idea to check that the message is coming from your server.
             if ((senderId).equals(from)) {
-                // Process message and then post a notification of the received message.
-                try {
-                    JSONObject jsonObject = new JSONObject(data.getString(EXTRA_DATA));
-                    String weather = jsonObject.getString(EXTRA_WEATHER);
-                    String location = jsonObject.getString(EXTRA_LOCATION);
-                    String alert =
-                            String.format(getString(R.string.gcm_weather_alert), weather, location);
-                    sendNotification(alert);
-                } catch (JSONException e) {
-                    // JSON parsing failed, so we just let this message go, since GCM is not one
-                    // of our critical features.
-                }
+                handleMessage(this, data);
             }
             Log.i(TAG, "Received: " + data.toString());
         }
     }
 
     /**
-     *  Put the message into a notification and post it.
-     *  This is just one simple example of what you might choose to do with a GCM message.
+     * Applies a forecast delta straight to the database, or hands a weather alert to the
+     * {@link WeatherAlertPipeline}.
      *
-     * @param message The alert message to be posted.
+     * @return true if the message was a weather alert that will be shown.
      */
-    private void sendNotification(String message) {
-        NotificationManager mNotificationManager =
-                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        PendingIntent contentIntent =
-                PendingIntent.getActivity(this, 0, new Intent(this, MainActivity.class), 0);
+    static boolean handleMessage(Context context, Bundle data) {
+        if (data.containsKey(EXTRA_FORECAST)) {
+            applyForecastDelta(context, data.getString(EXTRA_FORECAST));
+            return false;
+        }
+        // Process message and then add it to the alerts notification.
+        try {
+            JSONObject jsonObject = new JSONObject(data.getString(EXTRA_DATA));
+            String weather = jsonObject.getString(EXTRA_WEATHER);
+            String location = jsonObject.getString(EXTRA_LOCATION);
+            return WeatherAlertPipeline.getInstance(context).offer(weather, location);
+        } catch (JSONException e) {
+            // JSON parsing failed, so we just let this message go, since GCM is not one
+            // of our critical features.
+            return false;
+        }
+    }
 
-        // Notifications using both a large and a small icon (which yours should!) need the large
-        // icon as a bitmap. So we need to create that here from the resource ID, and pass the
-        // object along in our notification builder. Generally, you want to use the app icon as the
-        // small icon, so that users understand what app is triggering this notification.
-        Bitmap largeIcon = BitmapFactory.decodeResource(this.getResources(), R.drawable.art_storm);
-        NotificationCompat.Builder mBuilder =
-                new NotificationCompat.Builder(this)
-                        .setSmallIcon(R.drawable.art_clear)
-                        .setLargeIcon(largeIcon)
-                        .setContentTitle("Weather Alert!")
-                        .setStyle(new NotificationCompat.BigTextStyle().bigText(message))
-                        .setContentText(message)
-                        .setPriority(NotificationCompat.PRIORITY_HIGH);
-        mBuilder.setContentIntent(contentIntent);
-        mNotificationManager.notify(NOTIFICATION_ID, mBuilder.build());
+    private static void applyForecastDelta(Context context, String json) {
+        ForecastDelta delta;
+        try {
+            delta = ForecastDelta.parse(json);
+        } catch (JSONException e) {
+            // The next periodic sync catches up with whatever this would have changed
+            Log.w(TAG, "Rejected forecast delta: " + e.getMessage());
+            return;
+        }
+        int written = delta.apply(context);
+        if (written <= 0) {
+            Log.w(TAG, "Forecast delta for " + delta.getLocationSetting() + " not applied");
+            return;
+        }
+        String locationSetting = Utility.getPreferredLocation(context);
+        if (locationSetting.equals(delta.getLocationSetting())) {
+            // keep the snapshot in step before anyone is told, as a sync does
+            WeatherSnapshot.writeFromProvider(context, locationSetting);
+        }
+        SunshineSyncAdapter.notifyDataUpdated(context);
+        Log.i(TAG, "Forecast delta applied to " + written + " days");
     }
 }
\ No newline at end of file
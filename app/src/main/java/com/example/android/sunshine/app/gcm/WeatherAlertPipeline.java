@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * {@link WeatherAlertPipeline} turns the weather alerts pushed over GCM into a single summary
+ * notification.  The same alert for the same location is only shown once within
+ * {@link #DEDUPE_WINDOW_MILLIS}, and a burst of alerts is posted at most once every
+ * {@link #COALESCE_MILLIS}, each post replacing the last with the count of alerts so far and the
+ * latest {@link #MAX_LINES} of them.  GCM lets go of its wake lock once a message is handled, so
+ * a wake lock is held from scheduling the post that ends a burst until it's made.  Dismissing the
+ * summary starts it over.  The notification's large icon is decoded once.
+ */
+public class WeatherAlertPipeline {
+    // How long an alert for a location hides repeats of itself
+    static final long DEDUPE_WINDOW_MILLIS = 30 * 60 * 1000;
+    // The least time between two posts of the summary
+    static final long COALESCE_MILLIS = 2000;
+    // Alerts listed in the summary; the count covers the rest
+    static final int MAX_LINES = 5;
+    // Past this many, alerts that can no longer hide repeats are dropped even mid burst
+    private static final int MAX_SEEN = 256;
+
+    /**
+     * Where the pipeline gets the time from.
+     */
+    interface Clock {
+        long elapsedRealtime();
+    }
+
+    /**
+     * Runs the post that ends a burst.
+     */
+    interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    /**
+     * Keeps the phone awake until the post that ends a burst is made.  Reference counted: every
+     * acquire is matched by one release.
+     */
+    interface WakeLock {
+        void acquire();
+
+        void release();
+    }
+
+    /**
+     * Shows the summary.
+     */
+    interface Poster {
+        void post(Notification notification);
+    }
+
+    private static WeatherAlertPipeline sInstance;
+
+    private final Context mContext;
+    private final Clock mClock;
+    private final Scheduler mScheduler;
+    private final WakeLock mWakeLock;
+    private final Poster mPoster;
+    private Bitmap mLargeIcon;
+
+    // the last time each location and alert was let through
+    private final HashMap<String, Long> mSeen = new HashMap<String, Long>();
+    // The latest alerts in the summary, oldest first, and how many it holds in all.  Cleared
+    // once a whole window passes quietly, or the summary is dismissed.
+    private final ArrayList<String> mAlerts = new ArrayList<String>();
+    private int mAlertCount;
+    private long mLastAlert;
+    private long mLastPost;
+    private boolean mPosted;
+    private boolean mScheduled;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                synchronized (WeatherAlertPipeline.this) {
+                    mScheduled = false;
+                    // nothing to post if the summary was dismissed in the meantime
+                    if (mAlertCount > 0) {
+                        post();
+                    }
+                }
+            } finally {
+                mWakeLock.release();
+            }
+        }
+    };
+
+    public static synchronized WeatherAlertPipeline getInstance(Context context) {
+        if (null == sInstance) {
+            final Context appContext = context.getApplicationContext();
+            final Handler handler = new Handler(Looper.getMainLooper());
+            PowerManager powerManager =
+                    (PowerManager) appContext.getSystemService(Context.POWER_SERVICE);
+            final PowerManager.WakeLock wakeLock = powerManager.newWakeLock(
+                    PowerManager.PARTIAL_WAKE_LOCK, WeatherAlertPipeline.class.getSimpleName());
+            sInstance = new WeatherAlertPipeline(appContext,
+                    new Clock() {
+                        @Override
+                        public long elapsedRealtime() {
+                            return SystemClock.elapsedRealtime();
+                        }
+                    },
+                    new Scheduler() {
+                        @Override
+                        public void schedule(Runnable task, long delayMillis) {
+                            handler.postDelayed(task, delayMillis);
+                        }
+                    },
+                    new WakeLock() {
+                        @Override
+                        public void acquire() {
+                            wakeLock.acquire();
+                        }
+
+                        @Override
+                        public void release() {
+                            wakeLock.release();
+                        }
+                    },
+                    new Poster() {
+                        @Override
+                        public void post(Notification notification) {
+                            NotificationManager notificationManager = (NotificationManager)
+                                    appContext.getSystemService(Context.NOTIFICATION_SERVICE);
+                            notificationManager.notify(MyGcmListenerService.NOTIFICATION_ID,
+                                    notification);
+                        }
+                    });
+        }
+        return sInstance;
+    }
+
+    WeatherAlertPipeline(Context context, Clock clock, Scheduler scheduler, WakeLock wakeLock,
+            Poster poster) {
+        mContext = context;
+        mClock = clock;
+        mScheduler = scheduler;
+        mWakeLock = wakeLock;
+        mPoster = poster;
+    }
+
+    /**
+     * Adds an alert to the summary, unless it's a repeat of one shown recently.
+     *
+     * @param weather the kind of alert, as sent
+     * @param location the location it's for, as sent
+     * @return true if the alert will be shown, false if it was a repeat.
+     */
+    public synchronized boolean offer(String weather, String location) {
+        long now = mClock.elapsedRealtime();
+        String key = location + '\n' + weather;
+        Long seen = mSeen.get(key);
+        if (null != seen && now - seen < DEDUPE_WINDOW_MILLIS) {
+            return false;
+        }
+        mSeen.put(key, now);
+
+        if (now - mLastAlert >= DEDUPE_WINDOW_MILLIS) {
+            // a new burst, so the summary starts over
+            mAlerts.clear();
+            mAlertCount = 0;
+            forgetBefore(now - DEDUPE_WINDOW_MILLIS);
+        } else if (mSeen.size() > MAX_SEEN) {
+            forgetBefore(now - DEDUPE_WINDOW_MILLIS);
+        }
+        mLastAlert = now;
+        if (mAlerts.size() == MAX_LINES) {
+            mAlerts.remove(0);
+        }
+        mAlerts.add(String.format(mContext.getString(R.string.gcm_weather_alert),
+                weather, location));
+        mAlertCount++;
+
+        if (mScheduled) {
+            // already on its way out with the rest of the burst
+            return true;
+        }
+        long wait = mPosted ? mLastPost + COALESCE_MILLIS - now : 0;
+        if (wait <= 0) {
+            post();
+        } else {
+            mScheduled = true;
+            // released once the flush has run
+            mWakeLock.acquire();
+            mScheduler.schedule(mFlush, wait);
+        }
+        return true;
+    }
+
+    /**
+     * The summary was dismissed, so the next alert starts a new one.  Alerts already shown still
+     * hide their repeats.
+     */
+    public synchronized void reset() {
+        mAlerts.clear();
+        mAlertCount = 0;
+    }
+
+    private void forgetBefore(long time) {
+        Iterator<Map.Entry<String, Long>> entries = mSeen.entrySet().iterator();
+        while (entries.hasNext()) {
+            if (entries.next().getValue() < time) {
+                entries.remove();
+            }
+        }
+    }
+
+    private void post() {
+        mLastPost = mClock.elapsedRealtime();
+        mPosted = true;
+        mPoster.post(buildNotification());
+    }
+
+    private Notification buildNotification() {
+        if (null == mLargeIcon) {
+            // Notifications using both a large and a small icon need the large icon as a
+            // bitmap, and the burst would otherwise decode it again for each post
+            mLargeIcon = BitmapFactory.decodeResource(mContext.getResources(),
+                    R.drawable.art_storm);
+        }
+        PendingIntent contentIntent = PendingIntent.getActivity(mContext, 0,
+                new Intent(mContext, MainActivity.class), 0);
+        PendingIntent deleteIntent = PendingIntent.getBroadcast(mContext, 0,
+                new Intent(mContext, AlertDismissedReceiver.class), 0);
+        int count = mAlertCount;
+        String latest = mAlerts.get(mAlerts.size() - 1);
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(mContext)
+                .setSmallIcon(R.drawable.art_clear)
+                .setLargeIcon(mLargeIcon)
+                .setContentText(latest)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                // the summary is updated through a burst, but only sounds off the first time
+                .setOnlyAlertOnce(true)
+                .setContentIntent(contentIntent)
+                .setDeleteIntent(deleteIntent);
+
+        if (count == 1) {
+            builder.setContentTitle(mContext.getString(R.string.gcm_weather_alert_title))
+                    .setStyle(new NotificationCompat.BigTextStyle().bigText(latest));
+        } else {
+            String title = mContext.getResources().getQuantityString(
+                    R.plurals.gcm_weather_alert_count, count, count);
+            NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle()
+                    .setBigContentTitle(title);
+            // newest first
+            for (int i = mAlerts.size() - 1; i >= 0; i--) {
+                style.addLine(mAlerts.get(i));
+            }
+            builder.setContentTitle(title)
+                    .setNumber(count)
+                    .setStyle(style);
+        }
+        return builder.build();
+    }
+}
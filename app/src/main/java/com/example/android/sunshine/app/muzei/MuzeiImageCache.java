@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.support.v4.content.FileProvider;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * {@link MuzeiImageCache} downloads each of the weather photos Muzei shows once, downsamples it
+ * to about the size of the screen, and keeps it.  Muzei is then pointed at the kept copy through
+ * a {@link FileProvider}, rather than at the multi-megabyte original.
+ * <p>
+ * Downloads block, so the cache must not be used on the main thread.
+ */
+public class MuzeiImageCache {
+    public static final String LOG_TAG = MuzeiImageCache.class.getSimpleName();
+
+    private static final String DIRECTORY = "muzei";
+
+    // get() is synchronized, so a stalled server mustn't hold up every later update for long
+    private static final int CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 30 * 1000;
+    // the photos' http urls redirect to https, which HttpURLConnection won't follow on its own
+    private static final int MAX_REDIRECTS = 5;
+
+    private static MuzeiImageCache sInstance;
+
+    private final Context mContext;
+    private final File mDirectory;
+    // the smallest the shorter side of a kept image can be, so it still fills the screen in
+    // either orientation
+    private final int mMinSide;
+
+    public static synchronized MuzeiImageCache getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new MuzeiImageCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private MuzeiImageCache(Context context) {
+        mContext = context;
+        mDirectory = new File(context.getCacheDir(), DIRECTORY);
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        mMinSide = Math.max(metrics.widthPixels, metrics.heightPixels);
+    }
+
+    /**
+     * @return a content uri for the kept copy of the image, downloading it first if it isn't
+     * kept yet, or null if it couldn't be downloaded.
+     */
+    public synchronized Uri get(String imageUrl) {
+        File file = getFile(imageUrl);
+        if (!file.exists() && !download(imageUrl, file)) {
+            return null;
+        }
+        return FileProvider.getUriForFile(mContext,
+                mContext.getString(R.string.muzei_image_authority), file);
+    }
+
+    // Named for the url, which never changes for a given photo, and the size it was kept at
+    private File getFile(String imageUrl) {
+        return new File(mDirectory, Integer.toHexString(imageUrl.hashCode()) + "_" + mMinSide +
+                ".jpg");
+    }
+
+    private boolean download(String imageUrl, File file) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Error creating " + mDirectory);
+            return false;
+        }
+        File original = new File(mDirectory, file.getName() + ".download");
+        try {
+            copy(imageUrl, original);
+            return downsample(original, file);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error downloading " + imageUrl, e);
+            return false;
+        } finally {
+            original.delete();
+        }
+    }
+
+    private static void copy(String imageUrl, File to) throws IOException {
+        URL url = new URL(imageUrl);
+        for (int redirects = 0; ; redirects++) {
+            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            urlConnection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            urlConnection.setInstanceFollowRedirects(false);
+            try {
+                int status = urlConnection.getResponseCode();
+                if (status >= 300 && status < 400) {
+                    String location = urlConnection.getHeaderField("Location");
+                    if (null == location || redirects == MAX_REDIRECTS) {
+                        throw new IOException("Bad redirect " + status + " from " + url);
+                    }
+                    // a relative location is resolved against the url that sent it
+                    url = new URL(url, location);
+                    continue;
+                }
+                if (status != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("Status " + status + " from " + url);
+                }
+                write(urlConnection, to);
+                return;
+            } finally {
+                urlConnection.disconnect();
+            }
+        }
+    }
+
+    private static void write(HttpURLConnection urlConnection, File to) throws IOException {
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            in = urlConnection.getInputStream();
+            out = new FileOutputStream(to);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            if (null != out) {
+                out.close();
+            }
+            if (null != in) {
+                in.close();
+            }
+        }
+    }
+
+    // Decodes at the largest power of two reduction that still covers the screen, and keeps
+    // that as a jpeg
+    private boolean downsample(File original, File to) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(original.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.e(LOG_TAG, "Error decoding " + original);
+            return false;
+        }
+        int shorterSide = Math.min(options.outWidth, options.outHeight);
+        int sampleSize = 1;
+        while (shorterSide / (sampleSize * 2) >= mMinSide) {
+            sampleSize *= 2;
+        }
+
+        options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        Bitmap image = BitmapFactory.decodeFile(original.getPath(), options);
+        if (null == image) {
+            Log.e(LOG_TAG, "Error decoding " + original);
+            return false;
+        }
+
+        // Written to the side and renamed, so a half written image is never served
+        File temp = new File(mDirectory, to.getName() + ".tmp");
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            image.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        } finally {
+            out.close();
+            image.recycle();
+        }
+        if (!temp.renameTo(to)) {
+            temp.delete();
+            return false;
+        }
+        return true;
+    }
+}
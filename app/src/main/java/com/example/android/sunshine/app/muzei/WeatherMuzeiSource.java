@@ -22,14 +22,19 @@ import android.net.Uri;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherSnapshot;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
 
 /**
- * Muzei source that changes your background based on the current weather conditions
+ * Muzei source that changes your background based on the current weather conditions.  The
+ * photos are served from a {@link MuzeiImageCache}.
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
+    // Muzei reads the artwork through our file provider, which isn't exported
+    private static final String MUZEI_PACKAGE = "net.nurik.roman.muzei";
+
     private static final String[] FORECAST_COLUMNS = new String[]{
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
@@ -55,25 +60,66 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
     @Override
     protected void onUpdate(int reason) {
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            String desc = cursor.getString(INDEX_SHORT_DESC);
+        int weatherId;
+        String desc;
 
-            String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
-            // Only publish a new wallpaper if we have a valid image
-            if (imageUrl != null) {
-                publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
-                        .title(desc)
-                        .byline(location)
-                        .viewIntent(new Intent(this, MainActivity.class))
-                        .build());
+        WeatherSnapshot snapshot = WeatherSnapshot.readForLocation(this, location);
+        int today = snapshot == null ? -1 :
+                snapshot.getFirstIndexOnOrAfter(System.currentTimeMillis());
+        if (today != -1) {
+            weatherId = snapshot.getWeatherId(today);
+            desc = snapshot.getShortDesc(today);
+        } else {
+            Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                    location, System.currentTimeMillis());
+            Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
+                    null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+            if (cursor == null) {
+                return;
+            }
+            if (!cursor.moveToFirst()) {
+                cursor.close();
+                return;
             }
+            weatherId = cursor.getInt(INDEX_WEATHER_ID);
+            desc = cursor.getString(INDEX_SHORT_DESC);
+            cursor.close();
+        }
+
+        String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
+        // Only publish a new wallpaper if we have a valid image
+        if (imageUrl == null) {
+            return;
         }
-        cursor.close();
+        // Muzei fetches and crossfades whatever it's given, so the artwork only changes when the
+        // weather moves to a different photo or description, or when Muzei asks for it
+        if (reason != UPDATE_REASON_INITIAL &&
+                isShowing(getCurrentArtwork(), imageUrl, desc, location)) {
+            return;
+        }
+        Uri imageUri = MuzeiImageCache.getInstance(this).get(imageUrl);
+        if (imageUri == null) {
+            // Muzei can still download the original itself
+            imageUri = Uri.parse(imageUrl);
+        } else {
+            grantUriPermission(MUZEI_PACKAGE, imageUri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        }
+        publishArtwork(new Artwork.Builder()
+                .imageUri(imageUri)
+                .token(imageUrl)
+                .title(desc)
+                .byline(location)
+                .viewIntent(new Intent(this, MainActivity.class))
+                .build());
+    }
+
+    /**
+     * @return true if the artwork is already the photo for the image url, with the description,
+     * for the location.
+     */
+    static boolean isShowing(Artwork current, String imageUrl, String desc, String location) {
+        return current != null && imageUrl.equals(current.getToken()) &&
+                location.equals(current.getByline()) &&
+                (null == desc ? null == current.getTitle() : desc.equals(current.getTitle()));
     }
 }
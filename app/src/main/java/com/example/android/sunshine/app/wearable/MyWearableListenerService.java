@@ -1,7 +1,5 @@
 package com.example.android.sunshine.app.wearable;
 
-import android.content.Context;
-import android.content.Intent;
 import android.util.Log;
 
 import com.google.android.gms.wearable.DataApi;
@@ -13,6 +11,8 @@ public class MyWearableListenerService extends WearableListenerService
     private static final String TAG = "WearableListenerService";
 
     private static final String REQ_WEATHER_PATH = "/weather-req";
+    // sent by a watch face that has no forecast yet, e.g. just after it's selected
+    private static final String REQ_REFRESH_PATH = "/weather-refresh";
 
     @Override
     public void onCreate() {
@@ -36,10 +36,10 @@ public class MyWearableListenerService extends WearableListenerService
         Log.d(TAG, "message path: " + path);
 
         // Check to see if the message is a request for the updated weather conditions
-        if (path.equals(REQ_WEATHER_PATH)) {
-            // start the service sending the updated weather condition to the wearable
-            Context context = this.getApplicationContext();
-            context.startService(new Intent(context, WearableIntentService.class));
+        if (path.equals(REQ_WEATHER_PATH) || path.equals(REQ_REFRESH_PATH)) {
+            // the bridge answers a burst of requests, from every node and every wake, once,
+            // and keeps the phone awake until it has
+            WearableBridge.getInstance(this).request(path.equals(REQ_REFRESH_PATH));
         }
     }
 }
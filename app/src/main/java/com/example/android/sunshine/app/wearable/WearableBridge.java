@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wearable;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.shared.ForecastPayload;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WearableBridge} is the one way forecasts leave the phone for the watch.  It owns a single
+ * connection to the data layer, made when there's something to send and dropped once it's been
+ * idle for {@link #IDLE_TIMEOUT_MILLIS}, so a run of syncs and watch requests shares one
+ * connection.  Forecasts offered within {@link #COALESCE_MILLIS} of each other are sent once, as
+ * the latest of them.  Requests from the watch are gathered for a window too, and answered
+ * with one send, from the forecast the bridge last had if it's less than
+ * {@link #FORECAST_MAX_AGE_MILLIS} old, and otherwise from one read.  Everything that touches the
+ * connection or reads the forecast runs on the bridge's own thread, one task at a time.  The
+ * services that hand work to the bridge return straight away, so a wake lock is held from the
+ * moment a send is scheduled until it's been made.
+ */
+public class WearableBridge {
+    private static final String TAG = "WearableBridge";
+
+    // How long the bridge waits for more forecasts before sending the latest
+    static final long COALESCE_MILLIS = 500;
+    // How long the last forecast answers the watch's requests without being read again
+    static final long FORECAST_MAX_AGE_MILLIS = 15 * 60 * 1000;
+    // How long the connection is kept with nothing to send
+    static final long IDLE_TIMEOUT_MILLIS = 60 * 1000;
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 30;
+    private static final long PUT_TIMEOUT_SECONDS = 30;
+
+    /**
+     * Where the bridge gets the time from.
+     */
+    interface Clock {
+        long elapsedRealtime();
+    }
+
+    /**
+     * Runs the bridge's tasks, in order, off the caller's thread.
+     */
+    interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    /**
+     * Keeps the phone awake from when a send is scheduled until it's done.  Reference counted:
+     * every acquire is matched by one release.
+     */
+    interface WakeLock {
+        void acquire();
+
+        void release();
+    }
+
+    /**
+     * The connection to the watch.  Only called from the bridge's tasks, so it may block.
+     */
+    interface Transport extends WearableForecastSender.DataLayer {
+        /**
+         * @return true if the transport is now connected.
+         */
+        boolean connect();
+
+        boolean isConnected();
+
+        void disconnect();
+    }
+
+    /**
+     * Reads the forecast to answer the watch's requests with.  Only called from the bridge's
+     * tasks, so it may block.
+     */
+    interface ForecastSource {
+        /**
+         * @return the encoded forecast, or null if there's none.
+         */
+        byte[] readForecast();
+    }
+
+    private static WearableBridge sInstance;
+
+    private final Clock mClock;
+    private final Scheduler mScheduler;
+    private final WakeLock mWakeLock;
+    private final Transport mTransport;
+    private final WearableForecastSender mSender;
+    private final ForecastSource mSource;
+    private final long mRequestWindowMillis;
+
+    // the latest forecast offered and not yet sent, and whether the watch asked for one;
+    // guarded by this
+    private byte[] mPending;
+    private boolean mRequested;
+    private boolean mPendingForce;
+    private boolean mFlushScheduled;
+
+    // only touched by the bridge's tasks
+    private long mLastUse;
+    private boolean mIdleCheckScheduled;
+    private byte[] mLastForecast;
+    private long mLastForecastAt;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                flush();
+            } finally {
+                mWakeLock.release();
+            }
+        }
+    };
+
+    private final Runnable mIdleCheck = new Runnable() {
+        @Override
+        public void run() {
+            checkIdle();
+        }
+    };
+
+    public static synchronized WearableBridge getInstance(Context context) {
+        if (null == sInstance) {
+            final Context appContext = context.getApplicationContext();
+            HandlerThread thread = new HandlerThread(TAG);
+            thread.start();
+            final Handler handler = new Handler(thread.getLooper());
+            PowerManager powerManager =
+                    (PowerManager) appContext.getSystemService(Context.POWER_SERVICE);
+            final PowerManager.WakeLock wakeLock =
+                    powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
+            sInstance = new WearableBridge(appContext,
+                    new Clock() {
+                        @Override
+                        public long elapsedRealtime() {
+                            return SystemClock.elapsedRealtime();
+                        }
+                    },
+                    new Scheduler() {
+                        @Override
+                        public void schedule(Runnable task, long delayMillis) {
+                            handler.postDelayed(task, delayMillis);
+                        }
+                    },
+                    new WakeLock() {
+                        @Override
+                        public void acquire() {
+                            wakeLock.acquire();
+                        }
+
+                        @Override
+                        public void release() {
+                            wakeLock.release();
+                        }
+                    },
+                    new GoogleApiTransport(appContext),
+                    new ForecastSource() {
+                        @Override
+                        public byte[] readForecast() {
+                            ForecastPayload forecast = WearableIntentService.readForecast(
+                                    appContext, Utility.getPreferredLocation(appContext));
+                            return null == forecast ? null : forecast.encode();
+                        }
+                    },
+                    appContext.getResources().getInteger(R.integer.wear_request_window_millis));
+        }
+        return sInstance;
+    }
+
+    WearableBridge(Context context, Clock clock, Scheduler scheduler, WakeLock wakeLock,
+            Transport transport, ForecastSource source, long requestWindowMillis) {
+        mClock = clock;
+        mScheduler = scheduler;
+        mWakeLock = wakeLock;
+        mTransport = transport;
+        mSender = new WearableForecastSender(context, transport);
+        mSource = source;
+        mRequestWindowMillis = requestWindowMillis;
+    }
+
+    /**
+     * Queues a forecast for the watch.  It replaces any forecast still waiting to be sent.
+     *
+     * @param forecast an encoded ForecastPayload
+     * @param force true to send even an unchanged forecast; sticks for the rest of the burst
+     */
+    public synchronized void offer(byte[] forecast, boolean force) {
+        mPending = forecast;
+        mPendingForce |= force;
+        scheduleFlush(COALESCE_MILLIS);
+    }
+
+    /**
+     * Asks for the forecast to be sent to the watch, unless a forecast offered in the meantime
+     * answers it.  The phone is kept awake for the request window, since the listener service
+     * that calls this lets go of its own wake lock as soon as it returns.
+     *
+     * @param force true to send even an unchanged forecast; sticks for the rest of the burst
+     */
+    public synchronized void request(boolean force) {
+        mRequested = true;
+        mPendingForce |= force;
+        scheduleFlush(mRequestWindowMillis);
+    }
+
+    private void scheduleFlush(long delayMillis) {
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            // released once the flush has run
+            mWakeLock.acquire();
+            mScheduler.schedule(mFlush, delayMillis);
+        }
+    }
+
+    private void flush() {
+        byte[] forecast;
+        boolean requested;
+        boolean force;
+        synchronized (this) {
+            forecast = mPending;
+            requested = mRequested;
+            force = mPendingForce;
+            mPending = null;
+            mRequested = false;
+            mPendingForce = false;
+            mFlushScheduled = false;
+        }
+        long now = mClock.elapsedRealtime();
+        if (null != forecast) {
+            mLastForecast = forecast;
+            mLastForecastAt = now;
+        } else if (requested) {
+            if (null == mLastForecast || now - mLastForecastAt >= FORECAST_MAX_AGE_MILLIS) {
+                Log.d(TAG, "readForecast");
+                mLastForecast = mSource.readForecast();
+                mLastForecastAt = now;
+            }
+            forecast = mLastForecast;
+        }
+        if (null == forecast) {
+            return;
+        }
+
+        mLastUse = now;
+        if (!mIdleCheckScheduled) {
+            mIdleCheckScheduled = true;
+            mScheduler.schedule(mIdleCheck, IDLE_TIMEOUT_MILLIS);
+        }
+
+        if (!mTransport.isConnected()) {
+            Log.d(TAG, "connect");
+            if (!mTransport.connect()) {
+                // the hash isn't kept, so the next sync or watch request sends it again
+                Log.d(TAG, "Failed to connect");
+                return;
+            }
+        }
+        if (mSender.send(forecast, force)) {
+            Log.d(TAG, "Successfully sent");
+        } else {
+            Log.d(TAG, "Not sent; unchanged or failed");
+        }
+    }
+
+    private void checkIdle() {
+        long idle = mClock.elapsedRealtime() - mLastUse;
+        boolean flushScheduled;
+        synchronized (this) {
+            flushScheduled = mFlushScheduled;
+        }
+        if (idle < IDLE_TIMEOUT_MILLIS || flushScheduled) {
+            mScheduler.schedule(mIdleCheck, Math.max(IDLE_TIMEOUT_MILLIS - idle, COALESCE_MILLIS));
+            return;
+        }
+        mIdleCheckScheduled = false;
+        if (mTransport.isConnected()) {
+            Log.d(TAG, "disconnect");
+            mTransport.disconnect();
+        }
+    }
+
+    /**
+     * Connects through a Google API client, waiting on the bridge's thread.
+     */
+    private static class GoogleApiTransport implements Transport {
+        private final GoogleApiClient mGoogleApiClient;
+
+        GoogleApiTransport(Context context) {
+            mGoogleApiClient = new GoogleApiClient.Builder(context)
+                    .addApi(Wearable.API)
+                    .build();
+        }
+
+        @Override
+        public boolean connect() {
+            ConnectionResult result = mGoogleApiClient.blockingConnect(CONNECT_TIMEOUT_SECONDS,
+                    TimeUnit.SECONDS);
+            if (!result.isSuccess()) {
+                Log.d(TAG, "connect: " + result);
+            }
+            return result.isSuccess();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return mGoogleApiClient.isConnected();
+        }
+
+        @Override
+        public boolean putDataItem(PutDataRequest request) {
+            return Wearable.DataApi.putDataItem(mGoogleApiClient, request)
+                    .await(PUT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .getStatus().isSuccess();
+        }
+
+        @Override
+        public void disconnect() {
+            mGoogleApiClient.disconnect();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wearable;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.R;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+
+import java.util.zip.CRC32;
+
+/**
+ * {@link WearableForecastSender} puts the forecast data item the watch face reads.  It keeps a
+ * hash of the last forecast the data layer took, and skips a put that carries the same forecast,
+ * so a sync or a request that brings nothing new costs no Bluetooth transfer and no redraw on the
+ * watch.  A forced send goes out regardless, made unique so the data layer passes it on even
+ * when the watch already has the same forecast; the watch asks for one when it has none.
+ */
+public class WearableForecastSender {
+    static final String PATH_FORECAST = "/weather";
+    // the forecast, encoded as a ForecastPayload
+    static final String KEY_FORECAST = "com.example.key.forecast";
+    // set on forced sends only, to tell them apart from the last put of the same forecast
+    static final String KEY_REFRESH = "com.example.key.refresh";
+
+    /**
+     * Where data items are put.
+     */
+    interface DataLayer {
+        /**
+         * @return true if the data layer took the item.
+         */
+        boolean putDataItem(PutDataRequest request);
+    }
+
+    private final SharedPreferences mPrefs;
+    private final String mHashKey;
+    private final DataLayer mDataLayer;
+
+    WearableForecastSender(Context context, DataLayer dataLayer) {
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        mHashKey = context.getString(R.string.pref_last_wear_forecast_hash);
+        mDataLayer = dataLayer;
+    }
+
+    /**
+     * Puts the forecast, unless it's the one put last and the send isn't forced.
+     *
+     * @param forecast an encoded ForecastPayload
+     * @param force true to send even an unchanged forecast
+     * @return true if the forecast was put.
+     */
+    public boolean send(byte[] forecast, boolean force) {
+        long hash = hash(forecast);
+        if (!force && mPrefs.contains(mHashKey) && mPrefs.getLong(mHashKey, 0) == hash) {
+            return false;
+        }
+
+        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(PATH_FORECAST);
+        putDataMapRequest.setUrgent();
+        putDataMapRequest.getDataMap().putByteArray(KEY_FORECAST, forecast);
+        if (force) {
+            putDataMapRequest.getDataMap().putLong(KEY_REFRESH, System.currentTimeMillis());
+        }
+        if (!mDataLayer.putDataItem(putDataMapRequest.asPutDataRequest())) {
+            return false;
+        }
+        mPrefs.edit().putLong(mHashKey, hash).apply();
+        return true;
+    }
+
+    /**
+     * Forgets the last forecast put, so the next send goes out whatever it carries.
+     */
+    public void reset() {
+        mPrefs.edit().remove(mHashKey).apply();
+    }
+
+    static long hash(byte[] forecast) {
+        CRC32 crc = new CRC32();
+        crc.update(forecast);
+        return crc.getValue();
+    }
+}
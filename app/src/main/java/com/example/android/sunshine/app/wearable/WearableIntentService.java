@@ -5,48 +5,32 @@ import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
-import android.os.Bundle;
+import android.text.format.Time;
 import android.util.Log;
 
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
+import com.example.android.sunshine.app.data.WeatherSnapshot;
+import com.example.android.sunshine.shared.ForecastPayload;
 
 public class WearableIntentService extends IntentService
-    implements GoogleApiClient.ConnectionCallbacks
 {
     private static final String TAG = "WearableIntentService";
 
     private static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
             WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
             WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
     };
     // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
     private static final int INDEX_MAX_TEMP = 2;
     private static final int INDEX_MIN_TEMP = 3;
 
-    private GoogleApiClient mGoogleApiClient;
-
-    private static final String REQ_PATH = "/weather";
-    private static final String KEY_WEATHER_ID = "com.example.key.weather_id";
-    private static final String KEY_TEMP_MAX = "com.example.key.max_temp";
-    private static final String KEY_TEMP_MIN = "com.example.key.min_temp";
-    private static final String KEY_LOCATION = "com.example.key.location";
-
-    private int mWeatherId;
-//    private int mWeatherArtResourceId;
-    private double mMaxTemp;
-    private double mMinTemp;
-    private String mLocation;
+    // the days sent to the watch, from today on
+    static final int WEAR_DAYS = 14;
 
     public WearableIntentService() {
         super("WearableIntentService");
@@ -66,13 +50,6 @@ public class WearableIntentService extends IntentService
         super.onStart(intent, startId);
     }
 
-    @Override
-    public void onDestroy() {
-        Log.d(TAG, "onDestroy");
-
-        super.onDestroy();
-    }
-
     /**
      * This method is invoked on the worker thread with a request to process.
      * Only one Intent is processed at a time, but the processing happens on a
@@ -89,90 +66,84 @@ public class WearableIntentService extends IntentService
     protected void onHandleIntent(Intent intent) {
         Log.d(TAG, "onHandleIntent");
 
-        // Get today's data from the ContentProvider
-        String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (data == null) {
-            return;
-        }
-        if (!data.moveToFirst()) {
-            data.close();
+        ForecastPayload forecast = readForecast(this, Utility.getPreferredLocation(this));
+        if (null == forecast) {
             return;
         }
 
-        // Extract the weather data from the Cursor
-        mWeatherId = data.getInt(INDEX_WEATHER_ID);
-        mMaxTemp = data.getDouble(INDEX_MAX_TEMP);
-        mMinTemp = data.getDouble(INDEX_MIN_TEMP);
-        mLocation = Utility.getPreferredLocation(this).trim().toUpperCase();
-        data.close();
-
-        Log.d(TAG, "mLocation: " + mLocation);
-        Log.d(TAG, "mWeatherId: " + Integer.toString(mWeatherId));
-        Log.d(TAG, "mMaxTemp: " + Double.toString(mMaxTemp));
-        Log.d(TAG, "mMinTemp: " + Double.toString(mMinTemp));
-
-        // create or connect a Google API client
-        if (null == mGoogleApiClient) {
-            Log.d(TAG, "mGoogleApiClient.build()");
-
-            mGoogleApiClient = new GoogleApiClient.Builder(this)
-                    .addApi(Wearable.API)
-                    .addConnectionCallbacks(this)
-                    .build();
+        Log.d(TAG, "location: " + forecast.getLocation());
+        Log.d(TAG, "days: " + Integer.toString(forecast.getDayCount()));
+
+        // the bridge sends it on its own connection, once for a whole burst of syncs
+        WearableBridge.getInstance(this).offer(forecast.encode(), false);
+    }
+
+    /**
+     * Reads the forecast for a location from today on, up to {@link #WEAR_DAYS} days.  Tries the
+     * snapshot written by the last sync first; it saves opening the database.  The payload only
+     * holds consecutive days, so the forecast stops at the first day that's missing.
+     *
+     * @return the forecast, or null if there's none from today on.
+     */
+    static ForecastPayload readForecast(Context context, String location) {
+        long now = System.currentTimeMillis();
+        WeatherSnapshot snapshot = WeatherSnapshot.readForLocation(context, location);
+        int today = snapshot == null ? -1 : snapshot.getFirstIndexOnOrAfter(now);
+        if (today != -1) {
+            int firstDay = getJulianDay(snapshot.getDate(today));
+            int days = 1;
+            while (days < Math.min(snapshot.getCount() - today, WEAR_DAYS) &&
+                    getJulianDay(snapshot.getDate(today + days)) == firstDay + days) {
+                days++;
+            }
+            ForecastPayload forecast = new ForecastPayload(location.trim(), firstDay, days);
+            for (int i = 0; i < days; i++) {
+                forecast.setDay(i, snapshot.getWeatherId(today + i),
+                        snapshot.getMaxTemp(today + i), snapshot.getMinTemp(today + i));
+            }
+            return forecast;
         }
-        if (!mGoogleApiClient.isConnected()) {
-            Log.d(TAG, "mGoogleApiClient.connect()");
 
-            mGoogleApiClient.connect();
+        // Get the days from today on from the ContentProvider
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildPage(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(location, now),
+                WEAR_DAYS);
+        Cursor data = context.getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS,
+                null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (data == null) {
+            return null;
+        }
+        try {
+            if (!data.moveToFirst()) {
+                return null;
+            }
+            int firstDay = getJulianDay(data.getLong(INDEX_DATE));
+            int days = 1;
+            while (data.moveToNext() && getJulianDay(data.getLong(INDEX_DATE)) == firstDay + days) {
+                days++;
+            }
+            ForecastPayload forecast = new ForecastPayload(location.trim(), firstDay, days);
+            for (int i = 0; i < days; i++) {
+                data.moveToPosition(i);
+                forecast.setDay(i, data.getInt(INDEX_WEATHER_ID), data.getDouble(INDEX_MAX_TEMP),
+                        data.getDouble(INDEX_MIN_TEMP));
+            }
+            return forecast;
+        } finally {
+            data.close();
         }
     }
 
-    @Override
-    public void onConnected(Bundle bundle) {
-        Log.d(TAG, "onConnected");
-
-        // create and send a request to update the weather on wearable
-        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(REQ_PATH);
-        putDataMapRequest.setUrgent();
-
-        putDataMapRequest.getDataMap().putInt(KEY_WEATHER_ID, mWeatherId);
-        putDataMapRequest.getDataMap().putDouble(KEY_TEMP_MAX, mMaxTemp);
-        putDataMapRequest.getDataMap().putDouble(KEY_TEMP_MIN, mMinTemp);
-        putDataMapRequest.getDataMap().putString(KEY_LOCATION, mLocation);
-
-        Log.d(TAG, "mLocation: " + mLocation);
-        Log.d(TAG, "mWeatherId: " + Integer.toString(mWeatherId));
-        Log.d(TAG, "mMaxTemp: " + Double.toString(mMaxTemp));
-        Log.d(TAG, "mMinTemp: " + Double.toString(mMinTemp));
-
-        // http://stackoverflow.com/questions/25141046/wearablelistenerservice-ondatachanged-is-not-called
-        // this timestamp is added to make the weather condition updates unique.
-        // apparently the non-unique requests are not synchronized through the wearable API.
-        // the non-unique requests may appear when the watch face is being selected by the user,
-        // and requests the weather data from the device.
-        putDataMapRequest.getDataMap().putLong("time", System.currentTimeMillis());
-
-        PutDataRequest request = putDataMapRequest.asPutDataRequest();
-        Wearable.DataApi.putDataItem(mGoogleApiClient, request)
-                .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                                       @Override
-                                       public void onResult(DataApi.DataItemResult dataItemResult) {
-                                           if (dataItemResult.getStatus().isSuccess()) {
-                                               Log.d(TAG, "Successfully sent");
-                                           } else {
-                                               Log.d(TAG, "Failed to send");
-                                           }
-                                       }
-                                   }
-                );
+    private static int getJulianDay(long date) {
+        Time time = new Time();
+        time.set(date);
+        return Time.getJulianDay(date, time.gmtoff);
     }
 
     @Override
-    public void onConnectionSuspended(int i) {
-        Log.d(TAG, "onConnectionSuspended");
+    public void onDestroy() {
+        Log.d(TAG, "onDestroy");
+
+        super.onDestroy();
     }
 }
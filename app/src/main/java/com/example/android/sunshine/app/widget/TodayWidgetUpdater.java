@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.annotation.TargetApi;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.widget.RemoteViews;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+
+import java.util.Arrays;
+
+/**
+ * {@link TodayWidgetUpdater} only sends a Today widget new views when what it shows has changed.
+ * Each widget's layout is worked out once from its width and kept until its options change, and
+ * the content last sent to each widget is kept, with the layout it was sent in, so a sync that
+ * brings the same weather doesn't update any widget.
+ */
+class TodayWidgetUpdater {
+    /**
+     * The widgets being updated.  {@link TodayWidgetIntentService} uses the AppWidgetManager.
+     */
+    interface Host {
+        int[] getAppWidgetIds();
+
+        /**
+         * @return the widget's width in pixels.
+         */
+        int getWidgetWidth(int appWidgetId);
+
+        void updateAppWidget(int appWidgetId, RemoteViews views);
+    }
+
+    /**
+     * What the Today widgets show.
+     */
+    static final class Content {
+        final int artResourceId;
+        final String description;
+        final String formattedMaxTemperature;
+        final String formattedMinTemperature;
+
+        Content(int artResourceId, String description, String formattedMaxTemperature,
+                String formattedMinTemperature) {
+            this.artResourceId = artResourceId;
+            this.description = description;
+            this.formattedMaxTemperature = formattedMaxTemperature;
+            this.formattedMinTemperature = formattedMinTemperature;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Content)) {
+                return false;
+            }
+            Content other = (Content) o;
+            return artResourceId == other.artResourceId &&
+                    equal(description, other.description) &&
+                    equal(formattedMaxTemperature, other.formattedMaxTemperature) &&
+                    equal(formattedMinTemperature, other.formattedMinTemperature);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[]{artResourceId, description,
+                    formattedMaxTemperature, formattedMinTemperature});
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return null == a ? null == b : a.equals(b);
+        }
+    }
+
+    private static TodayWidgetUpdater sInstance;
+
+    private final Context mContext;
+    // widget id to the layout chosen for its width
+    private final SparseIntArray mLayouts = new SparseIntArray();
+    // widget id to the content it was last sent, and the layout it was sent in
+    private final SparseArray<Content> mSentContent = new SparseArray<Content>();
+    private final SparseIntArray mSentLayouts = new SparseIntArray();
+
+    static synchronized TodayWidgetUpdater getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new TodayWidgetUpdater(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    TodayWidgetUpdater(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * The widget has been resized, so its layout is chosen again on the next update.
+     */
+    synchronized void invalidateLayout(int appWidgetId) {
+        mLayouts.delete(appWidgetId);
+    }
+
+    /**
+     * The next update sends these widgets their views whether or not they've changed.
+     */
+    synchronized void invalidateContent(int[] appWidgetIds) {
+        for (int appWidgetId : appWidgetIds) {
+            mSentContent.delete(appWidgetId);
+            mSentLayouts.delete(appWidgetId);
+        }
+    }
+
+    synchronized void forget(int[] appWidgetIds) {
+        for (int appWidgetId : appWidgetIds) {
+            mLayouts.delete(appWidgetId);
+            mSentContent.delete(appWidgetId);
+            mSentLayouts.delete(appWidgetId);
+        }
+    }
+
+    /**
+     * Sends the content to every widget that isn't already showing it.
+     *
+     * @return the number of widgets that were updated.
+     */
+    synchronized int update(Host host, Content content) {
+        int updated = 0;
+        // one set of views per layout, shared by every widget of that size
+        SparseArray<RemoteViews> viewsByLayout = new SparseArray<RemoteViews>();
+        for (int appWidgetId : host.getAppWidgetIds()) {
+            int layoutId = getLayout(host, appWidgetId);
+            if (content.equals(mSentContent.get(appWidgetId)) &&
+                    mSentLayouts.get(appWidgetId) == layoutId) {
+                continue;
+            }
+            RemoteViews views = viewsByLayout.get(layoutId);
+            if (null == views) {
+                views = buildViews(layoutId, content);
+                viewsByLayout.put(layoutId, views);
+            }
+            host.updateAppWidget(appWidgetId, views);
+            mSentContent.put(appWidgetId, content);
+            mSentLayouts.put(appWidgetId, layoutId);
+            updated++;
+        }
+        return updated;
+    }
+
+    private int getLayout(Host host, int appWidgetId) {
+        int index = mLayouts.indexOfKey(appWidgetId);
+        if (index >= 0) {
+            return mLayouts.valueAt(index);
+        }
+        // Find the correct layout based on the widget's width
+        int widgetWidth = host.getWidgetWidth(appWidgetId);
+        int defaultWidth = mContext.getResources().getDimensionPixelSize(
+                R.dimen.widget_today_default_width);
+        int largeWidth = mContext.getResources().getDimensionPixelSize(
+                R.dimen.widget_today_large_width);
+        int layoutId;
+        if (widgetWidth >= largeWidth) {
+            layoutId = R.layout.widget_today_large;
+        } else if (widgetWidth >= defaultWidth) {
+            layoutId = R.layout.widget_today;
+        } else {
+            layoutId = R.layout.widget_today_small;
+        }
+        mLayouts.put(appWidgetId, layoutId);
+        return layoutId;
+    }
+
+    private RemoteViews buildViews(int layoutId, Content content) {
+        RemoteViews views = new RemoteViews(mContext.getPackageName(), layoutId);
+
+        // Add the data to the RemoteViews
+        views.setImageViewResource(R.id.widget_icon, content.artResourceId);
+        // Content Descriptions for RemoteViews were only added in ICS MR1
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+            setRemoteContentDescription(views, content.description);
+        }
+        views.setTextViewText(R.id.widget_description, content.description);
+        views.setTextViewText(R.id.widget_high_temperature, content.formattedMaxTemperature);
+        views.setTextViewText(R.id.widget_low_temperature, content.formattedMinTemperature);
+
+        // Create an Intent to launch MainActivity
+        Intent launchIntent = new Intent(mContext, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(mContext, 0, launchIntent, 0);
+        views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+        return views;
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+    private void setRemoteContentDescription(RemoteViews views, String description) {
+        views.setContentDescription(R.id.widget_icon, description);
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.ArtCache;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * {@link WidgetArtCache} keeps the art pack scaled down to the size the widgets' rows show it
+ * at.  Every bitmap a widget sets is copied across to the launcher, so sending the art at full
+ * size makes each update slow and can overflow the binder transaction.  Each image is scaled
+ * once per art pack, kept on disk so it survives the process, and kept in memory while the
+ * widgets are being updated.
+ * <p>
+ * Reads may go to the disk or the network, so they must not be made on the main thread.
+ */
+public class WidgetArtCache {
+    public static final String LOG_TAG = WidgetArtCache.class.getSimpleName();
+
+    private static final String DIRECTORY = "widget_art";
+    // a pack and a half, so a row from the last pack doesn't push out the current one
+    private static final int MEMORY_ENTRIES = WeatherConditions.CONDITION_COUNT * 3 / 2;
+
+    private static WidgetArtCache sInstance;
+
+    private final Context mContext;
+    private final int mSize;
+    private final File mDirectory;
+    // Only touched while holding its own lock
+    private final LinkedHashMap<String, Bitmap> mMemory =
+            new LinkedHashMap<String, Bitmap>(MEMORY_ENTRIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Bitmap> eldest) {
+                    return size() > MEMORY_ENTRIES;
+                }
+            };
+
+    public static synchronized WidgetArtCache getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new WidgetArtCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WidgetArtCache(Context context) {
+        mContext = context;
+        mSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        mDirectory = new File(context.getCacheDir(), DIRECTORY);
+    }
+
+    /**
+     * @return the art for the url, no bigger than a widget row's icon, or null if it couldn't be
+     * loaded.
+     */
+    public Bitmap get(String artUrl) {
+        synchronized (mMemory) {
+            Bitmap art = mMemory.get(artUrl);
+            if (null != art) {
+                return art;
+            }
+        }
+
+        File file = getFile(artUrl);
+        Bitmap art = BitmapFactory.decodeFile(file.getPath());
+        if (null == art) {
+            art = load(artUrl);
+            if (null == art) {
+                return null;
+            }
+            write(file, art);
+        }
+        synchronized (mMemory) {
+            mMemory.put(artUrl, art);
+        }
+        return art;
+    }
+
+    /**
+     * Scales the art for every condition in the current art pack, and deletes whatever was
+     * scaled for earlier packs.  Best called straight after {@link ArtCache#prefetch()}, so the
+     * art is scaled from what it pinned rather than fetched again.
+     */
+    public void prefetch() {
+        if (Utility.usingLocalGraphics(mContext)) {
+            // the widgets use the resources, which are only sent as ids
+            return;
+        }
+        HashSet<String> current = new HashSet<String>();
+        for (int condition = 0; condition < WeatherConditions.CONDITION_COUNT; condition++) {
+            String artUrl = Utility.getArtUrlForCondition(mContext, condition);
+            get(artUrl);
+            current.add(getFile(artUrl).getName());
+        }
+
+        File[] files = mDirectory.listFiles();
+        if (null != files) {
+            for (File file : files) {
+                if (!current.contains(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private Bitmap load(String artUrl) {
+        Bitmap pinned = ArtCache.getInstance(mContext).get(artUrl);
+        if (null != pinned) {
+            return scaleToFit(pinned);
+        }
+
+        FutureTarget<Bitmap> target = Glide.with(mContext)
+                .load(artUrl)
+                .asBitmap()
+                .fitCenter()
+                .into(mSize, mSize);
+        try {
+            // Copied, since Glide reuses the bitmap once the request is cleared
+            return scaleToFit(target.get());
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving widget art from " + artUrl, e);
+            return null;
+        } finally {
+            target.clear();
+        }
+    }
+
+    // Always a new bitmap, no bigger than mSize on either side
+    private Bitmap scaleToFit(Bitmap art) {
+        float scale = Math.min(1f, Math.min((float) mSize / art.getWidth(),
+                (float) mSize / art.getHeight()));
+        int width = Math.max(1, Math.round(art.getWidth() * scale));
+        int height = Math.max(1, Math.round(art.getHeight() * scale));
+        if (width == art.getWidth() && height == art.getHeight()) {
+            return art.copy(Bitmap.Config.ARGB_8888, false);
+        }
+        return Bitmap.createScaledBitmap(art, width, height, true);
+    }
+
+    // Written to the side and renamed, so another thread never decodes half a file
+    private void write(File file, Bitmap art) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Error creating " + mDirectory);
+            return;
+        }
+        File temp = new File(mDirectory, file.getName() + "." + Thread.currentThread().getId());
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            art.compress(Bitmap.CompressFormat.PNG, 100, out);
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing widget art to " + file, e);
+            temp.delete();
+        } finally {
+            if (null != out) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // nothing more to do with it
+                }
+            }
+        }
+    }
+
+    // Named for the url and the size, so a change to either is never served the old image
+    File getFile(String artUrl) {
+        String key = artUrl + "@" + mSize;
+        StringBuilder name = new StringBuilder();
+        try {
+            for (byte b : MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"))) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // every platform has both, but fall back to something that still works
+            name.append(Integer.toHexString(key.hashCode()));
+        }
+        return new File(mDirectory, name.append(".png").toString());
+    }
+}
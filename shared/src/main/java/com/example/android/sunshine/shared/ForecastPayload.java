@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * The forecast the phone sends the watch, as one compact byte array.  It holds a run of days
+ * starting at a given Julian day, and optionally a run of hours, so the watch can show more than
+ * today without asking the phone again.  Temperatures are kept in tenths of a degree, and
+ * conditions as the OpenWeatherMap code, which {@link WeatherConditions} maps on either side.
+ *
+ * Layout (big endian):
+ * <pre>
+ *   header  version (byte), flags (byte), location (length byte + UTF-8),
+ *           first day (int, Julian day number), day count (byte)
+ *   day     weather id (short), max (short, tenths), min (short, tenths)
+ *   hourly  (if FLAG_HOURLY) first hour (short, hours after the first day began),
+ *           hour count (short), then per hour weather id (short), temperature (short, tenths)
+ * </pre>
+ * A decoder ignores anything after the parts it knows, so later versions of the same layout
+ * can append fields without breaking older watches.
+ */
+public final class ForecastPayload {
+    public static final int VERSION = 1;
+    public static final int MAX_DAYS = 255;
+    public static final int MAX_HOURS = Short.MAX_VALUE;
+
+    private static final int FLAG_HOURLY = 1;
+    private static final int MAX_LOCATION_BYTES = 255;
+    private static final int HEADER_SIZE = 1 + 1 + 1 + 4 + 1;
+    private static final int DAY_SIZE = 2 + 2 + 2;
+    private static final int HOURLY_HEADER_SIZE = 2 + 2;
+    private static final int HOUR_SIZE = 2 + 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String mLocation;
+    private final int mFirstDay;
+    private final int[] mWeatherIds;
+    private final short[] mMaxTemps;
+    private final short[] mMinTemps;
+
+    private int mFirstHour;
+    private int[] mHourlyWeatherIds;
+    private short[] mHourlyTemps;
+
+    /**
+     * @param location the location the forecast is for
+     * @param firstDay the Julian day of the first day, as android.text.format.Time counts them
+     * @param days the number of days the payload holds, set with {@link #setDay}
+     */
+    public ForecastPayload(String location, int firstDay, int days) {
+        if (days < 0 || days > MAX_DAYS) {
+            throw new IllegalArgumentException("Can't hold " + days + " days");
+        }
+        mLocation = null == location ? "" : location;
+        mFirstDay = firstDay;
+        mWeatherIds = new int[days];
+        mMaxTemps = new short[days];
+        mMinTemps = new short[days];
+    }
+
+    public void setDay(int day, int weatherId, double maxTemp, double minTemp) {
+        mWeatherIds[day] = toCode(weatherId);
+        mMaxTemps[day] = quantize(maxTemp);
+        mMinTemps[day] = quantize(minTemp);
+    }
+
+    /**
+     * Makes room for hourly data, set with {@link #setHour}.
+     *
+     * @param firstHour the first hour, counted from the start of the first day
+     * @param hours the number of hours
+     */
+    public void setHourly(int firstHour, int hours) {
+        if (hours < 0 || hours > MAX_HOURS) {
+            throw new IllegalArgumentException("Can't hold " + hours + " hours");
+        }
+        mFirstHour = firstHour;
+        mHourlyWeatherIds = new int[hours];
+        mHourlyTemps = new short[hours];
+    }
+
+    public void setHour(int hour, int weatherId, double temp) {
+        mHourlyWeatherIds[hour] = toCode(weatherId);
+        mHourlyTemps[hour] = quantize(temp);
+    }
+
+    // Weather ids are three digits, so anything that won't fit a short is no condition at all
+    private static int toCode(int weatherId) {
+        return weatherId < Short.MIN_VALUE || weatherId > Short.MAX_VALUE ? 0 : weatherId;
+    }
+
+    private static short quantize(double temp) {
+        long tenths = Math.round(temp * 10);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, tenths));
+    }
+
+    public byte[] encode() {
+        byte[] location = truncate(mLocation.getBytes(UTF_8));
+        boolean hourly = null != mHourlyWeatherIds;
+        int size = HEADER_SIZE + location.length + mWeatherIds.length * DAY_SIZE;
+        if (hourly) {
+            size += HOURLY_HEADER_SIZE + mHourlyWeatherIds.length * HOUR_SIZE;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.BIG_ENDIAN);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) (hourly ? FLAG_HOURLY : 0));
+        buffer.put((byte) location.length);
+        buffer.put(location);
+        buffer.putInt(mFirstDay);
+        buffer.put((byte) mWeatherIds.length);
+        for (int i = 0; i < mWeatherIds.length; i++) {
+            buffer.putShort((short) mWeatherIds[i]);
+            buffer.putShort(mMaxTemps[i]);
+            buffer.putShort(mMinTemps[i]);
+        }
+        if (hourly) {
+            buffer.putShort((short) mFirstHour);
+            buffer.putShort((short) mHourlyWeatherIds.length);
+            for (int i = 0; i < mHourlyWeatherIds.length; i++) {
+                buffer.putShort((short) mHourlyWeatherIds[i]);
+                buffer.putShort(mHourlyTemps[i]);
+            }
+        }
+        return buffer.array();
+    }
+
+    // Cuts a location too long for its length byte at a character boundary
+    private static byte[] truncate(byte[] bytes) {
+        if (bytes.length <= MAX_LOCATION_BYTES) {
+            return bytes;
+        }
+        int length = MAX_LOCATION_BYTES;
+        // don't split a multi-byte sequence
+        while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        byte[] truncated = new byte[length];
+        System.arraycopy(bytes, 0, truncated, 0, length);
+        return truncated;
+    }
+
+    /**
+     * @return the payload, or null if it's from another version or isn't a whole payload.
+     */
+    public static ForecastPayload decode(byte[] bytes) {
+        if (null == bytes || bytes.length < HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (buffer.get() != VERSION) {
+                return null;
+            }
+            int flags = buffer.get();
+            byte[] location = new byte[buffer.get() & 0xFF];
+            buffer.get(location);
+            int firstDay = buffer.getInt();
+            int days = buffer.get() & 0xFF;
+
+            ForecastPayload payload = new ForecastPayload(new String(location, UTF_8), firstDay,
+                    days);
+            for (int i = 0; i < days; i++) {
+                payload.mWeatherIds[i] = buffer.getShort();
+                payload.mMaxTemps[i] = buffer.getShort();
+                payload.mMinTemps[i] = buffer.getShort();
+            }
+            if ((flags & FLAG_HOURLY) != 0) {
+                int firstHour = buffer.getShort();
+                int hours = buffer.getShort();
+                if (hours < 0) {
+                    return null;
+                }
+                payload.setHourly(firstHour, hours);
+                for (int i = 0; i < hours; i++) {
+                    payload.mHourlyWeatherIds[i] = buffer.getShort();
+                    payload.mHourlyTemps[i] = buffer.getShort();
+                }
+            }
+            return payload;
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    public String getLocation() {
+        return mLocation;
+    }
+
+    public int getFirstDay() {
+        return mFirstDay;
+    }
+
+    public int getDayCount() {
+        return mWeatherIds.length;
+    }
+
+    /**
+     * @return the index of the given Julian day, or -1 if the payload doesn't hold it.
+     */
+    public int getDayIndex(int julianDay) {
+        int index = julianDay - mFirstDay;
+        return index >= 0 && index < mWeatherIds.length ? index : -1;
+    }
+
+    public int getWeatherId(int day) {
+        return mWeatherIds[day];
+    }
+
+    public double getMaxTemp(int day) {
+        return mMaxTemps[day] / 10.0;
+    }
+
+    public double getMinTemp(int day) {
+        return mMinTemps[day] / 10.0;
+    }
+
+    public boolean hasHourly() {
+        return null != mHourlyWeatherIds;
+    }
+
+    public int getFirstHour() {
+        return mFirstHour;
+    }
+
+    public int getHourCount() {
+        return null == mHourlyWeatherIds ? 0 : mHourlyWeatherIds.length;
+    }
+
+    public int getHourlyWeatherId(int hour) {
+        return mHourlyWeatherIds[hour];
+    }
+
+    public double getHourlyTemp(int hour) {
+        return mHourlyTemps[hour] / 10.0;
+    }
+}
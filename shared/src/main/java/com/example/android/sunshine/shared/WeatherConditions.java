@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import java.util.Arrays;
+
+/**
+ * Maps OpenWeatherMap condition codes to the handful of conditions Sunshine has graphics for.
+ * The mapping is held in a dense table indexed by code, so a lookup is a bounds check and an
+ * array read.  The phone app and the watch face both use it, and each turns a condition into
+ * its own resources.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+    public static final int CONDITION_NONE = -1;
+    public static final int CONDITION_STORM = 0;
+    public static final int CONDITION_LIGHT_RAIN = 1;
+    public static final int CONDITION_RAIN = 2;
+    public static final int CONDITION_SNOW = 3;
+    public static final int CONDITION_FOG = 4;
+    public static final int CONDITION_CLEAR = 5;
+    public static final int CONDITION_LIGHT_CLOUDS = 6;
+    public static final int CONDITION_CLOUDS = 7;
+    public static final int CONDITION_COUNT = 8;
+
+    // The names art packs use for each condition, indexed by condition
+    private static final String[] ART_NAMES = {
+            "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds"
+    };
+
+    private static final int IMAGE_DUST = CONDITION_COUNT;
+    // Photos for Muzei, indexed by condition, with one extra for raised dust
+    private static final String[] IMAGE_URLS = {
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg"
+    };
+
+    static final int MIN_CODE = 200;
+    static final int MAX_CODE = 804;
+
+    // Indexed by code - MIN_CODE
+    private static final byte[] CONDITIONS = new byte[MAX_CODE - MIN_CODE + 1];
+    private static final byte[] IMAGES = new byte[MAX_CODE - MIN_CODE + 1];
+
+    static {
+        Arrays.fill(CONDITIONS, (byte) CONDITION_NONE);
+        fill(200, 232, CONDITION_STORM);
+        fill(300, 321, CONDITION_LIGHT_RAIN);
+        fill(500, 504, CONDITION_RAIN);
+        fill(511, 511, CONDITION_SNOW);
+        fill(520, 531, CONDITION_RAIN);
+        fill(600, 622, CONDITION_SNOW);
+        // 761 is dust, but has always been drawn as fog
+        fill(701, 761, CONDITION_FOG);
+        fill(781, 781, CONDITION_STORM);
+        fill(800, 800, CONDITION_CLEAR);
+        fill(801, 801, CONDITION_LIGHT_CLOUDS);
+        fill(802, 804, CONDITION_CLOUDS);
+
+        for (int i = 0; i < CONDITIONS.length; i++) {
+            IMAGES[i] = CONDITIONS[i];
+        }
+        // a tornado gets the dust storm photo rather than the thunderstorm one
+        IMAGES[781 - MIN_CODE] = IMAGE_DUST;
+    }
+
+    private static void fill(int fromCode, int toCode, int condition) {
+        Arrays.fill(CONDITIONS, fromCode - MIN_CODE, toCode - MIN_CODE + 1, (byte) condition);
+    }
+
+    private WeatherConditions() {
+    }
+
+    /**
+     * @return true if the id is within the range of OpenWeatherMap condition codes.
+     */
+    public static boolean isWeatherId(int weatherId) {
+        return weatherId >= MIN_CODE && weatherId <= MAX_CODE;
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return one of the CONDITION_ constants, or {@link #CONDITION_NONE} if Sunshine has no
+     * graphics for the code.
+     */
+    public static int getCondition(int weatherId) {
+        if (weatherId < MIN_CODE || weatherId > MAX_CODE) {
+            return CONDITION_NONE;
+        }
+        return CONDITIONS[weatherId - MIN_CODE];
+    }
+
+    /**
+     * @return the name art packs use for the condition, or null for {@link #CONDITION_NONE}.
+     */
+    public static String getArtName(int condition) {
+        if (condition < 0 || condition >= CONDITION_COUNT) {
+            return null;
+        }
+        return ART_NAMES[condition];
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return A string URL to an appropriate image or null if no mapping is found
+     */
+    public static String getImageUrl(int weatherId) {
+        if (weatherId < MIN_CODE || weatherId > MAX_CODE) {
+            return null;
+        }
+        int image = IMAGES[weatherId - MIN_CODE];
+        return image == CONDITION_NONE ? null : IMAGE_URLS[image];
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/*
+    Encodes forecasts of different lengths, with and without hourly data, and checks that they
+    decode to the same days to a tenth of a degree.  Also checks that payloads from another
+    version or cut short are turned away, and prints the encoded size for 1, 7 and 14 days.
+ */
+public class TestForecastPayload {
+    private static final int FIRST_DAY = 2457198; // 2015-06-24
+    private static final String LOCATION = "Mountain View, CA";
+    private static final int[] WEATHER_IDS = {200, 301, 501, 511, 600, 701, 781, 800, 801, 804};
+    // half a tenth of a degree, and a little for the doubles themselves
+    private static final double TOLERANCE = 0.0501;
+
+    private static ForecastPayload makePayload(int days) {
+        ForecastPayload payload = new ForecastPayload(LOCATION, FIRST_DAY, days);
+        for (int i = 0; i < days; i++) {
+            payload.setDay(i, WEATHER_IDS[i % WEATHER_IDS.length], 20.04 + i * 1.37, -5.55 + i);
+        }
+        return payload;
+    }
+
+    @Test
+    public void testDaysRoundTrip() {
+        for (int days : new int[]{0, 1, 7, 14, ForecastPayload.MAX_DAYS}) {
+            ForecastPayload decoded = ForecastPayload.decode(makePayload(days).encode());
+            assertNotNull(decoded);
+            assertEquals(LOCATION, decoded.getLocation());
+            assertEquals(FIRST_DAY, decoded.getFirstDay());
+            assertEquals(days, decoded.getDayCount());
+            assertFalse(decoded.hasHourly());
+            for (int i = 0; i < days; i++) {
+                assertEquals(WEATHER_IDS[i % WEATHER_IDS.length], decoded.getWeatherId(i));
+                assertEquals(20.04 + i * 1.37, decoded.getMaxTemp(i), TOLERANCE);
+                assertEquals(-5.55 + i, decoded.getMinTemp(i), TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void testHourlyRoundTrip() {
+        ForecastPayload payload = makePayload(2);
+        payload.setHourly(13, 24);
+        for (int i = 0; i < 24; i++) {
+            payload.setHour(i, 800 + i % 5, 10 + i * 0.25);
+        }
+        ForecastPayload decoded = ForecastPayload.decode(payload.encode());
+        assertNotNull(decoded);
+        assertTrue(decoded.hasHourly());
+        assertEquals(13, decoded.getFirstHour());
+        assertEquals(24, decoded.getHourCount());
+        for (int i = 0; i < 24; i++) {
+            assertEquals(800 + i % 5, decoded.getHourlyWeatherId(i));
+            assertEquals(10 + i * 0.25, decoded.getHourlyTemp(i), TOLERANCE);
+        }
+        assertEquals(2, decoded.getDayCount());
+    }
+
+    @Test
+    public void testDayIndex() {
+        ForecastPayload payload = makePayload(7);
+        assertEquals(0, payload.getDayIndex(FIRST_DAY));
+        assertEquals(6, payload.getDayIndex(FIRST_DAY + 6));
+        assertEquals(-1, payload.getDayIndex(FIRST_DAY - 1));
+        assertEquals(-1, payload.getDayIndex(FIRST_DAY + 7));
+    }
+
+    @Test
+    public void testOutOfRangeValues() {
+        ForecastPayload payload = new ForecastPayload(null, FIRST_DAY, 1);
+        payload.setDay(0, Integer.MAX_VALUE, 1e6, -1e6);
+        ForecastPayload decoded = ForecastPayload.decode(payload.encode());
+        assertNotNull(decoded);
+        assertEquals("", decoded.getLocation());
+        assertEquals(0, decoded.getWeatherId(0));
+        assertEquals(Short.MAX_VALUE / 10.0, decoded.getMaxTemp(0), 0);
+        assertEquals(Short.MIN_VALUE / 10.0, decoded.getMinTemp(0), 0);
+    }
+
+    @Test
+    public void testLongLocationIsCut() {
+        StringBuilder location = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            // two bytes each in UTF-8
+            location.append('\u00e9');
+        }
+        ForecastPayload decoded = ForecastPayload.decode(
+                new ForecastPayload(location.toString(), FIRST_DAY, 0).encode());
+        assertNotNull(decoded);
+        assertEquals(127, decoded.getLocation().length());
+        assertTrue(location.toString().startsWith(decoded.getLocation()));
+    }
+
+    @Test
+    public void testBadPayloadsAreRejected() {
+        byte[] bytes = makePayload(7).encode();
+        assertNull(ForecastPayload.decode(null));
+        assertNull(ForecastPayload.decode(new byte[0]));
+
+        byte[] cut = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, cut, 0, cut.length);
+        assertNull("Error: a payload cut short was decoded", ForecastPayload.decode(cut));
+
+        byte[] newer = bytes.clone();
+        newer[0] = ForecastPayload.VERSION + 1;
+        assertNull("Error: a payload from another version was decoded",
+                ForecastPayload.decode(newer));
+
+        byte[] extended = new byte[bytes.length + 8];
+        System.arraycopy(bytes, 0, extended, 0, bytes.length);
+        assertNotNull("Error: fields appended to the payload weren't ignored",
+                ForecastPayload.decode(extended));
+    }
+
+    @Test
+    public void testEncodedSize() {
+        for (int days : new int[]{1, 7, 14}) {
+            System.out.println("forecast payload, " + days + " days: " +
+                    makePayload(days).encode().length + " bytes");
+        }
+    }
+}
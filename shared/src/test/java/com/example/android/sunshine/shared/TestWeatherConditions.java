@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/*
+    Checks the condition table against the if/else chains it replaced, for every code and a
+    margin either side, and compares how long a lookup takes with each.
+ */
+public class TestWeatherConditions {
+    private static final int FIRST_CODE = -100;
+    private static final int LAST_CODE = 1100;
+    private static final int BENCHMARK_PASSES = 2000;
+
+    // The art pack names as Utility.getArtUrlForWeatherCondition used to pick them
+    static String legacyArtName(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "storm";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "light_rain";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "rain";
+        } else if (weatherId == 511) {
+            return "snow";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "rain";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "snow";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "fog";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "storm";
+        } else if (weatherId == 800) {
+            return "clear";
+        } else if (weatherId == 801) {
+            return "light_clouds";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "clouds";
+        }
+        return null;
+    }
+
+    // Utility.getImageUrlForWeatherCondition as it was
+    static String legacyImageUrl(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId == 511) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        } else if (weatherId == 800) {
+            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        } else if (weatherId == 801) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+        }
+        return null;
+    }
+
+    @Test
+    public void testMatchesLegacyChains() {
+        for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+            assertEquals("art name for " + code, legacyArtName(code),
+                    WeatherConditions.getArtName(WeatherConditions.getCondition(code)));
+            assertEquals("image for " + code, legacyImageUrl(code),
+                    WeatherConditions.getImageUrl(code));
+        }
+        assertEquals(WeatherConditions.CONDITION_NONE,
+                WeatherConditions.getCondition(Integer.MIN_VALUE));
+        assertEquals(WeatherConditions.CONDITION_NONE,
+                WeatherConditions.getCondition(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testWeatherIdRange() {
+        assertTrue(WeatherConditions.isWeatherId(200));
+        assertTrue(WeatherConditions.isWeatherId(804));
+        assertFalse(WeatherConditions.isWeatherId(199));
+        assertFalse(WeatherConditions.isWeatherId(805));
+        assertFalse(WeatherConditions.isWeatherId(-1));
+    }
+
+    @Test
+    public void testQuirksArePreserved() {
+        assertEquals(WeatherConditions.CONDITION_FOG, WeatherConditions.getCondition(761));
+        assertEquals(WeatherConditions.CONDITION_NONE, WeatherConditions.getCondition(762));
+        assertEquals(WeatherConditions.CONDITION_NONE, WeatherConditions.getCondition(771));
+        assertEquals(WeatherConditions.CONDITION_STORM, WeatherConditions.getCondition(781));
+        assertEquals(WeatherConditions.CONDITION_NONE, WeatherConditions.getCondition(505));
+        assertEquals(WeatherConditions.CONDITION_NONE, WeatherConditions.getCondition(900));
+    }
+
+    @Test
+    public void testLookupCost() {
+        // warm both paths up before timing them
+        long checksum = 0;
+        for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+            checksum += legacyArtName(code) == null ? 0 : 1;
+            checksum += WeatherConditions.getCondition(code);
+        }
+
+        long legacyChecksum = 0;
+        long start = System.nanoTime();
+        for (int pass = 0; pass < BENCHMARK_PASSES; pass++) {
+            for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+                String name = legacyArtName(code);
+                legacyChecksum += name == null ? 0 : name.length();
+            }
+        }
+        long legacyNanos = System.nanoTime() - start;
+
+        long tableChecksum = 0;
+        start = System.nanoTime();
+        for (int pass = 0; pass < BENCHMARK_PASSES; pass++) {
+            for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+                String name = WeatherConditions.getArtName(WeatherConditions.getCondition(code));
+                tableChecksum += name == null ? 0 : name.length();
+            }
+        }
+        long tableNanos = System.nanoTime() - start;
+
+        assertEquals(legacyChecksum, tableChecksum);
+        long lookups = (long) BENCHMARK_PASSES * (LAST_CODE - FIRST_CODE + 1);
+        System.out.println("condition lookup, chain: " + (double) legacyNanos / lookups +
+                "ns, table: " + (double) tableNanos / lookups + "ns (" + checksum + ")");
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.shared.ForecastPayload;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+/*
+    Runs the watch's forecast cache on a stand-in clock.  Checks that a forecast is kept across
+    restarts of the face, that the phone is only asked once the forecast is older than the
+    freshness threshold or the clock has been set back, and that a damaged file is ignored.  Also
+    counts the requests a day of waking the watch costs, next to asking on every wake the way the
+    face used to.
+ */
+public class TestForecastCache extends AndroidTestCase {
+    public static final String LOG_TAG = TestForecastCache.class.getSimpleName();
+
+    private static final int FIRST_DAY = 2457198; // 2015-06-24
+    private static final long START_MILLIS = 1435147200000L; // 2015-06-24 12:00 UTC
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+    // a glance at the watch every ten minutes
+    private static final long WAKE_SPACING_MILLIS = 10 * 60 * 1000;
+
+    private FakeClock mClock;
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mClock = new FakeClock();
+        mClock.mNow = START_MILLIS;
+        mFile = new File(mContext.getCacheDir(), ForecastCache.FILE_NAME);
+        mFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    private static byte[] makeForecast(int version) {
+        ForecastPayload forecast = new ForecastPayload("Mountain View, CA", FIRST_DAY, 7);
+        for (int i = 0; i < 7; i++) {
+            forecast.setDay(i, 800 + i, 20 + i + version, 10 + i);
+        }
+        return forecast.encode();
+    }
+
+    public void testEmptyCacheNeedsUpdate() {
+        ForecastCache cache = new ForecastCache(mFile, mClock);
+        assertNull(cache.get());
+        assertTrue("Error: an empty cache didn't ask for a forecast", cache.needsUpdate());
+    }
+
+    public void testForecastSurvivesRestart() {
+        byte[] forecast = makeForecast(0);
+        assertNotNull(new ForecastCache(mFile, mClock).put(forecast));
+
+        mClock.mNow += 60 * 1000;
+        ForecastCache restarted = new ForecastCache(mFile, mClock);
+        ForecastPayload cached = restarted.get();
+        assertNotNull("Error: the forecast wasn't kept", cached);
+        assertEquals(7, cached.getDayCount());
+        assertEquals(800, cached.getWeatherId(0));
+        assertTrue(restarted.holds(forecast));
+        assertFalse(restarted.holds(makeForecast(1)));
+        assertFalse("Error: the time the forecast came wasn't kept", restarted.needsUpdate());
+    }
+
+    public void testFreshnessThreshold() {
+        ForecastCache cache = new ForecastCache(mFile, mClock);
+        cache.put(makeForecast(0));
+
+        mClock.mNow += ForecastCache.FRESH_MILLIS - 1;
+        assertFalse("Error: a fresh forecast asked for an update", cache.needsUpdate());
+        mClock.mNow += 1;
+        assertTrue("Error: an old forecast didn't ask for an update", cache.needsUpdate());
+
+        // the phone sends the same forecast again, which renews it
+        cache.put(makeForecast(0));
+        assertFalse(cache.needsUpdate());
+    }
+
+    public void testClockSetBackNeedsUpdate() {
+        ForecastCache cache = new ForecastCache(mFile, mClock);
+        cache.put(makeForecast(0));
+        mClock.mNow -= 1;
+        assertTrue("Error: a forecast from the future was taken as fresh", cache.needsUpdate());
+    }
+
+    public void testBadForecastIsIgnored() throws Exception {
+        ForecastCache cache = new ForecastCache(mFile, mClock);
+        cache.put(makeForecast(0));
+        assertNull(cache.put(new byte[]{1, 2, 3}));
+        assertTrue("Error: an unreadable forecast replaced a good one",
+                cache.holds(makeForecast(0)));
+
+        FileOutputStream out = new FileOutputStream(mFile);
+        out.write(new byte[]{0, 0, 0, 0, 1, 2, 3, 4, 5, 6, 7});
+        out.close();
+        ForecastCache damaged = new ForecastCache(mFile, mClock);
+        assertNull("Error: a damaged file was read", damaged.get());
+        assertTrue(damaged.needsUpdate());
+    }
+
+    public void testRequestsPerDay() {
+        ForecastCache cache = new ForecastCache(mFile, mClock);
+        int wakes = 0;
+        int requests = 0;
+        for (long t = 0; t < DAY_MILLIS; t += WAKE_SPACING_MILLIS) {
+            mClock.mNow = START_MILLIS + t;
+            wakes++;
+            if (cache.needsUpdate()) {
+                requests++;
+                // the phone answers straight away
+                cache.put(makeForecast(0));
+            }
+        }
+
+        Log.i(LOG_TAG, wakes + " wakes in a day: " + wakes + " requests asking on every wake, " +
+                requests + " with the cache");
+        assertEquals(DAY_MILLIS / ForecastCache.FRESH_MILLIS, requests);
+    }
+
+    static class FakeClock implements ForecastCache.Clock {
+        long mNow;
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+}
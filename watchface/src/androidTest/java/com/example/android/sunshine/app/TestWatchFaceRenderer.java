@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/*
+    Draws the watch face into an offscreen bitmap ten thousand times and counts the objects the
+    drawing thread allocates.  Frames inside one minute shouldn't allocate at all, and a day of
+    frames a second apart should only allocate when the minute changes.  Also checks that frames
+    drawn over the kept static layers look the same as frames drawn in full, and logs what a
+    frame costs each way.
+ */
+public class TestWatchFaceRenderer extends AndroidTestCase {
+    public static final String LOG_TAG = TestWatchFaceRenderer.class.getSimpleName();
+
+    private static final int FRAMES = 10000;
+    private static final int SIZE = 320;
+    // 2015-06-24 12:00:00 UTC
+    private static final long START_MILLIS = 1435147200000L;
+
+    private WatchFaceRenderer mRenderer;
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private Rect mBounds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new WatchFaceRenderer(mContext);
+        mRenderer.setTimeZone("UTC");
+        mRenderer.setWeather(501, 18.5, 9.25, " Mountain View ");
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+    }
+
+    public void testFramesWithinMinuteDontAllocate() {
+        // the first frame of the minute makes the text
+        mRenderer.draw(mCanvas, mBounds, START_MILLIS);
+
+        long step = 59 * 1000 / FRAMES;
+        int interactive = countAllocations(START_MILLIS, step);
+        mRenderer.setAmbient(true, true);
+        mRenderer.draw(mCanvas, mBounds, START_MILLIS);
+        int ambient = countAllocations(START_MILLIS, step);
+
+        Log.i(LOG_TAG, FRAMES + " frames in a minute: " + interactive +
+                " allocations interactive, " + ambient + " ambient");
+        assertEquals("Error: drawing an interactive frame allocated", 0, interactive);
+        assertEquals("Error: drawing an ambient frame allocated", 0, ambient);
+    }
+
+    public void testOnlyNewMinutesAllocate() {
+        mRenderer.draw(mCanvas, mBounds, START_MILLIS);
+
+        int allocations = countAllocations(START_MILLIS, 1000);
+        int minutes = FRAMES / 60;
+        Log.i(LOG_TAG, FRAMES + " frames a second apart: " + allocations + " allocations over " +
+                minutes + " new minutes");
+        assertTrue("Error: frames allocated between minutes",
+                allocations <= (minutes + 1) * maxAllocationsPerMinute());
+    }
+
+    public void testTimeTextFollowsMinute() {
+        mRenderer.draw(mCanvas, mBounds, START_MILLIS + 59 * 1000);
+        assertEquals("12", mRenderer.getHourText());
+        assertEquals("00", mRenderer.getMinuteText());
+        assertEquals("WED, JUN 24 2015", mRenderer.getDateText());
+
+        mRenderer.draw(mCanvas, mBounds, START_MILLIS + 60 * 1000);
+        assertEquals("01", mRenderer.getMinuteText());
+
+        // a clock set back is a new minute too
+        mRenderer.draw(mCanvas, mBounds, START_MILLIS - 60 * 60 * 1000);
+        assertEquals("11", mRenderer.getHourText());
+        assertEquals("00", mRenderer.getMinuteText());
+    }
+
+    public void testLayersMatchFullDraw() {
+        boolean[][] modes = {{false, false}, {true, false}, {true, true}};
+        for (boolean[] mode : modes) {
+            mRenderer.setAmbient(mode[0], mode[1]);
+            for (int second = 0; second < 2; second++) {
+                long now = START_MILLIS + second * 1000;
+                mRenderer.setLayered(false);
+                mRenderer.draw(mCanvas, mBounds, now);
+                Bitmap full = mBitmap.copy(Bitmap.Config.ARGB_8888, false);
+
+                mRenderer.setLayered(true);
+                mRenderer.draw(mCanvas, mBounds, now);
+                assertTrue("Error: a layered frame differs from a full one, ambient " + mode[0] +
+                        ", low bit " + mode[1] + ", second " + second, mBitmap.sameAs(full));
+            }
+        }
+
+        // new weather has to show through the layer made for the old
+        mRenderer.setAmbient(false, false);
+        mRenderer.draw(mCanvas, mBounds, START_MILLIS);
+        mRenderer.setWeather(800, 30, 20, "Fairbanks");
+        mRenderer.draw(mCanvas, mBounds, START_MILLIS);
+        Bitmap layered = mBitmap.copy(Bitmap.Config.ARGB_8888, false);
+        mRenderer.setLayered(false);
+        mRenderer.draw(mCanvas, mBounds, START_MILLIS);
+        assertTrue("Error: the layer kept the old weather", mBitmap.sameAs(layered));
+    }
+
+    public void testFrameTime() {
+        mRenderer.setLayered(false);
+        long full = timeFrames();
+        mRenderer.setLayered(true);
+        long layered = timeFrames();
+        Log.i(LOG_TAG, FRAMES + " frames drawn in full: " + full / 1000 + "us CPU, over " +
+                "the kept layers: " + layered / 1000 + "us CPU");
+    }
+
+    private long timeFrames() {
+        // the first frame makes the text and the layer
+        mRenderer.draw(mCanvas, mBounds, START_MILLIS);
+        long start = Debug.threadCpuTimeNanos();
+        for (int i = 0; i < FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, START_MILLIS + (i % 60) * 1000);
+        }
+        return Debug.threadCpuTimeNanos() - start;
+    }
+
+    // What making the text for one new minute costs, measured on its own
+    private int maxAllocationsPerMinute() {
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        mRenderer.setTimeZone("UTC");
+        mRenderer.draw(mCanvas, mBounds, START_MILLIS);
+        int count = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+        return count;
+    }
+
+    private int countAllocations(long startMillis, long stepMillis) {
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        for (int i = 0; i < FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, startMillis + i * stepMillis);
+        }
+        int count = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+        return count;
+    }
+}
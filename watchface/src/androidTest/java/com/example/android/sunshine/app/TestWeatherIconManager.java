@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/*
+    Checks the icons the watch face gets: made at the size they're drawn at, gray in ambient mode,
+    only white and transparent in low-bit ambient mode, and freed once another condition shows.
+    Also logs what starting the face costs in CPU time and in bitmap memory kept, next to
+    decoding every icon up front the way the face used to.
+ */
+public class TestWeatherIconManager extends AndroidTestCase {
+    public static final String LOG_TAG = TestWeatherIconManager.class.getSimpleName();
+
+    private static final int RAIN = 501;
+    private static final int CLEAR = 800;
+    private static final int STARTS = 20;
+
+    private WeatherIconManager mIcons;
+    private int mSize;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSize = mContext.getResources().getDimensionPixelSize(R.dimen.weather_icon_size);
+        mIcons = new WeatherIconManager(mContext.getResources(), mSize);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mIcons.release();
+        super.tearDown();
+    }
+
+    public void testIconsAreDrawnSize() {
+        Bitmap[] icons = {
+                mIcons.getIcon(RAIN, false, false),
+                mIcons.getIcon(RAIN, true, false),
+                mIcons.getIcon(RAIN, true, true),
+                mIcons.getIcon(0, false, false)
+        };
+        for (Bitmap icon : icons) {
+            assertEquals(mSize, icon.getWidth());
+            assertEquals(mSize, icon.getHeight());
+        }
+    }
+
+    public void testAmbientVariants() {
+        Bitmap ambient = mIcons.getIcon(RAIN, true, false);
+        for (int y = 0; y < mSize; y++) {
+            for (int x = 0; x < mSize; x++) {
+                int pixel = ambient.getPixel(x, y);
+                if (Color.alpha(pixel) == 0) {
+                    continue;
+                }
+                assertTrue("Error: the ambient icon has color at " + x + "," + y,
+                        Math.abs(Color.red(pixel) - Color.green(pixel)) <= 1 &&
+                                Math.abs(Color.green(pixel) - Color.blue(pixel)) <= 1);
+            }
+        }
+
+        Bitmap lowBit = mIcons.getIcon(RAIN, true, true);
+        int opaque = 0;
+        for (int y = 0; y < mSize; y++) {
+            for (int x = 0; x < mSize; x++) {
+                int pixel = lowBit.getPixel(x, y);
+                assertTrue("Error: the low-bit icon is neither white nor transparent at " +
+                        x + "," + y, pixel == Color.WHITE || Color.alpha(pixel) == 0);
+                if (pixel == Color.WHITE) {
+                    opaque++;
+                }
+            }
+        }
+        assertTrue("Error: the low-bit icon is blank", opaque > 0);
+    }
+
+    public void testOtherConditionsAreFreed() {
+        Bitmap rain = mIcons.getIcon(RAIN, false, false);
+        Bitmap rainAmbient = mIcons.getIcon(RAIN, true, false);
+        assertSame("Error: an icon was made again", rain, mIcons.getIcon(RAIN, false, false));
+        // the same condition
+        assertSame(rain, mIcons.getIcon(RAIN + 1, false, false));
+
+        mIcons.getIcon(CLEAR, false, false);
+        assertTrue("Error: the last condition's icon was kept", rain.isRecycled());
+        assertTrue("Error: the last condition's ambient icon was kept", rainAmbient.isRecycled());
+        assertEquals(mSize * mSize * 4, mIcons.getByteCount());
+    }
+
+    public void testStartupCost() {
+        Rect bounds = new Rect(0, 0, 320, 320);
+        Bitmap face = Bitmap.createBitmap(bounds.width(), bounds.height(),
+                Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(face);
+
+        // what onCreate used to do: every icon, with an ambient copy of each condition
+        int[] icons = {
+                R.drawable.ic_status, R.drawable.ic_storm, R.drawable.ic_light_rain,
+                R.drawable.ic_rain, R.drawable.ic_snow, R.drawable.ic_fog, R.drawable.ic_clear,
+                R.drawable.ic_light_clouds, R.drawable.ic_cloudy
+        };
+        Resources resources = mContext.getResources();
+        long eagerBytes = 0;
+        long start = Debug.threadCpuTimeNanos();
+        for (int i = 0; i < STARTS; i++) {
+            eagerBytes = 0;
+            for (int icon : icons) {
+                Bitmap bitmap = BitmapFactory.decodeResource(resources, icon);
+                // the conditions each had a grayscale copy of the same size
+                eagerBytes += bitmap.getByteCount() * (icon == R.drawable.ic_status ? 1 : 2);
+                bitmap.recycle();
+            }
+        }
+        long eagerNanos = (Debug.threadCpuTimeNanos() - start) / STARTS;
+
+        long lazyBytes = 0;
+        start = Debug.threadCpuTimeNanos();
+        for (int i = 0; i < STARTS; i++) {
+            WatchFaceRenderer renderer = new WatchFaceRenderer(mContext);
+            renderer.setWeather(RAIN, 18, 9, "Mountain View");
+            renderer.draw(canvas, bounds, System.currentTimeMillis());
+            lazyBytes = renderer.getIconByteCount();
+            renderer.release();
+        }
+        long lazyNanos = (Debug.threadCpuTimeNanos() - start) / STARTS;
+
+        Log.i(LOG_TAG, "icons decoded up front: " + eagerNanos / 1000 + "us CPU, " + eagerBytes +
+                " bytes kept; decoded when shown: " + lazyNanos / 1000 + "us CPU for the " +
+                "whole face, " + lazyBytes + " bytes kept");
+        assertTrue("Error: the face keeps more icon memory than before", lazyBytes < eagerBytes);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.sunshine.shared.ForecastPayload;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * {@link ForecastCache} keeps the last forecast the watch received in a file, with the time it
+ * arrived, so the watch face can show it as soon as it starts and only asks the phone for a
+ * forecast once the one it has is older than {@link #FRESH_MILLIS}.  The phone sends every new
+ * forecast it syncs anyway, so asking sooner would only bring back the same one.
+ *
+ * File layout (big endian): received at (long, System.currentTimeMillis()), then the encoded
+ * {@link ForecastPayload}.
+ */
+class ForecastCache {
+    private static final String TAG = "ForecastCache";
+
+    static final String FILE_NAME = "forecast.cache";
+
+    // the phone syncs every three hours
+    static final long FRESH_MILLIS = 3 * 60 * 60 * 1000;
+
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * Where the cache gets the time from.
+     */
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private final File mFile;
+    private final Clock mClock;
+
+    private boolean mLoaded;
+    private byte[] mBytes;
+    private ForecastPayload mForecast;
+    private long mReceivedAt;
+
+    static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    ForecastCache(File file, Clock clock) {
+        mFile = file;
+        mClock = clock;
+    }
+
+    /**
+     * @return the cached forecast, or null if there's none.  Read from the file the first time.
+     */
+    ForecastPayload get() {
+        load();
+        return mForecast;
+    }
+
+    /**
+     * Keeps a forecast that has just arrived.
+     *
+     * @param bytes an encoded ForecastPayload
+     * @return the forecast, or null if it couldn't be decoded, in which case the cache is kept.
+     */
+    ForecastPayload put(byte[] bytes) {
+        ForecastPayload forecast = ForecastPayload.decode(bytes);
+        if (null == forecast) {
+            return null;
+        }
+        mLoaded = true;
+        mBytes = bytes;
+        mForecast = forecast;
+        mReceivedAt = mClock.currentTimeMillis();
+        write();
+        return forecast;
+    }
+
+    /**
+     * @return true if the cache already holds this encoded forecast.
+     */
+    boolean holds(byte[] bytes) {
+        load();
+        return Arrays.equals(mBytes, bytes);
+    }
+
+    /**
+     * @return true if there's no forecast, or it's too old to go without asking for a new one.
+     */
+    boolean needsUpdate() {
+        load();
+        if (null == mForecast) {
+            return true;
+        }
+        long age = mClock.currentTimeMillis() - mReceivedAt;
+        // a clock set back makes the age meaningless, so ask
+        return age < 0 || age >= FRESH_MILLIS;
+    }
+
+    private void load() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        if (!mFile.exists()) {
+            return;
+        }
+        byte[] data = new byte[(int) mFile.length()];
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(mFile);
+            int read = 0;
+            while (read < data.length) {
+                int count = in.read(data, read, data.length - read);
+                if (count < 0) {
+                    return;
+                }
+                read += count;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading " + mFile, e);
+            return;
+        } finally {
+            close(in);
+        }
+        if (data.length < HEADER_SIZE) {
+            return;
+        }
+        byte[] bytes = Arrays.copyOfRange(data, HEADER_SIZE, data.length);
+        mForecast = ForecastPayload.decode(bytes);
+        if (null != mForecast) {
+            mBytes = bytes;
+            mReceivedAt = ByteBuffer.wrap(data).getLong();
+        }
+    }
+
+    /**
+     * Writes to a temporary file and renames it over the old one, so a reader never sees half a
+     * forecast.
+     */
+    private void write() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + mBytes.length);
+        buffer.putLong(mReceivedAt);
+        buffer.put(mBytes);
+
+        File tmpFile = new File(mFile.getParentFile(), mFile.getName() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmpFile);
+            out.write(buffer.array());
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(mFile)) {
+                Log.e(TAG, "Error renaming " + tmpFile);
+                tmpFile.delete();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing " + tmpFile, e);
+            tmpFile.delete();
+        } finally {
+            close(out);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (null != closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+}
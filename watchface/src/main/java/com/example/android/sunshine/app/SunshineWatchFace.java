@@ -20,23 +20,18 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
-import android.support.v4.content.ContextCompat;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
-import android.text.format.Time;
 import android.util.Log;
 import android.view.SurfaceHolder;
 
+import com.example.android.sunshine.shared.ForecastPayload;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
@@ -44,11 +39,13 @@ import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.MessageApi;
 import com.google.android.gms.wearable.Node;
 import com.google.android.gms.wearable.NodeApi;
+import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
 import java.lang.ref.WeakReference;
@@ -65,12 +62,6 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
     private static final String TAG = "SunshineWatchFace";
 
-    private static final Typeface BASE_TYPEFACE = Typeface.SANS_SERIF;
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(BASE_TYPEFACE, Typeface.NORMAL);
-    private static final Typeface BOLD_TYPEFACE =
-            Typeface.create(BASE_TYPEFACE, Typeface.BOLD);
-
     /**
      * Update rate in milliseconds for interactive mode. We update once a second since seconds are
      * displayed in interactive mode.
@@ -107,38 +98,6 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         }
     }
 
-    // see http://www.slideshare.net/rtc1/intro-todrawingtextandroid for the explanation of this awesome code snippet
-    public enum TextVertAlign { Top, Middle, Baseline, Bottom } // Enumeration representing vertical alignment positions
-    public static void drawHvAlignedText(Canvas canvas, float x, float y, String s, Paint p, Paint.Align horizAlign, TextVertAlign vertAlign ) {
-        // Set horizontal alignment
-        p.setTextAlign(horizAlign);
-
-        // Get bounding rectangle which we’ll need below...
-        Rect r = new Rect();
-        p.getTextBounds(s, 0, s.length(), r);
-
-        // Note: r.top will be negative
-        // Compute y-coordinate we'll need for drawing text for specified vertical alignment
-//        float textX = x;
-        float textY = y;
-        switch (vertAlign) {
-            case Top:
-                textY = y - r.top; // Recall that r.top is negative
-                break;
-            case Middle:
-                textY = y - r.top - r.height() / 2;
-                break;
-            case Baseline: // Default behavior - no changes to y-coordinate
-                break;
-            case Bottom:
-                textY = y - (r.height() + r.top);
-                break;
-        }
-
-        canvas.drawText(s, x, textY, p);
-        // Now we can draw the text with the proper ( x, y ) coordinates
-    }
-
     private class Engine extends CanvasWatchFaceService.Engine
             implements DataApi.DataListener,
             GoogleApiClient.ConnectionCallbacks,
@@ -149,87 +108,33 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         private static final String TAG = "WatchFace.Engine";
 
         private static final String REQ_PATH = "/weather";
-        private static final String REQ_WEATHER_PATH = "/weather-req";
-        private static final String KEY_WEATHER_ID = "com.example.key.weather_id";
-        private static final String KEY_TEMP_MAX = "com.example.key.max_temp";
-        private static final String KEY_TEMP_MIN = "com.example.key.min_temp";
-        private static final String KEY_LOCATION = "com.example.key.location";
+        // asks for the forecast even if the phone last sent the same one
+        private static final String REQ_REFRESH_PATH = "/weather-refresh";
+        private static final String KEY_FORECAST = "com.example.key.forecast";
 
         final Handler mUpdateTimeHandler = new EngineHandler(this);
 
-        // leading space between two lines of text
-        final float mLeading = (float)1.8;
+        ForecastCache mForecastCache;
 
         boolean mRegisteredTimeZoneReceiver = false;
 
-        // time separator string
-        String mTimeSeparator;
-
-        // format strings
-        String mTemperatureFormat;
-        String mDateFormat;
-        String mHourFormat;
-        String mMinuteFormat;
-
-        // background paint objects
-        Paint mBackgroundPaint;
-        Paint mBackgroundAmbientPaint;
-        // text paint objects
-        Paint mHourPaint;
-        Paint mMinutePaint;
-        Paint mDatePaint;
-        Paint mDateAmbientPaint;
-        Paint mMaxTempPaint;
-        Paint mMinTempPaint;
-        Paint mLocationPaint;
-        Paint mLocationAmbientPaint;
-        // text paints for when the temperature value is longer than 2 characters
-        Paint mMaxTempSmallPaint;
-        Paint mMinTempSmallPaint;
-        // horizontal divider paint object
-        Paint mDividerPaint;
-
-        int mWeatherId = 0;
-        double mMaxTemperature = 0;
-        double mMinTemperature = 0;
-        String mLocation = "";
-
-        // bitmaps
-        Bitmap mBitmapStatus;
-        Bitmap mBitmapClear;
-        Bitmap mBitmapClouds;
-        Bitmap mBitmapFog;
-        Bitmap mBitmapLightClouds;
-        Bitmap mBitmapLightRain;
-        Bitmap mBitmapRain;
-        Bitmap mBitmapSnow;
-        Bitmap mBitmapStorm;
-        Bitmap mBitmapClearAmbient;
-        Bitmap mBitmapCloudsAmbient;
-        Bitmap mBitmapFogAmbient;
-        Bitmap mBitmapLightCloudsAmbient;
-        Bitmap mBitmapLightRainAmbient;
-        Bitmap mBitmapRainAmbient;
-        Bitmap mBitmapSnowAmbient;
-        Bitmap mBitmapStormAmbient;
+        // paints the face; keeps everything a frame needs so drawing doesn't allocate
+        WatchFaceRenderer mRenderer;
 
         boolean mAmbient;
+        /**
+         * Whether the display supports fewer bits for each color in ambient mode. When true, we
+         * disable anti-aliasing in ambient mode.
+         */
         boolean mLowBitAmbient;
 
-        Time mTime;
-
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mTime.clear(intent.getStringExtra("time-zone"));
-                mTime.setToNow();
+                mRenderer.setTimeZone(intent.getStringExtra("time-zone"));
                 invalidate();
             }
         };
-        /**
-         * Whether the display supports fewer bits for each color in ambient mode. When true, we
-         * disable anti-aliasing in ambient mode.
-         */
 
         @Override
         public void onCreate(SurfaceHolder holder) {
@@ -241,122 +146,24 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     .setShowSystemUiTime(false)
                     .build());
 
-            Resources resources = SunshineWatchFace.this.getResources();
-
-            // initialize hour paint
-            mHourPaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text), resources.getDimension(R.dimen.text_size_time), BOLD_TYPEFACE);
-
-            // initialize minute paint
-            mMinutePaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text), resources.getDimension(R.dimen.text_size_time), NORMAL_TYPEFACE);
-
-            // initialize time separator
-            mTimeSeparator = resources.getString(R.string.time_separator);
-
-            // initialize date paints
-            mDatePaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text), resources.getDimension(R.dimen.text_size_date), NORMAL_TYPEFACE);
-            mDateAmbientPaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text_semitransparent), resources.getDimension(R.dimen.text_size_date), NORMAL_TYPEFACE);
-
-            // initialize horizontal divider paints
-            mDividerPaint = new Paint();
-            mDividerPaint.setColor(ContextCompat.getColor(getBaseContext(), R.color.text_semitransparent));
-
-            // initialize background paints
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(ContextCompat.getColor(getBaseContext(), R.color.background));
-
-            mBackgroundAmbientPaint = new Paint();
-            mBackgroundAmbientPaint.setColor(ContextCompat.getColor(getBaseContext(), R.color.background_ambient));
-
-            // initialize temperature paints
-            mMaxTempPaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text), resources.getDimension(R.dimen.text_size_temperature), NORMAL_TYPEFACE);
-            mMinTempPaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text_semitransparent), resources.getDimension(R.dimen.text_size_temperature), NORMAL_TYPEFACE);
-            mMaxTempSmallPaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text), resources.getDimension(R.dimen.text_size_temperature_small), NORMAL_TYPEFACE);
-            mMinTempSmallPaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text_semitransparent), resources.getDimension(R.dimen.text_size_temperature_small), NORMAL_TYPEFACE);
-
-            // initialize location paint
-            mLocationPaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text), resources.getDimension(R.dimen.text_size_location), NORMAL_TYPEFACE);
-            mLocationAmbientPaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text_semitransparent), resources.getDimension(R.dimen.text_size_location), NORMAL_TYPEFACE);
-
-            // initialize format strings
-            mTemperatureFormat = resources.getString(R.string.format_temperature);
-            mDateFormat = resources.getString(R.string.format_watchface_date);
-            mHourFormat = resources.getString(R.string.format_hours);
-            mMinuteFormat = resources.getString(R.string.format_minutes);
-
-            // initialize bitmaps
-            initializeBitmaps(resources);
-
-            mTime = new Time();
-        }
-
-        private void initializeBitmaps(Resources resources) {
-            mBitmapStatus = BitmapFactory.decodeResource(resources, R.drawable.ic_status);
-            mBitmapClear = BitmapFactory.decodeResource(resources, R.drawable.ic_clear);
-            mBitmapClouds = BitmapFactory.decodeResource(resources, R.drawable.ic_cloudy);
-            mBitmapFog = BitmapFactory.decodeResource(resources, R.drawable.ic_fog);
-            mBitmapLightClouds = BitmapFactory.decodeResource(resources, R.drawable.ic_light_clouds);
-            mBitmapLightRain = BitmapFactory.decodeResource(resources, R.drawable.ic_light_rain);
-            mBitmapRain = BitmapFactory.decodeResource(resources, R.drawable.ic_rain);
-            mBitmapSnow = BitmapFactory.decodeResource(resources, R.drawable.ic_snow);
-            mBitmapStorm = BitmapFactory.decodeResource(resources, R.drawable.ic_storm);
-            mBitmapClearAmbient = BitmapFactory.decodeResource(resources, R.drawable.ic_clear_grayscale);
-            mBitmapCloudsAmbient = BitmapFactory.decodeResource(resources, R.drawable.ic_cloudy_grayscale);
-            mBitmapFogAmbient = BitmapFactory.decodeResource(resources, R.drawable.ic_fog_grayscale);
-            mBitmapLightCloudsAmbient = BitmapFactory.decodeResource(resources, R.drawable.ic_light_clouds_grayscale);
-            mBitmapLightRainAmbient = BitmapFactory.decodeResource(resources, R.drawable.ic_light_rain_grayscale);
-            mBitmapRainAmbient = BitmapFactory.decodeResource(resources, R.drawable.ic_rain_grayscale);
-            mBitmapSnowAmbient = BitmapFactory.decodeResource(resources, R.drawable.ic_snow_grayscale);
-            mBitmapStormAmbient = BitmapFactory.decodeResource(resources, R.drawable.ic_storm_grayscale);
-        }
+            mRenderer = new WatchFaceRenderer(SunshineWatchFace.this);
 
-        private Bitmap getBitmapForWeatherCondition(int weatherId) {
-            // Based on weather code data found at:
-            // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-            if (weatherId >= 200 && weatherId <= 232) {
-                return mAmbient ? mBitmapStormAmbient : mBitmapStorm;
-            } else if (weatherId >= 300 && weatherId <= 321) {
-                return mAmbient ? mBitmapLightRainAmbient : mBitmapLightRain;
-            } else if (weatherId >= 500 && weatherId <= 504) {
-                return mAmbient ? mBitmapRainAmbient : mBitmapRain;
-            } else if (weatherId == 511) {
-                return mAmbient ? mBitmapSnowAmbient : mBitmapSnow;
-            } else if (weatherId >= 520 && weatherId <= 531) {
-                return mAmbient ? mBitmapRainAmbient : mBitmapRain;
-            } else if (weatherId >= 600 && weatherId <= 622) {
-                return mAmbient ? mBitmapSnowAmbient : mBitmapSnow;
-            } else if (weatherId >= 701 && weatherId <= 761) {
-                return mAmbient ? mBitmapFogAmbient : mBitmapFog;
-            } else if (weatherId == 761 || weatherId == 781) {
-                return mAmbient ? mBitmapStormAmbient : mBitmapStorm;
-            } else if (weatherId == 800) {
-                return mAmbient ? mBitmapClearAmbient : mBitmapClear;
-            } else if (weatherId == 801) {
-                return mAmbient ? mBitmapLightCloudsAmbient : mBitmapLightClouds;
-            } else if (weatherId >= 802 && weatherId <= 804) {
-                return mAmbient ? mBitmapCloudsAmbient : mBitmapClouds;
+            // show the last forecast straight away, without waiting for the phone
+            mForecastCache = new ForecastCache(ForecastCache.getFile(SunshineWatchFace.this),
+                    ForecastCache.SYSTEM_CLOCK);
+            ForecastPayload forecast = mForecastCache.get();
+            if (null != forecast) {
+                mRenderer.setForecast(forecast);
             }
-
-            // default bitmap
-            return mBitmapStatus;
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mRenderer.release();
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor, float textSize, Typeface typeface) {
-            Paint paint = new Paint();
-
-            paint.setColor(textColor);
-            paint.setTypeface(typeface);
-            paint.setAntiAlias(true);
-            paint.setTextSize(textSize);
-
-            return paint;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             Log.d(TAG, "onVisibilityChanged");
@@ -369,8 +176,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                 registerReceiver();
 
                 // Update time zone in case it changed while we weren't visible.
-                mTime.clear(TimeZone.getDefault().getID());
-                mTime.setToNow();
+                mRenderer.setTimeZone(TimeZone.getDefault().getID());
 
                 if (null == mGoogleApiClient) {
                     Log.d(TAG, "mGoogleApiClient.build()");
@@ -406,8 +212,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             updateTimer();
         }
 
-        private void requestWeatherUpdate() {
-            Log.d(TAG, "requestWeatherUpdate through Message API");
+        private void requestWeatherUpdate(final String path) {
+            Log.d(TAG, "requestWeatherUpdate through Message API: " + path);
 
             Wearable.NodeApi.getConnectedNodes(mGoogleApiClient)
                     .setResultCallback(new ResultCallback<NodeApi.GetConnectedNodesResult>() {
@@ -418,7 +224,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                             for (Node node : nodes) {
                                 Wearable.MessageApi.sendMessage(mGoogleApiClient
                                         , node.getId()
-                                        , REQ_WEATHER_PATH
+                                        , path
                                         , new byte[0]).setResultCallback(
                                         new ResultCallback<MessageApi.SendMessageResult>() {
                                             @Override
@@ -457,6 +263,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mRenderer.setAmbient(mAmbient, mLowBitAmbient);
         }
 
         @Override
@@ -470,17 +277,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-
-                if (mLowBitAmbient) {
-                    mHourPaint.setAntiAlias(!inAmbientMode);
-                    mMinutePaint.setAntiAlias(!inAmbientMode);
-                    mDatePaint.setAntiAlias(!inAmbientMode);
-                    mDateAmbientPaint.setAntiAlias(!inAmbientMode);
-                    mMaxTempPaint.setAntiAlias(!inAmbientMode);
-                    mMinTempPaint.setAntiAlias(!inAmbientMode);
-                    mLocationPaint.setAntiAlias(!inAmbientMode);
-                    mLocationAmbientPaint.setAntiAlias(!inAmbientMode);
-                }
+                mRenderer.setAmbient(mAmbient, mLowBitAmbient);
                 invalidate();
             }
 
@@ -491,152 +288,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // Draw the background.
-            Paint backgroundPaint = mAmbient ? mBackgroundAmbientPaint : mBackgroundPaint;
-            canvas.drawRect(0, 0, bounds.width(), bounds.height(), backgroundPaint);
-
-            mTime.setToNow();
-
-            // draw date
-            String dateText = mTime.format(mDateFormat).toUpperCase();
-            Paint datePaint = mAmbient ? mDateAmbientPaint : mDatePaint;
-            Rect dateBounds = new Rect();
-            datePaint.getTextBounds(dateText, 0, dateText.length(), dateBounds);
-            drawHvAlignedText(
-                    canvas,
-                    (bounds.width() - dateBounds.width()) / 2,
-                    bounds.height() / 2 - mLeading * dateBounds.height(),
-                    dateText,
-                    datePaint,
-                    Paint.Align.LEFT,
-                    TextVertAlign.Top);
-
-            // initialize separator stuff
-            Paint separatorPaint = mMinutePaint;
-            Rect separatorBounds = new Rect();
-            separatorPaint.getTextBounds(mTimeSeparator, 0, mTimeSeparator.length(), separatorBounds);
-
-            // draw minutes
-            String minuteText = mTime.format(mMinuteFormat);
-            Paint minutePaint = mMinutePaint;
-            Rect minuteBounds = new Rect();
-            minutePaint.getTextBounds(minuteText, 0, minuteText.length(), minuteBounds);
-            drawHvAlignedText(
-                    canvas,
-                    (bounds.width() + separatorBounds.width()) / 2,
-                    bounds.height() / 2 - dateBounds.height() - mLeading * minuteBounds.height(),
-                    minuteText,
-                    minutePaint,
-                    Paint.Align.LEFT,
-                    TextVertAlign.Top);
-
-            // draw hours
-            String hourText = mTime.format(mHourFormat);
-            Paint hourPaint = mHourPaint;
-            Rect hourBounds = new Rect();
-            hourPaint.getTextBounds(hourText, 0, hourText.length(), hourBounds);
-            drawHvAlignedText(
-                    canvas,
-                    (bounds.width() - separatorBounds.width()) / 2 - hourBounds.width(),
-                    bounds.height() / 2 - dateBounds.height() - mLeading * minuteBounds.height(),
-                    hourText,
-                    hourPaint,
-                    Paint.Align.LEFT,
-                    TextVertAlign.Top);
-
-            // draw time separator
-            boolean drawSeparator = mAmbient || (0 == (mTime.second % 2));
-            if (drawSeparator) {
-                drawHvAlignedText(
-                        canvas,
-                        (bounds.width() - separatorBounds.width()) / 2,
-                        bounds.height() / 2 - dateBounds.height() - mLeading * minuteBounds.height() + minuteBounds.height() / 2,
-                        // for some reason I cannot keep leading and trailing spaces added to the separator string in the strings.xml file;
-                        // so I'm adding a magic character to replace it with a space character right before displaying the separator
-                        mTimeSeparator.replace('|', ' '),
-                        separatorPaint,
-                        Paint.Align.LEFT,
-                        TextVertAlign.Middle);
-            }
-
-            // draw a horizontal divider
-            canvas.drawRect(
-                    (bounds.width() * 3) / 8,
-                    bounds.height() / 2 - 1,
-                    (bounds.width() * 5) / 8,
-                    bounds.height() / 2 + 1,
-                    mDividerPaint);
-
-            // For temperatures and weather icons I'm dividing the screen into 5 equal columns,
-            // and display the weather icon in the 2nd column.
-            // The high temperature goes into the 3rd column, and the low temperature goes into the 4th column.
-            // Everything is centered.
-
-            // draw an icon
-            Bitmap icon = getBitmapForWeatherCondition(mWeatherId);
-            canvas.drawBitmap(icon,
-                    (bounds.width() / 5 + (bounds.width() / 5 - icon.getHeight()) / 2),
-                    bounds.height() / 2 + mLeading,
-                    null);
-
-            Paint highTempPaint;
-            Paint lowTempPaint;
-
-            // format temperature values
-            String highTempText = String.format(mTemperatureFormat, mMaxTemperature);
-            String lowTempText = String.format(mTemperatureFormat, mMinTemperature);
-
-            // decide which temperature paint to use, regular or small
-            if ((highTempText.length() > 3) || (lowTempText.length() > 3)) {
-                highTempPaint = mMaxTempSmallPaint;
-                lowTempPaint = mMinTempSmallPaint;
-            } else {
-                highTempPaint = mMaxTempPaint;
-                lowTempPaint = mMinTempPaint;
-            }
-
-            // draw a high temperature
-            Rect highTempBounds = new Rect();
-            highTempPaint.getTextBounds(highTempText, 0, highTempText.length(), highTempBounds);
-            drawHvAlignedText(
-                    canvas,
-                    // The high temperature goes into the 3rd column.
-                    // Everything is centered.
-                    (bounds.width() * 2 / 5 + (bounds.width() / 5 - highTempBounds.width()) / 2),
-                    bounds.height() / 2 + mLeading * dateBounds.height() - dateBounds.height(),
-                    highTempText,
-                    highTempPaint,
-                    Paint.Align.LEFT,
-                    TextVertAlign.Top);
-
-            // draw a low temperature
-            Rect lowTempBounds = new Rect();
-            lowTempPaint.getTextBounds(lowTempText, 0, lowTempText.length(), lowTempBounds);
-            drawHvAlignedText(
-                    canvas,
-                    // The low temperature goes into the 4th column.
-                    // Everything is centered.
-                    (bounds.width() * 3 / 5 + (bounds.width() / 5 - lowTempBounds.width()) / 2),
-                    bounds.height() / 2 + mLeading * dateBounds.height() - dateBounds.height(),
-                    lowTempText,
-                    lowTempPaint,
-                    Paint.Align.LEFT,
-                    TextVertAlign.Top);
-
-            // draw location
-            String locationText = mLocation.trim().toUpperCase();
-            Paint locationPaint = mAmbient ? mLocationAmbientPaint : mLocationPaint;
-            Rect locationBounds = new Rect();
-            locationPaint.getTextBounds(locationText, 0, locationText.length(), locationBounds);
-            drawHvAlignedText(
-                    canvas,
-                    (bounds.width() - locationBounds.width()) / 2,
-                    bounds.height() / 2 + mLeading * 2 + icon.getHeight(),
-                    locationText,
-                    locationPaint,
-                    Paint.Align.LEFT,
-                    TextVertAlign.Top);
-
+            mRenderer.draw(canvas, bounds, System.currentTimeMillis());
         }
 
         /**
@@ -678,8 +330,43 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             Log.d(TAG, "Wearable.DataApi.addListener()");
             Wearable.DataApi.addListener(mGoogleApiClient, this);
 
-            // request a weather update from the app
-            requestWeatherUpdate();
+            // the data layer may have kept a forecast that came while the face wasn't listening
+            Uri uri = new Uri.Builder()
+                    .scheme(PutDataRequest.WEAR_URI_SCHEME).path(REQ_PATH).build();
+            Wearable.DataApi.getDataItems(mGoogleApiClient, uri)
+                    .setResultCallback(new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(DataItemBuffer dataItems) {
+                            boolean hasItem = false;
+                            if (dataItems.getStatus().isSuccess() && dataItems.getCount() > 0) {
+                                DataMap dataMap =
+                                        DataMapItem.fromDataItem(dataItems.get(0)).getDataMap();
+                                byte[] bytes = dataMap.getByteArray(KEY_FORECAST);
+                                hasItem = null != bytes;
+                                if (hasItem && !mForecastCache.holds(bytes)) {
+                                    showForecast(bytes);
+                                }
+                            }
+                            dataItems.release();
+
+                            // only ask the phone when what the watch has is getting old.  The
+                            // phone only sends a forecast again when it changes, so ask it to
+                            // send the last one regardless; that's how an old one is renewed.
+                            if (!hasItem || mForecastCache.needsUpdate()) {
+                                requestWeatherUpdate(REQ_REFRESH_PATH);
+                            }
+                        }
+                    });
+        }
+
+        private void showForecast(byte[] bytes) {
+            ForecastPayload forecast = mForecastCache.put(bytes);
+            if (null == forecast) {
+                Log.d(TAG, "unreadable forecast");
+                return;
+            }
+            mRenderer.setForecast(forecast);
+            invalidate();
         }
 
         @Override
@@ -700,12 +387,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     if (path.equals(REQ_PATH)) {
                         DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
 
-                        mWeatherId = dataMap.getInt(KEY_WEATHER_ID);
-                        mMaxTemperature = dataMap.getDouble(KEY_TEMP_MAX);
-                        mMinTemperature = dataMap.getDouble(KEY_TEMP_MIN);
-                        mLocation = dataMap.getString(KEY_LOCATION);
-
-                        invalidate();
+                        showForecast(dataMap.getByteArray(KEY_FORECAST));
                     }
                 }
             }
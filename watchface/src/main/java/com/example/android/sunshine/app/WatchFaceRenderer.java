@@ -0,0 +1,519 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.support.v4.content.ContextCompat;
+import android.text.format.Time;
+
+import com.example.android.sunshine.shared.ForecastPayload;
+
+/**
+ * {@link WatchFaceRenderer} paints the Sunshine watch face.  Drawing a frame doesn't allocate:
+ * the text, its measurements and where it goes are worked out when the weather, the minute,
+ * the mode or the size of the face changes, and each frame only draws what was kept.
+ * <p>
+ * Only the time changes from one second to the next, so everything else (the background, date,
+ * divider, icon, temperatures and location) is painted once into an offscreen layer for each
+ * mode, and a frame copies that layer and draws the time over it.  A mode's layer is repainted
+ * when the weather, the day or the size of the face changes.
+ */
+class WatchFaceRenderer {
+    private static final Typeface BASE_TYPEFACE = Typeface.SANS_SERIF;
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(BASE_TYPEFACE, Typeface.NORMAL);
+    private static final Typeface BOLD_TYPEFACE =
+            Typeface.create(BASE_TYPEFACE, Typeface.BOLD);
+
+    private static final long MINUTE_MILLIS = 60 * 1000;
+
+    // the modes that keep their own static layer
+    private static final int MODE_INTERACTIVE = 0;
+    private static final int MODE_AMBIENT = 1;
+    private static final int MODE_LOW_BIT_AMBIENT = 2;
+    private static final int MODE_COUNT = 3;
+
+    // leading space between two lines of text
+    private static final float LEADING = (float) 1.8;
+
+    // see http://www.slideshare.net/rtc1/intro-todrawingtextandroid for the explanation of this awesome code snippet
+    enum TextVertAlign { Top, Middle, Baseline, Bottom } // Enumeration representing vertical alignment positions
+
+    // time separator strings, as measured and as drawn
+    private final String mTimeSeparator;
+    private final String mTimeSeparatorText;
+
+    // format strings
+    private final String mTemperatureFormat;
+    private final String mDateFormat;
+    private final String mHourFormat;
+    private final String mMinuteFormat;
+
+    // background paint objects
+    private final Paint mBackgroundPaint;
+    private final Paint mBackgroundAmbientPaint;
+    // text paint objects
+    private final Paint mHourPaint;
+    private final Paint mMinutePaint;
+    private final Paint mDatePaint;
+    private final Paint mDateAmbientPaint;
+    private final Paint mMaxTempPaint;
+    private final Paint mMinTempPaint;
+    private final Paint mLocationPaint;
+    private final Paint mLocationAmbientPaint;
+    // text paints for when the temperature value is longer than 2 characters
+    private final Paint mMaxTempSmallPaint;
+    private final Paint mMinTempSmallPaint;
+    // horizontal divider paint object
+    private final Paint mDividerPaint;
+
+    // weather icons, decoded when they're shown
+    private final WeatherIconManager mIcons;
+
+    private final Time mTime = new Time();
+    // the minute the time text was made for
+    private long mMinuteStartMillis;
+    private long mNextMinuteMillis;
+    private int mSecond;
+
+    // the days the phone sent, and the Julian day of the minute shown
+    private ForecastPayload mForecast;
+    private int mJulianDay;
+
+    private int mWeatherId = 0;
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+    private int mWidth;
+    private int mHeight;
+
+    // text for the current minute and weather
+    private String mDateText = "";
+    private String mHourText = "";
+    private String mMinuteText = "";
+    private String mHighTempText = "";
+    private String mLowTempText = "";
+    private String mLocationText = "";
+    private Paint mHighTempPaint;
+    private Paint mLowTempPaint;
+    private Bitmap mIcon;
+
+    // measurements, kept to be reused
+    private final Rect mDateBounds = new Rect();
+    private final Rect mSeparatorBounds = new Rect();
+    private final Rect mSeparatorTextBounds = new Rect();
+    private final Rect mHourBounds = new Rect();
+    private final Rect mMinuteBounds = new Rect();
+    private final Rect mHighTempBounds = new Rect();
+    private final Rect mLowTempBounds = new Rect();
+    private final Rect mLocationBounds = new Rect();
+
+    // the static layer for each mode, made when the mode is first drawn
+    private final Bitmap[] mLayers = new Bitmap[MODE_COUNT];
+    private final boolean[] mLayerValid = new boolean[MODE_COUNT];
+    private final Canvas mLayerCanvas = new Canvas();
+    private boolean mLayered = true;
+
+    // where each piece is drawn
+    private float mDateX, mDateY;
+    private float mHourX, mHourY, mMinuteX, mMinuteY;
+    private float mSeparatorX, mSeparatorY;
+    private float mIconX, mIconY;
+    private float mHighTempX, mHighTempY, mLowTempX, mLowTempY;
+    private float mLocationX, mLocationY;
+
+    WatchFaceRenderer(Context context) {
+        Resources resources = context.getResources();
+
+        // initialize hour and minute paints
+        mHourPaint = createTextPaint(ContextCompat.getColor(context, R.color.text), resources.getDimension(R.dimen.text_size_time), BOLD_TYPEFACE);
+        mMinutePaint = createTextPaint(ContextCompat.getColor(context, R.color.text), resources.getDimension(R.dimen.text_size_time), NORMAL_TYPEFACE);
+
+        // initialize time separator
+        // for some reason I cannot keep leading and trailing spaces added to the separator string in the strings.xml file;
+        // so I'm adding a magic character to replace it with a space character right before displaying the separator
+        mTimeSeparator = resources.getString(R.string.time_separator);
+        mTimeSeparatorText = mTimeSeparator.replace('|', ' ');
+
+        // initialize date paints
+        mDatePaint = createTextPaint(ContextCompat.getColor(context, R.color.text), resources.getDimension(R.dimen.text_size_date), NORMAL_TYPEFACE);
+        mDateAmbientPaint = createTextPaint(ContextCompat.getColor(context, R.color.text_semitransparent), resources.getDimension(R.dimen.text_size_date), NORMAL_TYPEFACE);
+
+        // initialize horizontal divider paints
+        mDividerPaint = new Paint();
+        mDividerPaint.setColor(ContextCompat.getColor(context, R.color.text_semitransparent));
+
+        // initialize background paints
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(ContextCompat.getColor(context, R.color.background));
+        mBackgroundAmbientPaint = new Paint();
+        mBackgroundAmbientPaint.setColor(ContextCompat.getColor(context, R.color.background_ambient));
+
+        // initialize temperature paints
+        mMaxTempPaint = createTextPaint(ContextCompat.getColor(context, R.color.text), resources.getDimension(R.dimen.text_size_temperature), NORMAL_TYPEFACE);
+        mMinTempPaint = createTextPaint(ContextCompat.getColor(context, R.color.text_semitransparent), resources.getDimension(R.dimen.text_size_temperature), NORMAL_TYPEFACE);
+        mMaxTempSmallPaint = createTextPaint(ContextCompat.getColor(context, R.color.text), resources.getDimension(R.dimen.text_size_temperature_small), NORMAL_TYPEFACE);
+        mMinTempSmallPaint = createTextPaint(ContextCompat.getColor(context, R.color.text_semitransparent), resources.getDimension(R.dimen.text_size_temperature_small), NORMAL_TYPEFACE);
+
+        // initialize location paints
+        mLocationPaint = createTextPaint(ContextCompat.getColor(context, R.color.text), resources.getDimension(R.dimen.text_size_location), NORMAL_TYPEFACE);
+        mLocationAmbientPaint = createTextPaint(ContextCompat.getColor(context, R.color.text_semitransparent), resources.getDimension(R.dimen.text_size_location), NORMAL_TYPEFACE);
+
+        // initialize format strings
+        mTemperatureFormat = resources.getString(R.string.format_temperature);
+        mDateFormat = resources.getString(R.string.format_watchface_date);
+        mHourFormat = resources.getString(R.string.format_hours);
+        mMinuteFormat = resources.getString(R.string.format_minutes);
+
+        // initialize weather icons
+        mIcons = new WeatherIconManager(resources,
+                resources.getDimensionPixelSize(R.dimen.weather_icon_size));
+
+        setWeather(0, 0, 0, "");
+    }
+
+    private static Paint createTextPaint(int textColor, float textSize, Typeface typeface) {
+        Paint paint = new Paint();
+
+        paint.setColor(textColor);
+        paint.setTypeface(typeface);
+        paint.setAntiAlias(true);
+        paint.setTextSize(textSize);
+        paint.setTextAlign(Paint.Align.LEFT);
+
+        return paint;
+    }
+
+    /**
+     * Sets the weather shown, and makes its text.
+     */
+    void setWeather(int weatherId, double maxTemperature, double minTemperature, String location) {
+        mWeatherId = weatherId;
+
+        // format temperature values
+        mHighTempText = String.format(mTemperatureFormat, maxTemperature);
+        mLowTempText = String.format(mTemperatureFormat, minTemperature);
+
+        // decide which temperature paint to use, regular or small
+        if ((mHighTempText.length() > 3) || (mLowTempText.length() > 3)) {
+            mHighTempPaint = mMaxTempSmallPaint;
+            mLowTempPaint = mMinTempSmallPaint;
+        } else {
+            mHighTempPaint = mMaxTempPaint;
+            mLowTempPaint = mMinTempPaint;
+        }
+
+        mLocationText = null == location ? "" : location.trim().toUpperCase();
+
+        mIcon = mIcons.getIcon(mWeatherId, mAmbient, mLowBitAmbient);
+        layout();
+        invalidateLayers();
+    }
+
+    /**
+     * Sets the days the phone sent.  The face shows today's, and moves on to the next day's at
+     * midnight by itself.
+     */
+    void setForecast(ForecastPayload forecast) {
+        mForecast = forecast;
+        if (0 != mJulianDay) {
+            showForecastDay();
+        }
+    }
+
+    private void showForecastDay() {
+        if (null == mForecast) {
+            return;
+        }
+        int day = mForecast.getDayIndex(mJulianDay);
+        if (-1 == day) {
+            // nothing newer to show; keep what's there until the phone sends more
+            return;
+        }
+        setWeather(mForecast.getWeatherId(day), mForecast.getMaxTemp(day),
+                mForecast.getMinTemp(day), mForecast.getLocation());
+    }
+
+    void setAmbient(boolean ambient, boolean lowBitAmbient) {
+        mAmbient = ambient;
+        mLowBitAmbient = lowBitAmbient;
+
+        boolean antiAlias = !(ambient && lowBitAmbient);
+        mHourPaint.setAntiAlias(antiAlias);
+        mMinutePaint.setAntiAlias(antiAlias);
+        mDatePaint.setAntiAlias(antiAlias);
+        mDateAmbientPaint.setAntiAlias(antiAlias);
+        mMaxTempPaint.setAntiAlias(antiAlias);
+        mMinTempPaint.setAntiAlias(antiAlias);
+        mMaxTempSmallPaint.setAntiAlias(antiAlias);
+        mMinTempSmallPaint.setAntiAlias(antiAlias);
+        mLocationPaint.setAntiAlias(antiAlias);
+        mLocationAmbientPaint.setAntiAlias(antiAlias);
+
+        mIcon = mIcons.getIcon(mWeatherId, mAmbient, mLowBitAmbient);
+        layout();
+    }
+
+    /**
+     * Draws every layer on each frame instead of keeping the static ones, to measure against.
+     */
+    void setLayered(boolean layered) {
+        mLayered = layered;
+        invalidateLayers();
+    }
+
+    private void invalidateLayers() {
+        for (int i = 0; i < MODE_COUNT; i++) {
+            mLayerValid[i] = false;
+        }
+    }
+
+    private int getMode() {
+        if (!mAmbient) {
+            return MODE_INTERACTIVE;
+        }
+        return mLowBitAmbient ? MODE_LOW_BIT_AMBIENT : MODE_AMBIENT;
+    }
+
+    /**
+     * Switches the time to another zone, and remakes the time text on the next frame.
+     */
+    void setTimeZone(String timeZone) {
+        mTime.clear(timeZone);
+        mNextMinuteMillis = 0;
+    }
+
+    int getIconByteCount() {
+        return mIcons.getByteCount();
+    }
+
+    String getHourText() {
+        return mHourText;
+    }
+
+    String getMinuteText() {
+        return mMinuteText;
+    }
+
+    String getDateText() {
+        return mDateText;
+    }
+
+    /**
+     * Draws the face at the given time.  Only the first frame of a minute, or of a new size,
+     * makes new text or measures it, and only the first frame of a day, or of new weather,
+     * repaints the static layer.
+     */
+    void draw(Canvas canvas, Rect bounds, long nowMillis) {
+        boolean changed = false;
+        if (bounds.width() != mWidth || bounds.height() != mHeight) {
+            mWidth = bounds.width();
+            mHeight = bounds.height();
+            releaseLayers();
+            changed = true;
+        }
+        if (nowMillis < mMinuteStartMillis || nowMillis >= mNextMinuteMillis) {
+            formatTime(nowMillis);
+            changed = true;
+        }
+        if (changed) {
+            layout();
+        }
+        mSecond = (int) ((nowMillis - mMinuteStartMillis) / 1000);
+
+        if (mLayered && mWidth > 0 && mHeight > 0) {
+            canvas.drawBitmap(getLayer(), 0, 0, null);
+        } else {
+            drawStatic(canvas);
+        }
+
+        // draw hours and minutes
+        canvas.drawText(mMinuteText, mMinuteX, mMinuteY, mMinutePaint);
+        canvas.drawText(mHourText, mHourX, mHourY, mHourPaint);
+
+        // draw time separator
+        boolean drawSeparator = mAmbient || (0 == (mSecond % 2));
+        if (drawSeparator) {
+            canvas.drawText(mTimeSeparatorText, mSeparatorX, mSeparatorY, mMinutePaint);
+        }
+    }
+
+    // Returns the current mode's static layer, painting it first if it's out of date
+    private Bitmap getLayer() {
+        int mode = getMode();
+        Bitmap layer = mLayers[mode];
+        if (null == layer) {
+            layer = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+            mLayers[mode] = layer;
+            mLayerValid[mode] = false;
+        }
+        if (!mLayerValid[mode]) {
+            mLayerCanvas.setBitmap(layer);
+            drawStatic(mLayerCanvas);
+            mLayerCanvas.setBitmap(null);
+            mLayerValid[mode] = true;
+        }
+        return layer;
+    }
+
+    /**
+     * Frees the static layers and the icons, for when the face goes away.
+     */
+    void release() {
+        releaseLayers();
+        mIcons.release();
+    }
+
+    private void releaseLayers() {
+        for (int i = 0; i < MODE_COUNT; i++) {
+            if (null != mLayers[i]) {
+                mLayers[i].recycle();
+                mLayers[i] = null;
+            }
+            mLayerValid[i] = false;
+        }
+    }
+
+    // Draws everything but the time
+    private void drawStatic(Canvas canvas) {
+        // Draw the background.
+        Paint backgroundPaint = mAmbient ? mBackgroundAmbientPaint : mBackgroundPaint;
+        canvas.drawRect(0, 0, mWidth, mHeight, backgroundPaint);
+
+        // draw date
+        canvas.drawText(mDateText, mDateX, mDateY, mAmbient ? mDateAmbientPaint : mDatePaint);
+
+        // draw a horizontal divider
+        canvas.drawRect(
+                (mWidth * 3) / 8,
+                mHeight / 2 - 1,
+                (mWidth * 5) / 8,
+                mHeight / 2 + 1,
+                mDividerPaint);
+
+        // draw an icon
+        canvas.drawBitmap(mIcon, mIconX, mIconY, null);
+
+        // draw high and low temperatures
+        canvas.drawText(mHighTempText, mHighTempX, mHighTempY, mHighTempPaint);
+        canvas.drawText(mLowTempText, mLowTempX, mLowTempY, mLowTempPaint);
+
+        // draw location
+        canvas.drawText(mLocationText, mLocationX, mLocationY,
+                mAmbient ? mLocationAmbientPaint : mLocationPaint);
+    }
+
+    private void formatTime(long nowMillis) {
+        mTime.set(nowMillis);
+        String dateText = mTime.format(mDateFormat).toUpperCase();
+        if (!dateText.equals(mDateText)) {
+            mDateText = dateText;
+            invalidateLayers();
+        }
+        int julianDay = Time.getJulianDay(nowMillis, mTime.gmtoff);
+        if (julianDay != mJulianDay) {
+            mJulianDay = julianDay;
+            showForecastDay();
+        }
+        mHourText = mTime.format(mHourFormat);
+        mMinuteText = mTime.format(mMinuteFormat);
+
+        // time zones are whole seconds away from UTC, so the millis within a second agree
+        mMinuteStartMillis = nowMillis - mTime.second * 1000 - nowMillis % 1000;
+        mNextMinuteMillis = mMinuteStartMillis + MINUTE_MILLIS;
+    }
+
+    // Measures the text and works out where it goes
+    private void layout() {
+        int width = mWidth;
+        int height = mHeight;
+
+        // date
+        Paint datePaint = mAmbient ? mDateAmbientPaint : mDatePaint;
+        datePaint.getTextBounds(mDateText, 0, mDateText.length(), mDateBounds);
+        mDateX = (width - mDateBounds.width()) / 2;
+        mDateY = alignText(height / 2 - LEADING * mDateBounds.height(),
+                mDateBounds, TextVertAlign.Top);
+
+        // hours and minutes
+        mMinutePaint.getTextBounds(mTimeSeparator, 0, mTimeSeparator.length(), mSeparatorBounds);
+        mMinutePaint.getTextBounds(mMinuteText, 0, mMinuteText.length(), mMinuteBounds);
+        mHourPaint.getTextBounds(mHourText, 0, mHourText.length(), mHourBounds);
+        float timeTop = height / 2 - mDateBounds.height() - LEADING * mMinuteBounds.height();
+        mMinuteX = (width + mSeparatorBounds.width()) / 2;
+        mHourX = (width - mSeparatorBounds.width()) / 2 - mHourBounds.width();
+        mMinuteY = alignText(timeTop, mMinuteBounds, TextVertAlign.Top);
+        mHourY = alignText(timeTop, mHourBounds, TextVertAlign.Top);
+
+        // time separator
+        mMinutePaint.getTextBounds(mTimeSeparatorText, 0, mTimeSeparatorText.length(),
+                mSeparatorTextBounds);
+        mSeparatorX = (width - mSeparatorBounds.width()) / 2;
+        mSeparatorY = alignText(timeTop + mMinuteBounds.height() / 2,
+                mSeparatorTextBounds, TextVertAlign.Middle);
+
+        // For temperatures and weather icons I'm dividing the screen into 5 equal columns,
+        // and display the weather icon in the 2nd column.
+        // The high temperature goes into the 3rd column, and the low temperature goes into the 4th column.
+        // Everything is centered.
+        mIconX = (width / 5 + (width / 5 - mIcon.getHeight()) / 2);
+        mIconY = height / 2 + LEADING;
+
+        mHighTempPaint.getTextBounds(mHighTempText, 0, mHighTempText.length(), mHighTempBounds);
+        mLowTempPaint.getTextBounds(mLowTempText, 0, mLowTempText.length(), mLowTempBounds);
+        float tempTop = height / 2 + LEADING * mDateBounds.height() - mDateBounds.height();
+        mHighTempX = (width * 2 / 5 + (width / 5 - mHighTempBounds.width()) / 2);
+        mLowTempX = (width * 3 / 5 + (width / 5 - mLowTempBounds.width()) / 2);
+        mHighTempY = alignText(tempTop, mHighTempBounds, TextVertAlign.Top);
+        mLowTempY = alignText(tempTop, mLowTempBounds, TextVertAlign.Top);
+
+        // location
+        Paint locationPaint = mAmbient ? mLocationAmbientPaint : mLocationPaint;
+        locationPaint.getTextBounds(mLocationText, 0, mLocationText.length(), mLocationBounds);
+        mLocationX = (width - mLocationBounds.width()) / 2;
+        mLocationY = alignText(height / 2 + LEADING * 2 + mIcon.getHeight(),
+                mLocationBounds, TextVertAlign.Top);
+    }
+
+    /**
+     * Returns the baseline that puts text with the given bounds at {@code y} for the given
+     * vertical alignment.
+     */
+    static float alignText(float y, Rect r, TextVertAlign vertAlign) {
+        // Note: r.top will be negative
+        float textY = y;
+        switch (vertAlign) {
+            case Top:
+                textY = y - r.top; // Recall that r.top is negative
+                break;
+            case Middle:
+                textY = y - r.top - r.height() / 2;
+                break;
+            case Baseline: // Default behavior - no changes to y-coordinate
+                break;
+            case Bottom:
+                textY = y - (r.height() + r.top);
+                break;
+        }
+        return textY;
+    }
+}
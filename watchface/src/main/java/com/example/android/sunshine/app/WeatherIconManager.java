@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+
+import com.example.android.sunshine.shared.WeatherConditions;
+
+/**
+ * {@link WeatherIconManager} hands out the weather icon the watch face shows.  Only the icon for
+ * the current condition is kept, decoded when it's first asked for and scaled to the size it's
+ * drawn at.  The ambient icon is made from it with a grayscale color filter, and the low-bit
+ * ambient icon with a filter that leaves only white and transparent pixels, so neither needs
+ * resources of its own.  An icon is freed as soon as another condition takes its place.
+ */
+class WeatherIconManager {
+    private static final int VARIANT_INTERACTIVE = 0;
+    private static final int VARIANT_AMBIENT = 1;
+    private static final int VARIANT_LOW_BIT_AMBIENT = 2;
+    private static final int VARIANT_COUNT = 3;
+
+    // the icon for each WeatherConditions condition
+    private static final int[] CONDITION_ICONS = {
+            R.drawable.ic_storm, R.drawable.ic_light_rain, R.drawable.ic_rain, R.drawable.ic_snow,
+            R.drawable.ic_fog, R.drawable.ic_clear, R.drawable.ic_light_clouds, R.drawable.ic_cloudy
+    };
+
+    private final Resources mResources;
+    private final int mSize;
+    private final Paint mAmbientPaint;
+    private final Paint mLowBitAmbientPaint;
+
+    private int mIconId;
+    private final Bitmap[] mVariants = new Bitmap[VARIANT_COUNT];
+
+    WeatherIconManager(Resources resources, int size) {
+        mResources = resources;
+        mSize = size;
+
+        ColorMatrix grayscale = new ColorMatrix();
+        grayscale.setSaturation(0);
+        mAmbientPaint = new Paint();
+        mAmbientPaint.setFilterBitmap(true);
+        mAmbientPaint.setColorFilter(new ColorMatrixColorFilter(grayscale));
+
+        // every color to white, and alpha to all or nothing around the halfway mark
+        mLowBitAmbientPaint = new Paint();
+        mLowBitAmbientPaint.setColorFilter(new ColorMatrixColorFilter(new float[]{
+                0, 0, 0, 0, 255,
+                0, 0, 0, 0, 255,
+                0, 0, 0, 0, 255,
+                0, 0, 0, 255, -127 * 255
+        }));
+    }
+
+    /**
+     * Returns the icon for a weather id, in the variant for the mode the face is in.  The icon
+     * returned before for another condition may be recycled, so it mustn't be drawn again.
+     */
+    Bitmap getIcon(int weatherId, boolean ambient, boolean lowBitAmbient) {
+        int condition = WeatherConditions.getCondition(weatherId);
+        int iconId = condition == WeatherConditions.CONDITION_NONE ?
+                R.drawable.ic_status : CONDITION_ICONS[condition];
+        if (iconId != mIconId) {
+            release();
+            mIconId = iconId;
+        }
+
+        int variant = !ambient ? VARIANT_INTERACTIVE :
+                lowBitAmbient ? VARIANT_LOW_BIT_AMBIENT : VARIANT_AMBIENT;
+        if (null == mVariants[variant]) {
+            if (null == mVariants[VARIANT_INTERACTIVE]) {
+                mVariants[VARIANT_INTERACTIVE] = decode(iconId);
+            }
+            if (variant != VARIANT_INTERACTIVE) {
+                mVariants[variant] = derive(mVariants[VARIANT_INTERACTIVE],
+                        variant == VARIANT_AMBIENT ? mAmbientPaint : mLowBitAmbientPaint);
+            }
+        }
+        return mVariants[variant];
+    }
+
+    /**
+     * Returns the bytes held by the icons kept.
+     */
+    int getByteCount() {
+        int bytes = 0;
+        for (Bitmap bitmap : mVariants) {
+            if (null != bitmap) {
+                bytes += bitmap.getByteCount();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Frees every icon kept.
+     */
+    void release() {
+        for (int i = 0; i < VARIANT_COUNT; i++) {
+            if (null != mVariants[i]) {
+                mVariants[i].recycle();
+                mVariants[i] = null;
+            }
+        }
+        mIconId = 0;
+    }
+
+    private Bitmap decode(int iconId) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        // decode at the resource's own size, then scale straight to the size it's drawn at
+        options.inScaled = false;
+        Bitmap bitmap = BitmapFactory.decodeResource(mResources, iconId, options);
+        if (bitmap.getWidth() == mSize && bitmap.getHeight() == mSize) {
+            return bitmap;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, mSize, mSize, true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    private Bitmap derive(Bitmap icon, Paint paint) {
+        Bitmap variant = Bitmap.createBitmap(mSize, mSize, Bitmap.Config.ARGB_8888);
+        new Canvas(variant).drawBitmap(icon, 0, 0, paint);
+        return variant;
+    }
+}